@@ -0,0 +1,111 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.query.AndQuery;
+import uk.ac.man.cs.comp38211.ir.query.DocIterator;
+import uk.ac.man.cs.comp38211.ir.query.Query;
+import uk.ac.man.cs.comp38211.ir.query.TermQuery;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+
+/**
+ * The latency of conjunctive queries of 2, 3 and 5 terms over the
+ * {@link SyntheticIndex}: evaluated by the query engine, which leads with the
+ * rarest term and skips through the others; and, as a baseline, by decoding
+ * every list whole and merging them with ArrayListOfInts.intersection. The
+ * score is the average time of a query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BooleanQueryBenchmark
+{
+    static final int QUERIES = 100;
+
+    @Param({ "2", "3", "5" })
+    public int terms;
+
+    @Param({ "vbyte" })
+    public String codec;
+
+    private IndexReader index;
+    private String[][] queries;
+    private Query[] conjunctions;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        index = SyntheticIndex.open(codec);
+        queries = SyntheticIndex.queries(QUERIES, terms);
+        conjunctions = new Query[QUERIES];
+        for (int q = 0; q < QUERIES; q++)
+        {
+            List<Query> clauses = new ArrayList<Query>();
+            for (String term : queries[q])
+            {
+                clauses.add(new TermQuery(term));
+            }
+            conjunctions[q] = new AndQuery(clauses);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int conjunction()
+    {
+        int count = 0;
+        for (Query query : conjunctions)
+        {
+            DocIterator docs = query.iterator(index);
+            while (docs.next() != DocIterator.NO_MORE_DOCS)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int mergeIntersection()
+    {
+        int count = 0;
+        for (String[] query : queries)
+        {
+            ArrayListOfInts docs = null;
+            for (String term : query)
+            {
+                ArrayListOfInts list = new ArrayListOfInts();
+                PostingsCursor postings = index.getPostings(term);
+                while (postings.next())
+                {
+                    list.add(postings.getDoc());
+                }
+                docs = docs == null ? list : docs.intersection(list);
+            }
+            count += docs.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.exercise.WordCount;
+
+/**
+ * Cleaning up the raw, space separated words of the corpus with the
+ * cleanUp(String) of the word count mapper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CleanUpBenchmark
+{
+    @Param({ "real", "zipf" })
+    public String corpus;
+
+    private String[] words;
+
+    private final WordCount.MyMapper mapper = new WordCount.MyMapper();
+
+    @Setup
+    public void setup() throws IOException
+    {
+        words = new String[Corpus.BATCH_TOKENS];
+        int i = 0;
+        for (String line : Corpus.lines(corpus))
+        {
+            for (String word : line.split(" "))
+            {
+                if (!word.isEmpty()) words[i++] = word;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int cleanUp()
+    {
+        int length = 0;
+        for (String word : words)
+        {
+            length += mapper.cleanUp(word).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,207 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.StopAnalyser;
+
+/**
+ * The text the benchmarks run over. Every benchmark handles one batch of
+ * exactly {@link #BATCH_TOKENS} words per invocation, and declares so with
+ * <code>@OperationsPerInvocation(BATCH_TOKENS)</code>, so that JMH reports
+ * throughput in tokens per second and the <code>gc.alloc.rate.norm</code> of
+ * <code>-prof gc</code> in bytes per token.
+ *
+ * There are two corpora:
+ * <ul>
+ * <li><code>real</code>: lines of the <code>input/*.txt.gz</code> files, in a
+ * fixed shuffled order. The directory can be changed with the system property
+ * <code>comp38211.bench.input</code>.</li>
+ * <li><code>zipf</code>: lines drawn from a synthetic vocabulary with Zipfian
+ * (s = 1) frequencies, the stop words taking the top ranks, and the rest being
+ * made up words with English suffixes, some capitalised or punctuated.</li>
+ * </ul>
+ * Both are generated from a fixed seed, so every run sees the same text.
+ */
+final class Corpus
+{
+    /** The number of words in a batch. */
+    static final int BATCH_TOKENS = 4096;
+
+    static final String INPUT_DIR = "comp38211.bench.input";
+
+    private static final long SEED = 38211;
+    private static final int VOCABULARY_SIZE = 50000;
+    private static final String[] SUFFIXES = { "", "", "", "s", "ed", "ing",
+            "ly", "ation", "ness", "ies", "er", "ful", "ment", "ize" };
+    private static final String[] PUNCTUATION = { ",", ".", "?", "'s", ")" };
+
+    private Corpus()
+    {
+    }
+
+    /**
+     * Returns lines holding BATCH_TOKENS space separated words in total.
+     */
+    static String[] lines(String corpus) throws IOException
+    {
+        if (corpus.equals("real")) return batch(readInput());
+        if (corpus.equals("zipf")) return batch(zipf());
+        throw new IllegalArgumentException("Unknown corpus: " + corpus);
+    }
+
+    /**
+     * Returns BATCH_TOKENS terms, as the analyzer makes them from the lines
+     * of the corpus, repeating them if there are too few.
+     */
+    static String[] terms(String corpus, Analyzer analyzer) throws IOException
+    {
+        List<String> terms = new ArrayList<String>();
+        for (String line : lines(corpus))
+        {
+            terms.addAll(analyzer.analyse(line));
+        }
+        String[] batch = new String[BATCH_TOKENS];
+        for (int i = 0; i < BATCH_TOKENS; i++)
+        {
+            batch[i] = terms.get(i % terms.size());
+        }
+        return batch;
+    }
+
+    // takes whole lines until the batch is full, cutting the last one short
+    private static String[] batch(List<String> lines)
+    {
+        List<String> batch = new ArrayList<String>();
+        int words = 0;
+        for (int l = 0; words < BATCH_TOKENS; l = (l + 1) % lines.size())
+        {
+            List<String> line = new ArrayList<String>();
+            for (String word : lines.get(l).split(" "))
+            {
+                if (!word.isEmpty() && words < BATCH_TOKENS)
+                {
+                    line.add(word);
+                    words++;
+                }
+            }
+            if (!line.isEmpty())
+            {
+                batch.add(join(line));
+            }
+        }
+        return batch.toArray(new String[batch.size()]);
+    }
+
+    private static List<String> readInput() throws IOException
+    {
+        File dir = new File(System.getProperty(INPUT_DIR, "input"));
+        File[] files = dir.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(".txt.gz");
+            }
+        });
+        if (files == null || files.length == 0)
+        {
+            throw new IOException("No *.txt.gz files in " + dir.getAbsolutePath()
+                    + ", set -D" + INPUT_DIR + "=<dir>");
+        }
+        Arrays.sort(files);
+        List<String> lines = new ArrayList<String>();
+        for (File file : files)
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (!line.trim().isEmpty()) lines.add(line);
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        Collections.shuffle(lines, new Random(SEED));
+        return lines;
+    }
+
+    private static List<String> zipf()
+    {
+        Random random = new Random(SEED);
+
+        List<String> vocabulary = new ArrayList<String>(StopAnalyser.getStopWords());
+        while (vocabulary.size() < VOCABULARY_SIZE)
+        {
+            vocabulary.add(word(random));
+        }
+
+        // the cumulative distribution of ranks, P(r) proportional to 1 / r
+        double[] cdf = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int r = 0; r < VOCABULARY_SIZE; r++)
+        {
+            sum += 1.0 / (r + 1);
+            cdf[r] = sum;
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (int words = 0; words < BATCH_TOKENS;)
+        {
+            List<String> line = new ArrayList<String>();
+            for (int n = 8 + random.nextInt(9); n > 0; n--, words++)
+            {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                line.add(vocabulary.get(rank < 0 ? -rank - 1 : rank));
+            }
+            lines.add(join(line));
+        }
+        return lines;
+    }
+
+    private static String word(Random random)
+    {
+        StringBuilder word = new StringBuilder();
+        for (int n = 2 + random.nextInt(7); n > 0; n--)
+        {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        word.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+        if (random.nextInt(10) == 0)
+        {
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        }
+        if (random.nextInt(20) == 0)
+        {
+            word.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+        }
+        return word.toString();
+    }
+
+    private static String join(List<String> words)
+    {
+        StringBuilder line = new StringBuilder();
+        for (String word : words)
+        {
+            if (line.length() > 0) line.append(' ');
+            line.append(word);
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.query.AndQuery;
+import uk.ac.man.cs.comp38211.ir.query.DocIterator;
+import uk.ac.man.cs.comp38211.ir.query.PhraseQuery;
+import uk.ac.man.cs.comp38211.ir.query.ProximityQuery;
+import uk.ac.man.cs.comp38211.ir.query.Query;
+import uk.ac.man.cs.comp38211.ir.query.TermQuery;
+
+/**
+ * The latency of phrase and proximity queries of 2 and 3 terms over the
+ * {@link SyntheticIndex}, apart from that of the conjunction of the same
+ * terms, which they start with: the difference is the cost of decoding and
+ * joining the positions of the docs of all the terms. The score is the
+ * average time of a query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhraseQueryBenchmark
+{
+    static final int QUERIES = 100;
+
+    @Param({ "2", "3" })
+    public int terms;
+
+    @Param({ "vbyte" })
+    public String codec;
+
+    /** The most other terms among those of a proximity query. */
+    @Param({ "10" })
+    public int proximity;
+
+    private IndexReader index;
+    private Query[] conjunctions;
+    private Query[] phrases;
+    private Query[] proximities;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        index = SyntheticIndex.open(codec);
+        String[][] queries = SyntheticIndex.queries(QUERIES, terms);
+        conjunctions = new Query[QUERIES];
+        phrases = new Query[QUERIES];
+        proximities = new Query[QUERIES];
+        for (int q = 0; q < QUERIES; q++)
+        {
+            List<Query> clauses = new ArrayList<Query>();
+            for (String term : queries[q])
+            {
+                clauses.add(new TermQuery(term));
+            }
+            conjunctions[q] = new AndQuery(clauses);
+            phrases[q] = new PhraseQuery(Arrays.asList(queries[q]));
+            proximities[q] = new ProximityQuery(Arrays.asList(queries[q]), proximity);
+        }
+        System.out.println();
+        System.out.println("Matches: conjunction " + count(conjunctions) + ", phrase " + count(phrases)
+                + ", proximity " + count(proximities));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int conjunction()
+    {
+        return count(conjunctions);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int phrase()
+    {
+        return count(phrases);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int proximity()
+    {
+        return count(proximities);
+    }
+
+    private int count(Query[] queries)
+    {
+        int count = 0;
+        for (Query query : queries)
+        {
+            DocIterator docs = query.iterator(index);
+            while (docs.next() != DocIterator.NO_MORE_DOCS)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
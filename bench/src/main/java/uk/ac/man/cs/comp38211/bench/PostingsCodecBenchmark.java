@@ -0,0 +1,139 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.ir.index.PostingsBlock;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+
+/**
+ * Decoding binary postings lists, block by block, with each codec: the doc
+ * ids and term frequencies alone, as a conjunctive query does, and the
+ * positions as well, as a phrase query does. Throughput is in postings per
+ * second; the size of the list, in bytes per posting and per position, is
+ * printed when the benchmark is set up.
+ * 
+ * The list is synthetic, from a fixed seed: {@link #POSTINGS} postings, one
+ * doc in <code>gap</code> on average (geometric gaps), with term frequencies
+ * of 1 + a geometric variable of mean 0.5 and positions about 40 apart.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostingsCodecBenchmark
+{
+    /** The number of postings of the list, in full blocks. */
+    static final int POSTINGS = PostingsBlock.SIZE * 512;
+
+    private static final long SEED = 38211;
+
+    @Param({ "vbyte", "simple8b", "eliasfano" })
+    public String codecName;
+
+    // the mean gap between the doc ids: 2 for a common term, 100 for a rarer one
+    @Param({ "2", "100" })
+    public int gap;
+
+    private IntCodec codec;
+    private ByteBuffer list;
+    private final PostingsBlock block = new PostingsBlock();
+
+    @Setup
+    public void setup() throws IOException
+    {
+        codec = IntCodec.forName(codecName);
+        Random random = new Random(SEED);
+        DataOutputBuffer out = new DataOutputBuffer();
+        PostingWritable posting = new PostingWritable();
+        long positionsBytes = 0;
+        int positions = 0;
+        int doc = -1;
+        int lastDoc = -1;
+        block.clear();
+        for (int i = 0; i < POSTINGS; i++)
+        {
+            doc += 1 + geometric(random, gap - 1);
+            posting.set(doc);
+            int position = 0;
+            for (int tf = 1 + geometric(random, 0.5); tf > 0; tf--)
+            {
+                position += 1 + geometric(random, 39);
+                posting.addPosition(position);
+                positions++;
+            }
+            block.add(posting);
+            if (block.isFull())
+            {
+                block.write(out, codec, lastDoc);
+                positionsBytes += block.getPositionsLength();
+                lastDoc = block.getLastDoc();
+                block.clear();
+            }
+        }
+        list = ByteBuffer.wrap(out.getData(), 0, out.getLength());
+        System.out.printf("%n%s, gap %d: %.3f bytes/posting, %.3f bytes/position%n", codecName, gap,
+                (double) (out.getLength() - positionsBytes) / POSTINGS,
+                (double) positionsBytes / positions);
+    }
+
+    // a geometric variable of this mean
+    private static int geometric(Random random, double mean)
+    {
+        if (mean <= 0) return 0;
+        return (int) (Math.log(1 - random.nextDouble()) / Math.log(mean / (1 + mean)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS)
+    public int decodeDocs()
+    {
+        list.position(0);
+        int sum = 0;
+        int lastDoc = -1;
+        for (int i = 0; i < POSTINGS; i += PostingsBlock.SIZE)
+        {
+            block.read(list, PostingsBlock.SIZE, lastDoc);
+            block.decodeDocs(codec);
+            sum += block.getDoc(PostingsBlock.SIZE - 1) + block.getTf(0);
+            lastDoc = block.getLastDoc();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS)
+    public int decodePositions()
+    {
+        list.position(0);
+        int sum = 0;
+        int lastDoc = -1;
+        for (int i = 0; i < POSTINGS; i += PostingsBlock.SIZE)
+        {
+            block.read(list, PostingsBlock.SIZE, lastDoc);
+            block.decodePositions(codec);
+            sum += block.getPositions()[block.getPositionCount() - 1];
+            lastDoc = block.getLastDoc();
+        }
+        return sum;
+    }
+}
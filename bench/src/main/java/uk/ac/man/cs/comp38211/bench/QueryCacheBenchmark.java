@@ -0,0 +1,99 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.query.IndexSearcher;
+import uk.ac.man.cs.comp38211.ir.query.PostingsCache;
+import uk.ac.man.cs.comp38211.ir.query.ResultCache;
+
+/**
+ * Queries per second of a skewed stream of top-10 BM25 queries of 3 terms
+ * over the {@link SyntheticIndex}, with no cache, with a cache of decoded
+ * postings lists in the heap or out of it, and with a cache of results in
+ * front of that. The queries are drawn from a pool of {@link #POOL}
+ * log-uniformly, so that a few are asked again and again, and most rarely,
+ * as in a query log; the terms of the queries are skewed in the same way.
+ * The hit rates of the caches are printed after every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryCacheBenchmark
+{
+    static final int POOL = 10000;
+    static final int QUERIES = 100;
+
+    @Param({ "none", "postings", "postings-direct", "results+postings" })
+    public String cache;
+
+    @Param({ "16", "256" })
+    public int postingsMegabytes;
+
+    @Param({ "vbyte" })
+    public String codec;
+
+    private IndexSearcher searcher;
+    private String[][] pool;
+    private Random random;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        IndexReader index = SyntheticIndex.open(codec);
+        PostingsCache postings = cache.equals("none") ? null
+                : new PostingsCache(index, (long) postingsMegabytes << 20, cache.equals("postings-direct"));
+        ResultCache results = cache.startsWith("results") ? new ResultCache(1 << 20) : null;
+        searcher = new IndexSearcher(index, results, postings);
+        pool = SyntheticIndex.queries(POOL, 3);
+        random = new Random(38211);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        System.out.println();
+        if (searcher.getResultCache() != null)
+        {
+            System.out.println("results:  " + searcher.getResultCache().getStats());
+        }
+        if (searcher.getPostingsCache() != null)
+        {
+            System.out.println("postings: " + searcher.getPostingsCache().getStats());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int rank()
+    {
+        int count = 0;
+        for (int q = 0; q < QUERIES; q++)
+        {
+            List<String> query = Arrays.asList(pool[(int) Math.exp(random.nextDouble() * Math.log(POOL)) - 1]);
+            count += searcher.rank(query, 10).size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,108 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.query.IndexSearcher;
+import uk.ac.man.cs.comp38211.ir.query.TopDocs;
+
+/**
+ * Queries per second of top-k BM25 queries of 2, 3 and 5 terms over the
+ * {@link SyntheticIndex}: by Block-Max WAND, which skips the blocks whose
+ * scores are bound to be too low, and by scoring every doc of any of the
+ * terms. The setup checks that both return the same docs and scores for
+ * every query, and fails otherwise.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankedQueryBenchmark
+{
+    static final int QUERIES = 100;
+
+    @Param({ "2", "3", "5" })
+    public int terms;
+
+    @Param({ "10" })
+    public int k;
+
+    @Param({ "vbyte" })
+    public String codec;
+
+    private IndexSearcher searcher;
+    private List<List<String>> queries;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        IndexReader index = SyntheticIndex.open(codec);
+        searcher = new IndexSearcher(index);
+        queries = new ArrayList<List<String>>();
+        long postings = 0;
+        for (String[] query : SyntheticIndex.queries(QUERIES, terms))
+        {
+            queries.add(Arrays.asList(query));
+            for (String term : query)
+            {
+                postings += index.getDocFreq(term);
+            }
+        }
+        for (List<String> query : queries)
+        {
+            TopDocs exhaustive = searcher.rankExhaustively(query, k);
+            TopDocs pruned = searcher.rank(query, k);
+            if (!exhaustive.equals(pruned))
+            {
+                throw new IllegalStateException("Pruned results differ for " + query + ": " + pruned
+                        + ", not " + exhaustive);
+            }
+        }
+        System.out.println();
+        System.out.println("Same top " + k + " for all " + QUERIES + " queries, of " + postings / QUERIES
+                + " postings each on average");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int exhaustive()
+    {
+        int count = 0;
+        for (List<String> query : queries)
+        {
+            count += searcher.rankExhaustively(query, k).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int blockMaxWand()
+    {
+        int count = 0;
+        for (List<String> query : queries)
+        {
+            count += searcher.rank(query, k).size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.StemCache;
+import uk.ac.man.cs.comp38211.ir.Stemmer;
+
+/**
+ * Stemming the words that reach the stemmer in the inverted index, that is
+ * the cleansed, lower case tokens that are not stop words: with a reused
+ * Stemmer, and through a StemCache of the default size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StemmerBenchmark
+{
+    // the index chain up to the stemmer
+    private static final String FILTERS = "date,url,isbn,pagenum,alphabet,cleanse,lowercase,stop";
+
+    @Param({ "real", "zipf" })
+    public String corpus;
+
+    private char[][] words;
+
+    private final Stemmer stemmer = new Stemmer();
+    private final StemCache stemCache = new StemCache(Analyzer.DEFAULT_STEM_CACHE_SIZE);
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Analyzer analyzer = Analyzer.create(new Configuration(false),
+                Analyzer.Tokenizer.SPACE, FILTERS);
+        String[] terms = Corpus.terms(corpus, analyzer);
+        words = new char[terms.length][];
+        for (int i = 0; i < terms.length; i++)
+        {
+            words[i] = terms[i].toCharArray();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int stem()
+    {
+        int length = 0;
+        for (char[] word : words)
+        {
+            length += stemmer.stem(word, 0, word.length);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int stemCached()
+    {
+        int length = 0;
+        for (char[] word : words)
+        {
+            length += stemCache.stem(word, 0, word.length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,81 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.StopAnalyser;
+
+/**
+ * Looking up the words that reach the stop filter in the inverted index, that
+ * is the cleansed, lower case tokens: as Strings, and as slices of a char[]
+ * the way the filter does it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopAnalyserBenchmark
+{
+    // the index chain up to the stop filter
+    private static final String FILTERS = "date,url,isbn,pagenum,alphabet,cleanse,lowercase";
+
+    @Param({ "real", "zipf" })
+    public String corpus;
+
+    private String[] words;
+    private char[][] chars;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Analyzer analyzer = Analyzer.create(new Configuration(false),
+                Analyzer.Tokenizer.SPACE, FILTERS);
+        words = Corpus.terms(corpus, analyzer);
+        chars = new char[words.length][];
+        for (int i = 0; i < words.length; i++)
+        {
+            chars[i] = words[i].toCharArray();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int isStopWord()
+    {
+        int stopWords = 0;
+        for (String word : words)
+        {
+            if (StopAnalyser.isStopWord(word)) stopWords++;
+        }
+        return stopWords;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int isStopWordChars()
+    {
+        int stopWords = 0;
+        for (char[] word : chars)
+        {
+            if (StopAnalyser.isStopWord(word, 0, word.length)) stopWords++;
+        }
+        return stopWords;
+    }
+}
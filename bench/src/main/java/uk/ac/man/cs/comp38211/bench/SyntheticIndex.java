@@ -0,0 +1,140 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.ir.index.Bm25;
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.index.IndexWriter;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+
+/**
+ * The binary index the query benchmarks run against: {@link #TERMS} terms
+ * over {@link #DOCS} docs, the term of rank r (from 0) being in about
+ * DOCS / (2 (r + 1)) docs, at random, as Zipf's law would have it. Term
+ * frequencies are 1 + a geometric variable of mean 0.5, and positions are
+ * random under 1000.
+ * 
+ * The index is generated from a fixed seed, so every run sees the same one,
+ * and is kept in the temporary directory, where later runs pick it up. The
+ * postings are generated twice: first for the lengths of the docs, which the
+ * BM25 weighting needs from the start, then to be written.
+ */
+final class SyntheticIndex
+{
+    static final int DOCS = 1 << 20;
+    static final int TERMS = 1000;
+
+    private static final long SEED = 38211;
+
+    private SyntheticIndex()
+    {
+    }
+
+    /**
+     * Returns the term of a rank.
+     */
+    static String term(int rank)
+    {
+        return String.format("t%04d", rank);
+    }
+
+    /**
+     * Opens the index, written with a codec, writing it first if need be.
+     */
+    static IndexReader open(String codec) throws IOException
+    {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "comp38211-bench-index-v"
+                + IndexWriter.VERSION + "-" + codec);
+        if (!new File(dir, "_SUCCESS").exists())
+        {
+            write(dir, IntCodec.forName(codec));
+        }
+        return new IndexReader(dir);
+    }
+
+    private static void write(File dir, IntCodec codec) throws IOException
+    {
+        dir.mkdirs();
+        final int[] lengths = new int[DOCS];
+        generate((term, posting) -> lengths[posting.getDocId()] += posting.getTf());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir,
+                "part-r-00000" + Bm25.LENGTHS)), 1 << 16));
+        Bm25.writeLengths(lengths, out);
+        out.close();
+        IndexWriter writer = new IndexWriter(
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, "part-r-00000"
+                        + IndexWriter.POSTINGS)), 1 << 16)),
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, "part-r-00000"
+                        + IndexWriter.LEXICON)), 1 << 16)),
+                codec, Bm25.of(Bm25.DEFAULT_K1, Bm25.DEFAULT_B, lengths));
+        generate(writer::add);
+        writer.close();
+        new File(dir, "_SUCCESS").createNewFile();
+    }
+
+    private interface PostingSink
+    {
+        void add(Text term, PostingWritable posting) throws IOException;
+    }
+
+    private static void generate(PostingSink sink) throws IOException
+    {
+        Random random = new Random(SEED);
+        Text term = new Text();
+        PostingWritable posting = new PostingWritable();
+        for (int rank = 0; rank < TERMS; rank++)
+        {
+            term.set(term(rank));
+            double p = 0.5 / (rank + 1);
+            for (int doc = 0; doc < DOCS; doc++)
+            {
+                // a geometric jump to the next doc of the term
+                doc += (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+                if (doc >= DOCS) break;
+                posting.set(doc);
+                List<Integer> positions = new ArrayList<Integer>();
+                while (positions.isEmpty() || random.nextInt(3) == 0)
+                {
+                    positions.add(random.nextInt(1000));
+                }
+                Collections.sort(positions);
+                int previous = -1;
+                for (int position : positions)
+                {
+                    if (position != previous) posting.addPosition(position);
+                    previous = position;
+                }
+                sink.add(term, posting);
+            }
+        }
+    }
+
+    /**
+     * Returns queries of terms, whose ranks are drawn log-uniformly, so
+     * that rare and common terms come together.
+     */
+    static String[][] queries(int count, int terms)
+    {
+        Random random = new Random(SEED + terms);
+        String[][] queries = new String[count][terms];
+        for (String[] query : queries)
+        {
+            for (int t = 0; t < terms; t++)
+            {
+                query[t] = term((int) Math.exp(random.nextDouble() * Math.log(TERMS)) - 1);
+            }
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.man.cs.comp38211.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.comp38211.exercise.BasicInvertedIndex.Tokeniser;
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.TokenBuffer;
+
+/**
+ * Tokenising lines with the chain of the inverted index: through the
+ * String convenience method, and the way the mapper does it, from the bytes
+ * of a Text into a reused Text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokeniserBenchmark
+{
+    @Param({ "real", "zipf" })
+    public String corpus;
+
+    private String[] lines;
+    private Text[] texts;
+
+    private Analyzer analyzer;
+    private final TokenBuffer token = new TokenBuffer();
+    private final Text term = new Text();
+    private int length;
+    private final Analyzer.TokenHandler handler = new Analyzer.TokenHandler()
+    {
+        public void token(TokenBuffer token)
+        {
+            token.copyTo(term);
+            length += term.getLength();
+        }
+    };
+
+    @Setup
+    public void setup() throws IOException
+    {
+        lines = Corpus.lines(corpus);
+        texts = new Text[lines.length];
+        for (int i = 0; i < lines.length; i++)
+        {
+            texts[i] = new Text(lines[i]);
+        }
+        analyzer = Tokeniser.createAnalyzer(new Configuration(false));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int tokenise()
+    {
+        int terms = 0;
+        for (String line : lines)
+        {
+            terms += Tokeniser.tokenise(line).size();
+        }
+        return terms;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.BATCH_TOKENS)
+    public int analyseText() throws IOException, InterruptedException
+    {
+        length = 0;
+        for (Text text : texts)
+        {
+            analyzer.analyse(text, token, handler);
+        }
+        return length;
+    }
+}
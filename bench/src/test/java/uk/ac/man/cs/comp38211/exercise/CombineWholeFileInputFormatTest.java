@@ -0,0 +1,300 @@
+package uk.ac.man.cs.comp38211.exercise;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.ac.man.cs.comp38211.exercise.BasicInvertedIndex.Tokeniser;
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.util.map.FrontCodedString2IntBidiMap;
+
+/**
+ * Indexes a few thousand generated small files with the <code>-combine</code>
+ * input of {@link BasicInvertedIndex}, in local mode, once with all the files
+ * in one split and once packed into several, and checks both indexes against
+ * one worked out here from the files: every posting must name the file the
+ * term is in, with its positions in that file. The plain input, one file per
+ * split, must give byte for byte the same index as <code>-combine</code>.
+ * 
+ * The LocalJobRunner of Hadoop 1.0 runs the map tasks one after the other, and
+ * every task takes some three seconds to report it is done, so the plain input
+ * is run over the first {@value #PLAIN_FILES} files only, or as many as the
+ * system property <code>comp38211.test.plain.files</code> says, up to all of
+ * them (which takes hours).
+ * 
+ * Run from the project directory, as Maven does, so that
+ * <code>lib/stopwords.txt</code> is found.
+ */
+public class CombineWholeFileInputFormatTest
+{
+    private static final int FILES = 3000;
+    private static final int PLAIN_FILES = 30;
+    // the splits of the packed run
+    private static final int SPLITS = 8;
+
+    private static final String[] WORDS = { "bart", "homer", "lisa", "marge", "maggie",
+            "springfield", "donut", "school", "skinner", "krusty", "running", "ran", "runs",
+            "the", "a", "of", "and", "Generalization", "generalizations", "don't", "Bart's",
+            "well-known", "1984", "http://www.npr.org/", "tv.com", "2009-06-13" };
+
+    private static final Pattern POSTING = Pattern.compile("(\\d+)\\|(\\d+)\\|\\[([^\\]]*)\\]");
+
+    private static final long SEED = 38211;
+
+    @ClassRule
+    public static final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static File input;
+    private static int indexes;
+    private static long inputBytes;
+    // term -> the postings of the files, as "file name|tf|[positions]", in file name order
+    private static Map<String, List<String>> expected;
+
+    @BeforeClass
+    public static void generateInput() throws IOException
+    {
+        // the LocalJobRunner of Hadoop 1.0 only ships the distributed cache files all can read,
+        // such as the docno map of the job, and JUnit makes its folders readable by the owner only
+        TMP.getRoot().setReadable(true, false);
+        TMP.getRoot().setExecutable(true, false);
+        input = TMP.newFolder("input");
+        Random random = new Random(SEED);
+        List<String> vocabulary = new ArrayList<String>(Arrays.asList(WORDS));
+        for (int i = 0; i < 2000; i++)
+        {
+            char[] word = new char[3 + random.nextInt(7)];
+            for (int c = 0; c < word.length; c++)
+            {
+                word[c] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary.add(new String(word));
+        }
+        for (int i = 0; i < FILES; i++)
+        {
+            File file = new File(input, String.format("page%05d.txt.gz", i));
+            Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), "UTF-8");
+            try
+            {
+                // a few short lines, of a skewed choice of words, as in real text
+                for (int line = 1 + random.nextInt(4); line > 0; line--)
+                {
+                    StringBuilder text = new StringBuilder();
+                    for (int word = 3 + random.nextInt(15); word > 0; word--)
+                    {
+                        double r = random.nextDouble();
+                        text.append(vocabulary.get((int) (r * r * r * vocabulary.size()))).append(' ');
+                    }
+                    out.write(text.append('\n').toString());
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            inputBytes += file.length();
+        }
+        expected = index(input);
+    }
+
+    @Test
+    public void combinedSplitsMatchFiles() throws Exception
+    {
+        File one = runJob(input, "-combine", String.valueOf(inputBytes));
+        File packed = runJob(input, "-combine", String.valueOf(inputBytes / SPLITS));
+        assertEquals(1, splits(input, inputBytes));
+        assertTrue(splits(input, inputBytes / SPLITS) >= SPLITS);
+
+        assertEquals(expected, postings(one));
+        assertArrayEquals(read(one), read(packed));
+    }
+
+    @Test
+    public void plainInputMatchesCombined() throws Exception
+    {
+        int files = Math.min(Integer.getInteger("comp38211.test.plain.files", PLAIN_FILES), FILES);
+        File subset = TMP.newFolder("subset");
+        for (int i = 0; i < files; i++)
+        {
+            String name = String.format("page%05d.txt.gz", i);
+            Files.copy(new File(input, name).toPath(), new File(subset, name).toPath());
+        }
+        File plain = runJob(subset);
+        File combined = runJob(subset, "-combine", String.valueOf(inputBytes * files / FILES / 3));
+        assertTrue(splits(subset, inputBytes * files / FILES / 3) > 1);
+
+        assertEquals(index(subset), postings(plain));
+        assertArrayEquals(read(plain), read(combined));
+    }
+
+    // runs the job over dir, with the options given, into a new output dir
+    private static File runJob(File dir, String... options) throws Exception
+    {
+        File output = new File(TMP.getRoot(), "index-" + indexes++);
+        List<String> args = new ArrayList<String>(Arrays.asList("-input", dir.getPath(),
+                "-output", output.getPath()));
+        args.addAll(Arrays.asList(options));
+        assertEquals(0, ToolRunner.run(new Configuration(), new BasicInvertedIndex(),
+                args.toArray(new String[args.size()])));
+        return output;
+    }
+
+    // the number of splits the files of dir are packed into, at up to bytes each
+    private static int splits(File dir, long bytes) throws IOException, InterruptedException
+    {
+        Job job = new Job(new Configuration());
+        FileInputFormat.setInputPaths(job, dir.getPath());
+        CombineWholeFileInputFormat.setMaxSplitSize(job, bytes);
+        return new CombineWholeFileInputFormat().getSplits(job).size();
+    }
+
+    // the index of the files of dir, as the job should make it: positions are counted
+    // across the lines of a file
+    private static Map<String, List<String>> index(File dir) throws IOException
+    {
+        Analyzer analyzer = Tokeniser.createAnalyzer(new Configuration(false));
+        Map<String, List<String>> index = new TreeMap<String, List<String>>();
+        String[] names = dir.list();
+        Arrays.sort(names);
+        for (String name : names)
+        {
+            Map<String, List<Integer>> positions = new TreeMap<String, List<Integer>>();
+            int position = 0;
+            String text = new String(readGzip(new File(dir, name)), "UTF-8");
+            for (String line : text.split("\n"))
+            {
+                for (String term : analyzer.analyse(line))
+                {
+                    if (!positions.containsKey(term))
+                    {
+                        positions.put(term, new ArrayList<Integer>());
+                    }
+                    positions.get(term).add(position++);
+                }
+            }
+            for (Map.Entry<String, List<Integer>> term : positions.entrySet())
+            {
+                if (!index.containsKey(term.getKey()))
+                {
+                    index.put(term.getKey(), new ArrayList<String>());
+                }
+                index.get(term.getKey()).add(name + "|" + term.getValue().size() + "|" + term.getValue());
+            }
+        }
+        return index;
+    }
+
+    // the postings of the text index in output, with the doc names in place of the docnos
+    private static Map<String, List<String>> postings(File output) throws IOException
+    {
+        FrontCodedString2IntBidiMap docnos = Search.loadDocnos(new Configuration(), output.getPath());
+        Map<String, List<String>> index = new TreeMap<String, List<String>>();
+        for (File part : parts(output))
+        {
+            BufferedReader in = new BufferedReader(new FileReader(part));
+            try
+            {
+                // a list may go on over several lines, of up to a chunk of postings each
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    int tab = line.indexOf('\t');
+                    String term = line.substring(0, line.lastIndexOf('|', tab));
+                    int df = Integer.parseInt(line.substring(term.length() + 1, tab));
+                    if (!index.containsKey(term))
+                    {
+                        index.put(term, new ArrayList<String>());
+                    }
+                    List<String> postings = index.get(term);
+                    int size = postings.size();
+                    Matcher posting = POSTING.matcher(line.substring(tab + 1));
+                    while (posting.find())
+                    {
+                        postings.add(docnos.get(Integer.parseInt(posting.group(1))) + "|"
+                                + posting.group(2) + "|[" + posting.group(3) + "]");
+                    }
+                    assertEquals(line, df, postings.size() - size);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        return index;
+    }
+
+    // the part files of the output, one after the other
+    private static byte[] read(File output) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (File part : parts(output))
+        {
+            bytes.write(Files.readAllBytes(part.toPath()));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<File> parts(File output)
+    {
+        List<File> parts = new ArrayList<File>();
+        for (File file : output.listFiles())
+        {
+            if (file.getName().startsWith("part-")) parts.add(file);
+        }
+        assertTrue("No index in " + output, !parts.isEmpty());
+        Collections.sort(parts);
+        return parts;
+    }
+
+    private static byte[] readGzip(File file) throws IOException
+    {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
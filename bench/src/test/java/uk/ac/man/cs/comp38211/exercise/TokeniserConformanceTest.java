@@ -0,0 +1,345 @@
+package uk.ac.man.cs.comp38211.exercise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.man.cs.comp38211.exercise.BasicInvertedIndex.Tokeniser;
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.Stemmer;
+import uk.ac.man.cs.comp38211.ir.TokenBuffer;
+
+/**
+ * Checks that the single-pass scanner of the inverted index makes exactly the
+ * tokens of the regex/stream chain it replaced, over the lines of
+ * <code>input/*.txt.gz</code> and over lines made to hit the edge cases of the
+ * chain's filters. The chain is kept here as it was, in {@link Baseline}.
+ * 
+ * Every way the index analyses text is checked: {@link Tokeniser#tokenise},
+ * one Analyzer reused for every line (whose stem cache then hits), the UTF-8
+ * bytes of a Text, and whole documents read line by line, as the mapper does.
+ * 
+ * Run from the project directory, as Maven does, so that <code>input/</code>
+ * and <code>lib/stopwords.txt</code> are found.
+ */
+public class TokeniserConformanceTest
+{
+    private static final String[] EDGE_CASES = {
+            "",
+            " ",
+            "   leading and trailing spaces   ",
+            "two  spaces   between\twords\tand\ttabs",
+            // apostrophes and 's
+            "Bart's dog's bone, the Simpsons' house, it's o'clock 'quoted' rock'n'roll",
+            "'s 's. ''s' don't ain't I'm you're we'll",
+            // digits
+            "1984 1940s 42nd 3D mp3 7-Eleven 1,000 3.14 -5 10%",
+            // URLs
+            "http://www.npr.org/templates/story/story.php?storyid=4249835. tv.com ugo.com. tvshowsondvd.com.",
+            "HTTPS://Example.COM/Path www.example.org mailto:bart@springfield.com http: https .com",
+            // dates, ISBNs and page numbers
+            "2009-06-13.? (1992-02-20). (1997), 20090613 13-06-2009 1992-2-20",
+            "isbn?0-00-638898-1.? ISBN 0-679-31318-4 isbnx p. p.?136. p.?36d.? P.S. pp.",
+            // hyphens
+            "well-known -- - co-op- -x x- self-referential --dash-- a-b-c-",
+            // non-ASCII
+            "café naïve Ærø über straße Krusty™ “quoted” — em-dash 東京 Ελληνικά 🍩donut",
+            // case and punctuation
+            "The THE tHe (hello), [world]! {braces} <tags> \"quotes\" semi;colon a/b a\\b",
+            "running runs ran runner Generalization generalizations relational" };
+
+    private static List<String> inputLines;
+    private static List<String> documents;
+
+    @BeforeClass
+    public static void readInput() throws IOException
+    {
+        File[] files = new File("input").listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(".txt.gz");
+            }
+        });
+        assertTrue("No input/*.txt.gz, run from the project directory", files != null && files.length > 0);
+        Arrays.sort(files);
+        inputLines = new ArrayList<String>();
+        documents = new ArrayList<String>();
+        for (File file : files)
+        {
+            String document = read(file);
+            documents.add(document);
+            inputLines.addAll(lines(document));
+        }
+    }
+
+    @Test
+    public void tokeniseMatchesBaseline()
+    {
+        for (String line : allLines())
+        {
+            assertEquals(line, Baseline.tokenise(line), Tokeniser.tokenise(line));
+        }
+    }
+
+    @Test
+    public void reusedAnalyzerMatchesBaseline() throws IOException
+    {
+        // twice over, so that the second pass is served by the stem cache
+        Analyzer analyzer = Tokeniser.createAnalyzer(new Configuration(false));
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (String line : allLines())
+            {
+                assertEquals(line, Baseline.tokenise(line), analyzer.analyse(line));
+            }
+        }
+    }
+
+    @Test
+    public void textBytesMatchBaseline() throws IOException, InterruptedException
+    {
+        Analyzer analyzer = Tokeniser.createAnalyzer(new Configuration(false));
+        for (String line : allLines())
+        {
+            assertEquals(line, Baseline.tokenise(line), analyse(analyzer, new Text(line), false));
+        }
+    }
+
+    @Test
+    public void documentLinesMatchBaseline() throws IOException, InterruptedException
+    {
+        Analyzer analyzer = Tokeniser.createAnalyzer(new Configuration(false));
+        List<String> documents = new ArrayList<String>(TokeniserConformanceTest.documents);
+        StringBuilder edgeCases = new StringBuilder();
+        for (String line : EDGE_CASES)
+        {
+            edgeCases.append(line).append(edgeCases.length() % 2 == 0 ? "\n" : "\r\n");
+        }
+        documents.add(edgeCases.append("\rlast line, no terminator").toString());
+        for (String document : documents)
+        {
+            List<String> expected = new ArrayList<String>();
+            for (String line : lines(document))
+            {
+                expected.addAll(Baseline.tokenise(line));
+            }
+            assertEquals(expected, analyse(analyzer, new Text(document), true));
+        }
+    }
+
+    @Test
+    public void inputIsCovered()
+    {
+        // the baseline must not have dropped everything, or the checks above prove nothing
+        List<String> terms = new ArrayList<String>();
+        for (String line : inputLines)
+        {
+            terms.addAll(Baseline.tokenise(line));
+        }
+        assertTrue(terms.size() > 1000);
+        assertTrue(terms.contains("bart"));
+        assertFalse(terms.contains("the"));
+    }
+
+    private static List<String> allLines()
+    {
+        List<String> lines = new ArrayList<String>(inputLines);
+        lines.addAll(Arrays.asList(EDGE_CASES));
+        return lines;
+    }
+
+    private static List<String> analyse(Analyzer analyzer, Text text, boolean lines)
+            throws IOException, InterruptedException
+    {
+        final List<String> terms = new ArrayList<String>();
+        Analyzer.TokenHandler handler = new Analyzer.TokenHandler()
+        {
+            private final Text term = new Text();
+
+            public void token(TokenBuffer token)
+            {
+                token.copyTo(term);
+                terms.add(term.toString());
+            }
+        };
+        if (lines) analyzer.analyseLines(text, new TokenBuffer(), handler);
+        else analyzer.analyse(text, new TokenBuffer(), handler);
+        return terms;
+    }
+
+    private static String read(File file) throws IOException
+    {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    // the lines of a document, as a LineRecordReader splits it
+    private static List<String> lines(String document) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new StringReader(document));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * BasicInvertedIndex.Tokeniser.tokenise as of the baseline, with the
+     * StopAnalyser of the time: the lines of lib/stopwords.txt, as they are.
+     */
+    static final class Baseline
+    {
+        private final static String SEPARATOR = " ";
+
+        private final static Pattern datePattern = Pattern.compile(
+                "[0-9]{4}-[0-9]{2}-[0-9]{2}",
+                Pattern.CASE_INSENSITIVE
+        );
+        private final static Pattern urlPattern = Pattern.compile(
+                "http:|https:|\\.com",
+                Pattern.CASE_INSENSITIVE
+        );
+
+        private final static Pattern alphabetPattern = Pattern.compile(
+                "[a-zA-Z]+",
+                Pattern.CASE_INSENSITIVE
+        );
+
+        private final static Pattern toDeletePattern = Pattern.compile(
+                "[^a-zA-Z\\-]",
+                Pattern.CASE_INSENSITIVE
+        );
+
+        private final static Set<String> stopWords = readStopWords();
+
+        static ArrayList<String> tokenise(String line)
+        {
+            return Arrays.stream(line.split(SEPARATOR))
+                    .filter(Baseline::isNotDate)
+                    .filter(Baseline::isNotUrl)
+                    .filter(Baseline::isNotISBN)
+                    .filter(Baseline::isNotPageNum)
+                    .filter(Baseline::containsAlphabet)
+                    .map(Baseline::cleanse)
+                    .map(Baseline::normaliseCase)
+                    .filter(Baseline::isNotStopWord)
+                    .map(Baseline::stem)
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+
+        private static String stem(String word)
+        {
+            Stemmer s = new Stemmer();
+            s.add(word.toCharArray(), word.length());
+            s.stem();
+            return s.toString();
+        }
+
+        private static String normaliseCase(String token)
+        {
+            return token.toLowerCase();
+        }
+
+        private static boolean isNotDate(String token)
+        {
+            return !datePattern.matcher(token).find();
+        }
+
+        private static boolean isNotUrl(String token)
+        {
+            return !urlPattern.matcher(token).find();
+        }
+
+        private static boolean isNotISBN(String token)
+        {
+            return !token.startsWith("isbn");
+        }
+
+        private static boolean isNotPageNum(String token)
+        {
+            return !token.startsWith("p.");
+        }
+
+        private static boolean containsAlphabet(String token)
+        {
+            return alphabetPattern.matcher(token).find();
+        }
+
+        private static boolean isNotStopWord(String token)
+        {
+            return !stopWords.contains(token);
+        }
+
+        private static String cleanse(String token)
+        {
+            return token.replaceAll(toDeletePattern.toString(), "");
+        }
+
+        private static Set<String> readStopWords()
+        {
+            Set<String> words = new HashSet<String>();
+            try
+            {
+                BufferedReader in = new BufferedReader(new FileReader("lib/stopwords.txt"));
+                try
+                {
+                    String word;
+                    while ((word = in.readLine()) != null)
+                    {
+                        words.add(word);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("lib/stopwords.txt lost", e);
+            }
+            return words;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.util.codec.EliasFanoCodec;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.codec.Simple8bCodec;
+import uk.ac.man.cs.comp38211.util.codec.VByteCodec;
+
+/**
+ * Round trips of postings lists through {@link PostingsBlock}s, with every
+ * codec: full blocks and a partial last one, dense lists of consecutive doc
+ * ids and sparse ones, from doc 0 and up to the greatest doc id.
+ */
+public class PostingsBlockTest
+{
+    private static final IntCodec[] CODECS = { VByteCodec.INSTANCE,
+            Simple8bCodec.INSTANCE, EliasFanoCodec.INSTANCE };
+
+    private static final long SEED = 38211;
+
+    @Test
+    public void denseLists() throws IOException
+    {
+        for (IntCodec codec : CODECS)
+        {
+            for (int df : new int[] { 1, 2, 127, 128, 129, 1000 })
+            {
+                roundTrip(codec, postings(0, df, 1, 1, new Random(SEED)));
+                roundTrip(codec, postings(12345, df, 1, 20, new Random(SEED)));
+            }
+        }
+    }
+
+    @Test
+    public void sparseLists() throws IOException
+    {
+        Random random = new Random(SEED);
+        for (IntCodec codec : CODECS)
+        {
+            for (int df : new int[] { 1, 2, 127, 128, 129, 1000 })
+            {
+                roundTrip(codec, postings(random.nextInt(100), df, 1 << 16, 50, random));
+            }
+            // the last doc id at the very top of the ints
+            int df = 300;
+            roundTrip(codec, postings(Integer.MAX_VALUE - df * 1000, df, 1000, 3, random));
+        }
+    }
+
+    @Test
+    public void consecutiveDocsTakeNoPayload() throws IOException
+    {
+        // a full block of consecutive docs of tf 1: the doc ids and the term frequencies are
+        // each a single word of zeros
+        List<PostingWritable> postings = new ArrayList<PostingWritable>();
+        for (int doc = 1000; doc < 1000 + PostingsBlock.SIZE; doc++)
+        {
+            postings.add(new PostingWritable(doc, 7));
+        }
+        PostingsBlock block = new PostingsBlock();
+        block.clear();
+        for (PostingWritable posting : postings)
+        {
+            block.add(posting);
+        }
+        DataOutputStream out = new DataOutputStream(new ByteArrayOutputStream());
+        int length = block.write(out, Simple8bCodec.INSTANCE, 999);
+        // the header is 2 + 1 + 1 bytes
+        assertEquals(4 + 8 + 8, length - block.getPositionsLength());
+    }
+
+    // df postings of docs from first, at gaps of 1 to maxGap, of 1 to maxTf positions
+    private static List<PostingWritable> postings(int first, int df, int maxGap, int maxTf,
+            Random random)
+    {
+        List<PostingWritable> postings = new ArrayList<PostingWritable>();
+        int doc = first;
+        for (int i = 0; i < df; i++)
+        {
+            int[] positions = new int[1 + random.nextInt(maxTf)];
+            int position = random.nextInt(10);
+            for (int p = 0; p < positions.length; p++)
+            {
+                positions[p] = position;
+                position += 1 + random.nextInt(100);
+            }
+            postings.add(new PostingWritable(doc, positions));
+            if (i < df - 1) doc += 1 + random.nextInt(maxGap);
+        }
+        return postings;
+    }
+
+    private static void roundTrip(IntCodec codec, List<PostingWritable> postings) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        PostingsBlock block = new PostingsBlock();
+        int previousLastDoc = -1;
+        for (int start = 0; start < postings.size(); start += PostingsBlock.SIZE)
+        {
+            block.clear();
+            for (int i = start; i < Math.min(start + PostingsBlock.SIZE, postings.size()); i++)
+            {
+                block.add(postings.get(i));
+            }
+            block.write(out, codec, previousLastDoc);
+            previousLastDoc = block.getLastDoc();
+        }
+        out.close();
+
+        String message = codec + ", df " + postings.size() + ", from doc " + postings.get(0).getDocId();
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        previousLastDoc = -1;
+        for (int start = 0; start < postings.size(); start += PostingsBlock.SIZE)
+        {
+            int count = Math.min(PostingsBlock.SIZE, postings.size() - start);
+            block.read(in, count, previousLastDoc);
+            assertEquals(message, postings.get(start + count - 1).getDocId(), block.getLastDoc());
+            // the doc ids alone, as a boolean query reads them, then the positions too
+            block.decodeDocs(codec);
+            for (int i = 0; i < count; i++)
+            {
+                PostingWritable posting = postings.get(start + i);
+                assertEquals(message, posting.getDocId(), block.getDoc(i));
+                assertEquals(message, posting.getTf(), block.getTf(i));
+            }
+            block.decodePositions(codec);
+            for (int i = 0; i < count; i++)
+            {
+                PostingWritable posting = postings.get(start + i);
+                int from = block.getPositionsStart(i);
+                assertArrayEquals(message, Arrays.copyOf(posting.getPositions(), posting.getTf()),
+                        Arrays.copyOfRange(block.getPositions(), from, from + posting.getTf()));
+            }
+            previousLastDoc = block.getLastDoc();
+        }
+        assertTrue(message, !in.hasRemaining());
+    }
+}
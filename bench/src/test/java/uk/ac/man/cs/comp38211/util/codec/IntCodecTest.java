@@ -0,0 +1,301 @@
+package uk.ac.man.cs.comp38211.util.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Round trips of lists through every {@link IntCodec}, as lists in no order
+ * and as ascending lists: the lists read back must be those written, the
+ * buffer must be left right after them, and nothing past their length may be
+ * written to.
+ */
+public class IntCodecTest
+{
+    private static final IntCodec[] CODECS = { VByteCodec.INSTANCE,
+            Simple8bCodec.INSTANCE, EliasFanoCodec.INSTANCE };
+
+    // lengths around the words and blocks of the codecs: Simple-8b holds 240 or 120 zeros,
+    // or 60 ones, in a word; the postings of a block are 128
+    private static final int[] LENGTHS = { 0, 1, 2, 3, 7, 59, 60, 61, 119, 120, 121,
+            127, 128, 129, 239, 240, 241, 481, 1000 };
+
+    private static final long SEED = 38211;
+
+    @Test
+    public void forName()
+    {
+        for (IntCodec codec : CODECS)
+        {
+            assertEquals(codec, IntCodec.forName(codec.getName()));
+        }
+        try
+        {
+            IntCodec.forName("gamma");
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void emptyAndSingleLists() throws IOException
+    {
+        for (IntCodec codec : CODECS)
+        {
+            roundTrip(codec, new int[0]);
+            roundTrip(codec, new int[] { 0 });
+            roundTrip(codec, new int[] { 1 });
+            roundTrip(codec, new int[] { 127 });
+            roundTrip(codec, new int[] { 128 });
+            roundTrip(codec, new int[] { Integer.MAX_VALUE });
+            roundTripAscending(codec, new int[0]);
+            roundTripAscending(codec, new int[] { 0 });
+            roundTripAscending(codec, new int[] { Integer.MAX_VALUE });
+        }
+    }
+
+    @Test
+    public void runsOfZeros() throws IOException
+    {
+        for (IntCodec codec : CODECS)
+        {
+            for (int length : LENGTHS)
+            {
+                int[] zeros = new int[length];
+                roundTrip(codec, zeros);
+                roundTripAscending(codec, zeros);
+                if (length == 0) continue;
+                // a run broken by a value at either end, or in the middle
+                for (int at : new int[] { 0, length / 2, length - 1 })
+                {
+                    int[] values = new int[length];
+                    values[at] = 1000;
+                    roundTrip(codec, values);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void runsOfZerosTakeNoPayload() throws IOException
+    {
+        // a word of 240 zeros, and one of 120
+        assertEquals(16, encode(Simple8bCodec.INSTANCE, new int[360], false).length);
+        // one of 60 ones
+        int[] ones = new int[60];
+        Arrays.fill(ones, 1);
+        assertEquals(8, encode(Simple8bCodec.INSTANCE, ones, false).length);
+    }
+
+    @Test
+    public void valuesOfSixtyBitWords() throws IOException
+    {
+        // ints over 30 bits only fit a word of one 60-bit int, and so does an int before
+        // one of them, if it cannot share a word with those after it
+        int[] values = { Integer.MAX_VALUE, 0, 1 << 30, (1 << 30) - 1, 1, Integer.MAX_VALUE,
+                Integer.MAX_VALUE - 1, 0, 0, 0 };
+        assertEquals(8 * 7, encode(Simple8bCodec.INSTANCE, values, false).length);
+        for (IntCodec codec : CODECS)
+        {
+            roundTrip(codec, values);
+            roundTripAscending(codec, new int[] { 0, 1 << 30, Integer.MAX_VALUE - 1,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE });
+        }
+    }
+
+    @Test
+    public void partialLastWords() throws IOException
+    {
+        // every width of Simple-8b, in lists one short and one over a whole word
+        Random random = new Random(SEED);
+        for (int bits = 1; bits <= 31; bits++)
+        {
+            for (int length : new int[] { 1, 6, 7, 11, 13, 61, 119 })
+            {
+                int[] values = new int[length];
+                for (int i = 0; i < length; i++)
+                {
+                    values[i] = (int) (random.nextLong() & ((1L << bits) - 1));
+                }
+                values[random.nextInt(length)] = (int) ((1L << bits) - 1);
+                for (IntCodec codec : CODECS)
+                {
+                    roundTrip(codec, values);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomLists() throws IOException
+    {
+        Random random = new Random(SEED);
+        for (IntCodec codec : CODECS)
+        {
+            for (int length : LENGTHS)
+            {
+                for (int bits = 1; bits <= 24; bits += 3)
+                {
+                    // small values, as most gaps and term frequencies are, and a few outliers
+                    int[] values = new int[length];
+                    for (int i = 0; i < length; i++)
+                    {
+                        values[i] = random.nextInt(10) == 0 ? random.nextInt(1 << bits)
+                                : random.nextInt(4);
+                    }
+                    roundTrip(codec, values);
+
+                    int[] ascending = new int[length];
+                    for (int i = 1; i < length; i++)
+                    {
+                        ascending[i] = ascending[i - 1] + random.nextInt(1 << bits);
+                    }
+                    roundTripAscending(codec, ascending);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void eliasFanoNearIntOverflow() throws IOException
+    {
+        IntCodec codec = EliasFanoCodec.INSTANCE;
+        // u at the very top of the ints, with many low bits and few high ones
+        roundTripAscending(codec, new int[] { Integer.MAX_VALUE });
+        roundTripAscending(codec, new int[] { 0, Integer.MAX_VALUE });
+        roundTripAscending(codec, new int[] { Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1,
+                Integer.MAX_VALUE });
+        int[] dense = new int[1000];
+        for (int i = 0; i < dense.length; i++)
+        {
+            dense[i] = Integer.MAX_VALUE - (dense.length - 1 - i);
+        }
+        roundTripAscending(codec, dense);
+        int[] spread = new int[1000];
+        for (int i = 0; i < spread.length; i++)
+        {
+            spread[i] = (int) ((long) Integer.MAX_VALUE * i / (spread.length - 1));
+        }
+        roundTripAscending(codec, spread);
+
+        // lists in no order are written as their prefix sums, which may just fit an int...
+        roundTrip(codec, new int[] { Integer.MAX_VALUE - 1, 0, 1 });
+        roundTrip(codec, new int[] { 1 << 30, 1 << 29, (1 << 29) - 1 });
+        // ...or not
+        try
+        {
+            encode(codec, new int[] { Integer.MAX_VALUE, 1 }, false);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void singleInts() throws IOException
+    {
+        int[] ints = { 0, 1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 28) - 1,
+                1 << 28, Integer.MAX_VALUE };
+        long[] longs = { 0, 127, 128, Integer.MAX_VALUE, 1L << 35, (1L << 56) - 1, 1L << 56,
+                Long.MAX_VALUE };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int length = 0;
+        for (int value : ints)
+        {
+            length += VByteCodec.writeVInt(out, value);
+        }
+        for (long value : longs)
+        {
+            length += VByteCodec.writeVLong(out, value);
+        }
+        out.close();
+        assertEquals(bytes.size(), length);
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        for (int value : ints)
+        {
+            assertEquals(value, VByteCodec.readVInt(in));
+        }
+        for (long value : longs)
+        {
+            assertEquals(value, VByteCodec.readVLong(in));
+        }
+        assertEquals(0, in.remaining());
+    }
+
+    private static void roundTrip(IntCodec codec, int[] values) throws IOException
+    {
+        long sum = 0;
+        for (int value : values)
+        {
+            sum += value;
+        }
+        if (codec == EliasFanoCodec.INSTANCE && sum > Integer.MAX_VALUE)
+        {
+            // Elias-Fano writes the prefix sums of the list, which must be ints
+            try
+            {
+                encode(codec, values, false);
+                fail();
+            }
+            catch (IllegalArgumentException e)
+            {
+                return;
+            }
+        }
+        check(codec, values, false);
+    }
+
+    private static void roundTripAscending(IntCodec codec, int[] values) throws IOException
+    {
+        check(codec, values, true);
+    }
+
+    private static void check(IntCodec codec, int[] values, boolean ascending) throws IOException
+    {
+        int[] written = values.clone();
+        byte[] list = encode(codec, values, ascending);
+        assertArrayEquals(codec + ": the list written was changed", written, values);
+
+        // the list between other bytes, to check the codec starts and stops where it should
+        ByteBuffer in = ByteBuffer.allocate(3 + list.length + 8);
+        in.put(new byte[] { 7, 7, 7 }).put(list).putLong(0x5EA15EA15EA15EA1L);
+        in.position(3);
+        int[] read = new int[values.length + 5];
+        Arrays.fill(read, -1);
+        if (ascending) codec.decodeAscending(in, read, values.length);
+        else codec.decode(in, read, values.length);
+
+        String message = codec + (ascending ? " ascending" : "") + ", " + values.length + " ints";
+        assertArrayEquals(message, values, Arrays.copyOf(read, values.length));
+        for (int i = values.length; i < read.length; i++)
+        {
+            assertEquals(message + ": written past the list", -1, read[i]);
+        }
+        assertEquals(message + ": not left after the list", 3 + list.length, in.position());
+    }
+
+    private static byte[] encode(IntCodec codec, int[] values, boolean ascending) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (ascending) codec.encodeAscending(values, values.length, out);
+        else codec.encode(values, values.length, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
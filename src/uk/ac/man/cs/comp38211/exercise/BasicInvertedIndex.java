@@ -14,15 +14,18 @@ package uk.ac.man.cs.comp38211.exercise;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.function.IntSupplier;
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -34,300 +37,614 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
-import uk.ac.man.cs.comp38211.io.array.ArrayListWritable;
-import uk.ac.man.cs.comp38211.ir.Stemmer;
-import uk.ac.man.cs.comp38211.ir.StopAnalyser;
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.io.pair.PairOfInts;
+import uk.ac.man.cs.comp38211.io.pair.PairOfStringInt;
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.StemCache;
+import uk.ac.man.cs.comp38211.ir.TokenBuffer;
+import uk.ac.man.cs.comp38211.ir.TokenFilters.StemFilter;
 import uk.ac.man.cs.comp38211.util.XParser;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.map.FrontCodedString2IntBidiMap;
+import uk.ac.man.cs.comp38211.util.map.FrontCodedString2IntBidiMapBuilder;
 
 public class BasicInvertedIndex extends Configured implements Tool {
     private static final Logger LOG = Logger
             .getLogger(BasicInvertedIndex.class);
-    // to init stopwords.txt
-    private final static StopAnalyser stopAnalyser = new StopAnalyser();
 
     public static class Tokeniser {
-        // tokeniser uses stop analyzer and stemmer to tokenise lines
-        // but note that this is just for initialising the list
-        // The StopAnalyser class helps remove stop words
-        // the string to be used as the separator for tokenisation.
-        // separator should include ? as well..?
-        private final static String SEPARATOR = " ";
-
-        private final static Pattern datePattern = Pattern.compile(
-                "[0-9]{4}-[0-9]{2}-[0-9]{2}",
-                Pattern.CASE_INSENSITIVE
-        );
-        private final static Pattern urlPattern = Pattern.compile(
-                "http:|https:|\\.com",
-                Pattern.CASE_INSENSITIVE
-        );
-
-        private final static Pattern alphabetPattern = Pattern.compile(
-                "[a-zA-Z]+",
-                Pattern.CASE_INSENSITIVE
-        );
-
-        private final static Pattern toDeletePattern = Pattern.compile(
-                // TODO: but you're deleting "'s". Don't forget to fix this after you implement positional indexing.
-                "[^a-zA-Z\\-]",
-                Pattern.CASE_INSENSITIVE
-        );
+        // tokeniser uses stop analyzer and stemmer to tokenise lines.
+        // the steps themselves live in uk.ac.man.cs.comp38211.ir.TokenFilters,
+        // so that any query-side code can analyse text exactly like the index does.
+        // the chain of the inverted index, overridable with Analyzer.FILTERS:
+        public final static String FILTERS = "date" // domain-specific filter 1
+                + ",url" // domain-specific filter 2
+                + ",isbn" // domain-specific filter 3
+                + ",pagenum" // domain-specific filter 4
+                + ",alphabet" // domain-specific filter
+                + ",cleanse" // clean up left & right side of the token
+                + ",lowercase" // normalise tokens to lowercase
+                + ",stop" // filter out stop words
+                + ",stem"; // apply stemming after stopwords are filtered
+
+        public static Analyzer createAnalyzer(Configuration conf) throws IOException {
+            // tokens are separated by single spaces
+            return Analyzer.create(conf, Analyzer.Tokenizer.SPACE, FILTERS);
+        }
 
         public static ArrayList<String> tokenise(String line){
-            // adopt a functional paradigm to process list of tokens in an elegant, easy-to-read way.
-            return Arrays.stream(line.split(SEPARATOR)) // first split the line into tokens
-                    .filter(Tokeniser::isNotDate) // domain-specific filter 1
-                    .filter(Tokeniser::isNotUrl) // domain-specific filter 2
-                    .filter(Tokeniser::isNotISBN) // domain-specific filter 3
-                    .filter(Tokeniser::isNotPageNum) // domain-specific filter 4
-                    .filter(Tokeniser::containsAlphabet) // domain-specific filter
-                    .map(Tokeniser::cleanse) // clean up left & right side of the token
-                    .map(Tokeniser::normaliseCase)  // normalise tokens to lowercase
-                    .filter(Tokeniser::isNotStopWord) // filter out stop words
-                    .map(Tokeniser::stem) // apply stemming after stopwords are filtered
-                    .collect(Collectors.toCollection(ArrayList::new)); // collect as array list and return
+            // convenience for callers that want the tokens as strings.
+            // a one-off analyzer would never get to reuse a stem cache, so it has none.
+            Configuration conf = new Configuration(false);
+            conf.setInt(Analyzer.STEM_CACHE_SIZE, 0);
+            try {
+                return new ArrayList<>(createAnalyzer(conf).analyse(line));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e); // only the default stop words are used
+            }
         } // tokenise
-
-        private static String stem(String word) {
-            Stemmer s = new Stemmer();
-            // A char[] word is added to the stemmer with its length,
-            // then stemmed
-            s.add(word.toCharArray(), word.length());
-            s.stem();
-
-            // return the stemmed char[] word as a string
-            return s.toString();
-        } //
-
-        private static String normaliseCase(String token) {
-            // for now, lower the case of all terms
-            // could work on conditional folding?
-            return token.toLowerCase();
-        }
-
-        // domain-specific filters
-        private static boolean isNotDate(String token) {
-            // e.g.:
-            // 2009-06-13.?
-            // (1992-02-20).|1	[Bart_the_Lover.txt.gz|1]
-            // (1997),|1	[Bart_the_General.txt.gz|1]
-            // any four-digit numbers as well. (might be important (e.g.
-            // bart mentionining a novel 1984, or 1940s), but
-            // but make a distinction between
-            // making a compromise here.
-            return ! datePattern.matcher(token).find();
-        }
-        private static boolean isNotUrl(String token) {
-            // e.g.:
-            // http://www.npr.org/templates/story/story.php?storyid=4249835.|1	[Bart_the_Mother.txt.gz|1]
-            // and also:
-            // tvshowsondvd.com.|2	[Bart_the_General.txt.gz|1, Bart_the_Genius.txt.gz|1]
-            // tv.com|4	[Bart_the_Fink.txt.gz|1, Bart_the_Genius.txt.gz|1, Bart_the_Mother.txt.gz|1, Bart_the_Murderer.txt.gz|1]
-            // ugo.com.|1	[Bart_the_Genius.txt.gz|1]
-            return ! urlPattern.matcher(token).find();
-        }
-
-
-        private static boolean isNotISBN(String token) {
-            // e.g.
-            // isbn?0-00-638898-1.?|4	[Bart_the_Fink.txt.gz|1, Bart_the_General.txt.gz|1, Bart_the_Genius.txt.gz|1, Bart_the_Murderer.txt.gz|1]
-            // isbn?0-679-31318-4.?|1	[Bart_the_Genius.txt.gz|1]
-            // isbn?978-0-306-81341-2.?|1	[Bart_the_Fink.txt.gz|1]
-            // isbn?978-0-415-96917-8.?|1	[Bart_the_Fink.txt.gz|1]
-            // isbn?978-0-8126-9433-8.?|1
-            // there is no way "my boss" would search for isbn
-            return !token.startsWith("isbn");
-        }
-        private static boolean isNotPageNum(String token) {
-            // e.g.
-            //p.|2	[Bart_the_Genius.txt.gz|1, Bart_the_Lover.txt.gz|1]
-            //p.?136.|1	[Bart_the_Fink.txt.gz|1]
-            //p.?18.|1	[Bart_the_Genius.txt.gz|1]
-            //p.?195.|1	[Bart_the_Fink.txt.gz|1]
-            //p.?21.|1	[Bart_the_General.txt.gz|1]
-            //p.?36d.?|1	[Bart_the_Fink.txt.gz|1]
-            return !token.startsWith("p.");
-        }
-
-        private static boolean containsAlphabet(String token) {
-            // e.g.
-            // just pure numbers.
-            return alphabetPattern.matcher(token).find();
-        }
-
-        private static boolean isNotStopWord(String token) {
-            // get use of StopAnalyzer
-            // e.g. don't, ain't, etc.
-            return ! StopAnalyser.isStopWord(token);
-        }
-
-        private static String cleanse(String token) {
-            // replace all but alphabets (and hyphen) with empty strings
-            return token.replaceAll(toDeletePattern.toString(), "");
-        } // cleanse
     } // Tokeniser
 
+    // The mappers of the index read whole documents, with the doc id as the key:
+    // from WholeFileInputFormat (or CombineWholeFileInputFormat, which packs many docs per split),
+    // or from the SequenceFiles written by Ingest. A doc is never split, and a split may hold many docs
     public static class Map extends
-            Mapper<Object, Text, Text, Text> {
+            Mapper<Text, Text, PairOfStringInt, PostingWritable> {
         // INPUTFILE holds the name of the current file
         private final static Text INPUT_FILE = new Text();
+        // ... and docno its number, which is what the keys carry
+        private static int docno;
+        // the doc numbers of the job, from the docno pass
+        private static FrontCodedString2IntBidiMap docnos;
+        // the position of the next token in the current doc.
+        // a doc is one record, so it is counted right here rather than with a shared Hadoop Counter
+        private static int position;
+        // the (docno, length) pairs of the docs of the task, for the BM25 weighting of a binary index;
+        // null for a text index
+        private static ArrayListOfInts docLengths;
+        // KEY should be set to the current (term, docno)
+        private final static PairOfStringInt KEY = new PairOfStringInt();
         // TOKEN should be set to the current token rather than creating a
         private final static Text TOKEN = new Text();
-        // VALUE should be set to the current value
-        private final static Text VALUE = new Text();
-        // to be used for in-mapper aggregation (in-memory local cache)
-        private final static HashMap<String, Integer> LINE_TERM_FREQ = new HashMap<>(); // for agg. term freq
-        private final static HashMap<String, ArrayList<Long>> LINE_TERM_POSITIONS = new HashMap<>(); // for agg. pos
-        // This method gets the name of the file the current Mapper is working on
+        // to be used for in-mapper aggregation (in-memory local cache):
+        // the postings of every term seen so far in the current doc of the split.
+        // they are emitted at the end of the doc, or as soon as the buffer exceeds its budget.
+        // the doc id is moved into the key for the secondary sort, so it's left out of the postings
+        private final static HashMap<Text, PostingWritable> POSTINGS = new HashMap<>();
+        // a rough estimate of the heap taken by the buffer: a fixed cost per posting
+        // (hash map entry, term, PostingWritable and their arrays) plus the positions,
+        // counted twice as the position arrays grow by doubling
+        private final static int POSTING_BYTES = 200;
+        private final static int POSITION_BYTES = 8;
+        private static long bufferedBytes;
+        private static int maxPostings;
+        private static long maxBytes;
+        // one analyzer per mapper, so that its Stemmer, stem cache and buffers are reused for every token
+        private Analyzer analyzer;
+        private final TokenBuffer termBuffer = new TokenBuffer();
+        private PostingEmitter emitter;
+
+        // receives the buffered postings when they're flushed
+        public interface PostingEmitter {
+            void emit(Text term, PostingWritable posting) throws IOException, InterruptedException;
+        }
+
         @Override
-        public void setup(Context context) {
-            String inputFilePath = ((FileSplit) context.getInputSplit()).getPath().toString();
-            String[] pathComponents = inputFilePath.split("/");
-            INPUT_FILE.set(pathComponents[pathComponents.length - 1]);
+        public void setup(Context context) throws IOException {
+            setBudget(context.getConfiguration());
+            setDocnos(context.getConfiguration());
+            analyzer = Tokeniser.createAnalyzer(context.getConfiguration());
+            emitter = (term, posting) -> {
+                KEY.set(term.toString(), docno);
+                context.write(KEY, posting);
+            };
         }
 
-        public void map(Object key, Text value, Context context)
+        public static void setDocnos(Configuration conf) throws IOException {
+            docnos = loadDocnos(conf);
+            INPUT_FILE.clear(); // tasks may share the JVM: look the first doc up again
+            docLengths = conf.get(BinaryPostingsOutputFormat.CODEC) == null ? null : new ArrayListOfInts();
+        }
+
+        // writes the doc lengths of the task next to the index, if it is a binary one
+        public static void writeDocLengths(TaskInputOutputContext<?, ?, ?, ?> context)
                 throws IOException, InterruptedException {
-            // clear all the local caches to be used from the start
-            TOKEN.clear();
-            VALUE.clear();
-            LINE_TERM_FREQ.clear();
-            LINE_TERM_POSITIONS.clear();
-            // TODO here, the poisitional index is incorrect. Because you are tokenizing them first.
-            // TODO: This is the way you should have done it!
-            // TODO: make sure you don't tokenize them before you calculate positional index.
-            long start_idx = ((FileSplit) context.getInputSplit()).getStart();
-            // get a counter with doc_id as both the group name and counter name
-            // this will be globally shared among mapper operations with the same doc id
-            Counter counter = context.getCounter(INPUT_FILE.toString(), INPUT_FILE.toString());
-            ArrayList<String> tokens = Tokeniser.tokenise(value.toString()); // tokenise the line
-            inMapperAggregation(tokens, counter); // execute in-mapper aggregation
-            emitAggregations(context); // emit the result of aggregations
+            if (docLengths != null) {
+                BinaryPostingsOutputFormat.writeDocLengths(context, docLengths);
+            }
+        }
+
+        public static void setBudget(Configuration conf) {
+            maxPostings = conf.getInt(MAX_BUFFERED_POSTINGS, DEFAULT_MAX_BUFFERED_POSTINGS);
+            // by default, a quarter of the task's heap
+            maxBytes = conf.getLong(MAX_BUFFERED_BYTES, Runtime.getRuntime().maxMemory() / 4);
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            flush(context, emitter); // emit what's left of the aggregations
+            writeDocLengths(context);
+            // report how well the stem cache did for this task
+            StemFilter stem = analyzer.getFilter(StemFilter.class);
+            if (stem != null) {
+                StemCache stemCache = stem.getStemCache();
+                context.getCounter(Counters.STEM_CACHE_HITS).increment(stemCache.getHits());
+                context.getCounter(Counters.STEM_CACHE_MISSES).increment(stemCache.getMisses());
+            }
+        }
+
+        public void map(Text key, Text value, Context context)
+                throws IOException, InterruptedException {
+            // the key is the doc id, and the value the whole doc
+            aggregate(analyzer, termBuffer, key, value, context, emitter);
         } // map
 
-        public static void inMapperAggregation(ArrayList<String> tokens, Counter counter) {
-            ArrayList<Long> positions;
-            // tokenise the line using the predefined Singleton class
-            for (String term: tokens) {
-                // aggregate line term freq
-                LINE_TERM_FREQ.put(term, LINE_TERM_FREQ.getOrDefault(term, 0) + 1);
-                // aggregate line term positions
-                if (LINE_TERM_POSITIONS.containsKey(term)) {
-                    LINE_TERM_POSITIONS.get(term).add(counter.getValue());
+        public static void aggregate(Analyzer analyzer, TokenBuffer termBuffer, Text docId, Text doc,
+                TaskInputOutputContext<?, ?, ?, ?> context, PostingEmitter emitter)
+                throws IOException, InterruptedException {
+            if (!docId.equals(INPUT_FILE)) {
+                // the buffered postings belong to the previous doc (if any) of the split
+                if (!POSTINGS.isEmpty()) {
+                    flush(context, emitter);
+                }
+                INPUT_FILE.set(docId);
+                docno = docnos.get(docId.toString());
+                if (docno < 0) {
+                    throw new IOException("Doc not numbered by the docno pass: " + docId);
+                }
+            }
+            // positions are counted from the first token of the doc, across its lines
+            position = 0;
+            // tokenise the doc line by line, executing in-mapper aggregation on each token
+            analyzer.analyseLines(doc, termBuffer, term -> {
+                term.copyTo(TOKEN);
+                inMapperAggregation(TOKEN);
+                if (POSTINGS.size() >= maxPostings || bufferedBytes >= maxBytes) {
+                    // the buffer is full: emit it now rather than risk running out of heap
+                    context.getCounter(Counters.EARLY_FLUSHES).increment(1);
+                    flush(context, emitter);
                 }
-                else {
-                    positions = new ArrayList<>();
-                    positions.add(counter.getValue());
-                    LINE_TERM_POSITIONS.put(term, positions);
-                }counter.increment(1);
-            } // for each tokenized term
+            });
+            // the length of the doc is the number of its terms
+            if (docLengths != null) {
+                docLengths.add(docno);
+                docLengths.add(position);
+            }
+        } // aggregate
+
+        public static void inMapperAggregation(Text term) {
+            PostingWritable posting = POSTINGS.get(term);
+            if (posting == null) {
+                // the tokeniser reuses term for the next token, so copy it only when it's a new key
+                posting = new PostingWritable();
+                POSTINGS.put(new Text(term), posting);
+                bufferedBytes += POSTING_BYTES + term.getLength();
+            }
+            // aggregate term freq & term positions (the number of positions being the term freq)
+            posting.addPosition(position++);
+            bufferedBytes += POSITION_BYTES;
         } // inMapperAggregation
 
-        public static void emitAggregations(Context context)
-                throws IOException, InterruptedException{
-            String term;
-            int lineTermFreq;
-            for (java.util.Map.Entry<String, Integer> entry : LINE_TERM_FREQ.entrySet()){
-                term = entry.getKey();
-                lineTermFreq = entry.getValue();
-                TOKEN.set(term);
-                VALUE.set(INPUT_FILE.toString() // encode doc id
-                        + "|" + lineTermFreq  // encode a summary of term freq
-                        + "|" + LINE_TERM_POSITIONS.get(term).toString()); // encode a summary of term pos
-                context.write(TOKEN, VALUE);
-            } // for each line term freq
-        }
+        public static void flush(TaskInputOutputContext<?, ?, ?, ?> context, PostingEmitter emitter)
+                throws IOException, InterruptedException {
+            // emit the result of aggregations, and start over
+            for (java.util.Map.Entry<Text, PostingWritable> entry : POSTINGS.entrySet()) {
+                emitter.emit(entry.getKey(), entry.getValue());
+            } // for each buffered posting
+            context.getCounter(Counters.POSTINGS_EMITTED).increment(POSTINGS.size());
+            context.getCounter(Counters.FLUSHES).increment(1);
+            POSTINGS.clear();
+            bufferedBytes = 0;
+        } // flush
     } // mapper
 
-    public static class Reduce extends Reducer<Text, Text, Text, ArrayListWritable<Text>> {
-        // TERM_FREQ should be set to the current term freq for a given doc
-        private final static HashMap<String, Integer> TERM_FREQ = new HashMap<>();
-        // TERM_POSITIONS
-        private final static HashMap<String, ArrayList<Integer>> TERM_POSITIONS = new HashMap<>();
-        // POSTINGS_LIST should be set to the current posting list for a given term
-        private final static ArrayListWritable<Text> POSTINGS_LIST = new ArrayListWritable<>();
-        // DOC_ID_SET should be set to the current set of unique doc ids for a given term
-        // this is needed to compute DOC_FREQ
-        private final static HashSet<String> DOC_ID_SET = new HashSet<>();
-        // TOKEN_WITH_DOC_FREQ
-        private final static Text TOKEN_WITH_DOC_FREQ = new Text();
-
-
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            // This Reduce Job should take in a key and an iterable of file names
-            // It should convert this iterable to a writable array list and output
-            // clear all the local caches on start
-            TERM_FREQ.clear();
-            TERM_POSITIONS.clear();
-            POSTINGS_LIST.clear();
-            DOC_ID_SET.clear();
-            TOKEN_WITH_DOC_FREQ.clear();
-            parseInMapperAggregations(values); // first, parse the aggregated summary and put the results in the cache
-            emitIndex(key.toString(), context); // from the cache, build inverted index and emit it
+    public static class Reduce extends Reducer<PairOfStringInt, PostingWritable, Text, PostingWritable> {
+        // TERM should be set to the current term
+        private final static Text TERM = new Text();
+        // DOC_POSTING merges the postings of the current doc
+        private final static PostingWritable DOC_POSTING = new PostingWritable();
+
+        public void reduce(PairOfStringInt key, Iterable<PostingWritable> values, Context context)
+                throws IOException, InterruptedException {
+            // This Reduce Job should take in a key and an iterable of postings
+            // It should write out the postings list of the term, one posting at a time
+            // (the framework updates the docno of key with every value)
+            index(key.getLeftElement(), key::getRightElement, values, context);
         } // reduce
 
-        public static void parseInMapperAggregations(Iterable<Text> values){
-            String docId;
-            int lineTermFreq;
-            ArrayList<Integer> lineTermPositions;
-            String[] docIdWithSummary;
-            for (Text t: values) {
-                // escaping "|" in java.
-                // reference: https://www.baeldung.com/java-regexp-escape-char
-                docIdWithSummary = t.toString().split("\\Q|\\E");
-                // get the summaries precomputed by the combiner pattern in mapper
-                docId = docIdWithSummary[0];
-                lineTermFreq = Integer.parseInt(docIdWithSummary[1]);
-                lineTermPositions = parseLineTermPositionsStr(docIdWithSummary[2]);
-                // update unique doc id set, term freq and term positions
-                DOC_ID_SET.add(docId);
-                TERM_FREQ.put(docId, TERM_FREQ.getOrDefault(docId, 0) + lineTermFreq);
-                if (TERM_POSITIONS.containsKey(docId)) {
-                    // if it already exists, just merge into the current
-                    TERM_POSITIONS.get(docId).addAll(lineTermPositions);
-                }
-                else {
-                    // if it does not exist, add in the positions that we have
-                    TERM_POSITIONS.put(docId, lineTermPositions);
+        public static void index(String term, IntSupplier docIds, Iterable<PostingWritable> values,
+                TaskInputOutputContext<?, ?, Text, PostingWritable> context)
+                throws IOException, InterruptedException {
+            // thanks to the secondary sort, the postings of a term arrive in docno order:
+            // merge the adjacent ones of the same doc (one per line of the doc), and the
+            // postings list comes out sorted in a single pass, without buffering whole docs.
+            // every posting is written out as soon as its doc is done: PostingsOutputFormat
+            // writes the list in chunks, and works out the doc freq, so nothing grows with it
+            TERM.set(term);
+            int docId = -1;
+            for (PostingWritable posting : values) {
+                if (docIds.getAsInt() != docId) {
+                    if (docId >= 0) {
+                        context.write(TERM, DOC_POSTING);
+                    }
+                    docId = docIds.getAsInt();
+                    DOC_POSTING.set(docId);
                 }
-                // update doc_freq
+                DOC_POSTING.merge(posting); // keeps the positions in order
             } // for values
-        } // parseInMapperAggregations
-
-        private static ArrayList<Integer> parseLineTermPositionsStr(String lineTermPositionsStr) {
-            // e.g.
-            // [30, 39, 104, 248, 628, 664]
-            // [30, 54, 347, 376, 817, 939]
-            // get rid of the brackets
-            ArrayList<Integer> LineTermPositions = new ArrayList<>();
-            lineTermPositionsStr = lineTermPositionsStr.replace("[", "");
-            lineTermPositionsStr = lineTermPositionsStr.replace("]", "");
-            for(String numStr : lineTermPositionsStr.split(",")){
-                LineTermPositions.add(Integer.parseInt(numStr.trim()));
+            if (docId >= 0) {
+                context.write(TERM, DOC_POSTING);
+            }
+            // the important terms are weighed in a binary index (-codec): it stores the greatest
+            // BM25 weights of every list and block (see ir.index.Bm25 and IndexWriter) for ranking
+        } // index
+    } // Reduce
+
+    // The combiner merges the postings of the same (term, docno) key, which come
+    // from different flushes of a mapper's buffer, or from mappers of different splits of a doc.
+    // The result is one posting per key, with its positions in order.
+    // Only the positions are merged, so it works with the keys of both modes.
+    public static class Combine<K> extends Reducer<K, PostingWritable, K, PostingWritable> {
+        private final static PostingWritable POSTING = new PostingWritable();
+
+        public void reduce(K key, Iterable<PostingWritable> values, Context context)
+                throws IOException, InterruptedException {
+            POSTING.clear(); // the docno is in the key
+            for (PostingWritable posting : values) {
+                POSTING.merge(posting); // sums the term freqs, as the term freq is the number of positions
+            }
+            context.write(key, POSTING);
+        }
+    } // Combine
+
+    // Secondary sort: the map output keys are (term, docno) pairs, sorted on both
+    // by the raw comparator of the pair class, while the partitioner and the grouping
+    // comparator below only look at the term. So every reduce call gets all the
+    // postings of one term, in docno order.
+    public static class TermPartitioner extends Partitioner<PairOfStringInt, PostingWritable> {
+        @Override
+        public int getPartition(PairOfStringInt key, PostingWritable value, int numPartitions) {
+            return (key.getLeftElement().hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    } // TermPartitioner
+
+    public static class TermGroupingComparator extends WritableComparator {
+        public TermGroupingComparator() {
+            super(PairOfStringInt.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            // the term comes first: a vint length, then its UTF-8 bytes
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                return compareBytes(b1, s1 + n1, readVInt(b1, s1), b2, s2 + n2, readVInt(b2, s2));
             }
-            return LineTermPositions;
+            catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((PairOfStringInt) a).getLeftElement().compareTo(((PairOfStringInt) b).getLeftElement());
         }
+    } // TermGroupingComparator
 
-        public static void emitIndex(String term, Context context)
+    // the same for the (term id, docno) keys of the dictionary mode
+    public static class TermIdPartitioner extends Partitioner<PairOfInts, PostingWritable> {
+        @Override
+        public int getPartition(PairOfInts key, PostingWritable value, int numPartitions) {
+            return key.getLeftElement() % numPartitions; // ids are never negative
+        }
+    } // TermIdPartitioner
+
+    public static class TermIdGroupingComparator extends WritableComparator {
+        public TermIdGroupingComparator() {
+            super(PairOfInts.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            // the term id comes first, as 4 bytes
+            return Integer.compare(readInt(b1, s1), readInt(b2, s2));
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public int compare(WritableComparable a, WritableComparable b) {
+            return Integer.compare(((PairOfInts) a).getLeftElement(), ((PairOfInts) b).getLeftElement());
+        }
+    } // TermIdGroupingComparator
+
+    // With more than one reducer, the terms are range partitioned instead, so that the
+    // shards come out globally sorted: part-r-00000, part-r-00001, ... concatenate into one
+    // sorted index. The ranges come from the sampling pass below, which sizes them to
+    // balance the posting volume of the reducers rather than their number of terms.
+    public static class TermRangePartitioner extends Partitioner<PairOfStringInt, PostingWritable>
+            implements Configurable {
+        private Configuration conf;
+        // the first term of every partition but the first, in sorted order
+        private String[] splits;
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            try {
+                splits = loadPartitions(conf);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+
+        @Override
+        public int getPartition(PairOfStringInt key, PostingWritable value, int numPartitions) {
+            return partition(Arrays.binarySearch(splits, key.getLeftElement()), numPartitions);
+        }
+    } // TermRangePartitioner
+
+    public static class TermIdRangePartitioner extends Partitioner<PairOfInts, PostingWritable>
+            implements Configurable {
+        private Configuration conf;
+        // the id of the first term of every partition but the first
+        private int[] splits;
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            try {
+                // the term ids follow the order of the terms, so the split terms turn into split ids
+                FrontCodedString2IntBidiMap dictionary = loadDictionary(conf);
+                String[] terms = loadPartitions(conf);
+                splits = new int[terms.length];
+                for (int i = 0; i < terms.length; i++) {
+                    splits[i] = dictionary.get(terms[i]);
+                    if (splits[i] < 0) {
+                        throw new IllegalStateException("Split term not in the dictionary: " + terms[i]);
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+
+        @Override
+        public int getPartition(PairOfInts key, PostingWritable value, int numPartitions) {
+            return partition(Arrays.binarySearch(splits, key.getLeftElement()), numPartitions);
+        }
+    } // TermIdRangePartitioner
+
+    // the partition of a key found at index i by a binary search of the split points,
+    // that is the number of split points up to the key
+    private static int partition(int i, int numPartitions) {
+        return Math.min(i >= 0 ? i + 1 : -(i + 1), numPartitions - 1);
+    }
+
+    // The sampling pass runs over a random sample of the docs, and measures the posting
+    // volume of every term in it: one per posting plus one per position, which is about
+    // what the term adds to the shuffle and to its shard of the index.
+    public static class SampleMap extends
+            Mapper<Text, Text, Text, LongWritable> {
+        private final static Text TOKEN = new Text();
+        // the volume of every term of the task, written out once in cleanup
+        private final static HashMap<Text, LongWritable> VOLUMES = new HashMap<>();
+        // the terms of the current doc
+        private final static HashSet<Text> DOC_TERMS = new HashSet<>();
+        private Analyzer analyzer;
+        private final TokenBuffer termBuffer = new TokenBuffer();
+
+        @Override
+        public void setup(Context context) throws IOException {
+            analyzer = Tokeniser.createAnalyzer(context.getConfiguration());
+        }
+
+        @Override
+        public void run(Context context) throws IOException, InterruptedException {
+            setup(context);
+            int docs = context.getConfiguration().getInt(SAMPLE_TASK_DOCS, 0);
+            if (docs == 0) {
+                // one doc per file: the files are the sample
+                while (context.nextKeyValue()) {
+                    map(context.getCurrentKey(), context.getCurrentValue(), context);
+                }
+            }
+            else {
+                // a SequenceFile holds many docs, in the order they were ingested: a uniform sample
+                // of the docs of the split is kept by reservoir sampling, seeded by the split so that
+                // the same input gets the same ranges. Every doc of the split is read, but only the
+                // sample is analysed
+                Random random = new Random(38211 + context.getInputSplit().toString().hashCode());
+                ArrayList<Text[]> reservoir = new ArrayList<>();
+                for (long seen = 0; context.nextKeyValue(); seen++) {
+                    Text key = context.getCurrentKey();
+                    Text value = context.getCurrentValue();
+                    if (seen < docs) {
+                        reservoir.add(new Text[] { new Text(key), new Text(value) });
+                        continue;
+                    }
+                    long i = (long) (random.nextDouble() * (seen + 1));
+                    if (i < docs) {
+                        reservoir.get((int) i)[0].set(key);
+                        reservoir.get((int) i)[1].set(value);
+                    }
+                }
+                for (Text[] doc : reservoir) {
+                    map(doc[0], doc[1], context);
+                }
+            }
+            cleanup(context);
+        }
+
+        public void map(Text key, Text value, Context context)
                 throws IOException, InterruptedException {
-            // TODO: should have done flagging for important terms.
-            // by actually getting TF * IDF.
-            int lineTermFreq;
-            String docId;
-            ArrayList<Integer> positionalIndex;
-            for (java.util.Map.Entry<String, Integer> entry : TERM_FREQ.entrySet()) {
-                docId = entry.getKey();
-                lineTermFreq = entry.getValue();
-                positionalIndex = TERM_POSITIONS.get(docId);
-                POSTINGS_LIST.add(new Text(docId + "|" + lineTermFreq+ "|" + positionalIndex));
-            } // for each term freq pair
-            Collections.sort(POSTINGS_LIST); // postings list must be sorted after the index is sorted by terms
-            int DOC_FREQ = DOC_ID_SET.size(); // unique set of all doc ids for this term is the doc freq
-            TOKEN_WITH_DOC_FREQ.set(term + "|" + DOC_FREQ); // join the term with doc freq
-            // sort the postings
-            context.write(TOKEN_WITH_DOC_FREQ, POSTINGS_LIST);
-        } // emitInvertedIndex ..
-    } // Reduce
+            DOC_TERMS.clear();
+            analyzer.analyseLines(value, termBuffer, term -> {
+                term.copyTo(TOKEN);
+                LongWritable volume = VOLUMES.get(TOKEN);
+                if (volume == null) {
+                    volume = new LongWritable();
+                    VOLUMES.put(new Text(TOKEN), volume);
+                }
+                if (!DOC_TERMS.contains(TOKEN)) {
+                    DOC_TERMS.add(new Text(TOKEN));
+                    volume.set(volume.get() + 1); // a new posting
+                }
+                volume.set(volume.get() + 1); // and a position
+            });
+        } // map
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            for (java.util.Map.Entry<Text, LongWritable> entry : VOLUMES.entrySet()) {
+                context.write(entry.getKey(), entry.getValue());
+            }
+            VOLUMES.clear();
+        }
+    } // SampleMap
+
+    // also the combiner of the sampling pass
+    public static class SampleReduce extends
+            Reducer<Text, LongWritable, Text, LongWritable> {
+        private final static LongWritable VOLUME = new LongWritable();
+
+        public void reduce(Text key, Iterable<LongWritable> values, Context context)
+                throws IOException, InterruptedException {
+            long volume = 0;
+            for (LongWritable value : values) {
+                volume += value.get();
+            }
+            VOLUME.set(volume);
+            context.write(key, VOLUME);
+        }
+    } // SampleReduce
+
+    // The dictionary mode (-dictionary) runs two jobs. The vocabulary pass below
+    // collects the distinct terms, which are numbered in sorted order and stored
+    // as a front-coded dictionary. The indexing pass then shuffles the 4-byte term ids
+    // instead of the terms, and only the reducer turns them back into strings.
+    public static class VocabularyMap extends
+            Mapper<Text, Text, Text, NullWritable> {
+        private final static Text TOKEN = new Text();
+        // the distinct terms of the task, written out once in cleanup
+        private final static HashSet<Text> TERMS = new HashSet<>();
+        private Analyzer analyzer;
+        private final TokenBuffer termBuffer = new TokenBuffer();
+
+        @Override
+        public void setup(Context context) throws IOException {
+            analyzer = Tokeniser.createAnalyzer(context.getConfiguration());
+        }
+
+        public void map(Text key, Text value, Context context)
+                throws IOException, InterruptedException {
+            analyzer.analyseLines(value, termBuffer, term -> {
+                term.copyTo(TOKEN);
+                if (!TERMS.contains(TOKEN)) {
+                    TERMS.add(new Text(TOKEN));
+                }
+            });
+        } // map
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            for (Text term : TERMS) {
+                context.write(term, NullWritable.get());
+            }
+            TERMS.clear();
+        }
+    } // VocabularyMap
+
+    // also the combiner of the vocabulary pass
+    public static class VocabularyReduce extends
+            Reducer<Text, NullWritable, Text, NullWritable> {
+        public void reduce(Text key, Iterable<NullWritable> values, Context context)
+                throws IOException, InterruptedException {
+            context.write(key, NullWritable.get());
+        }
+    } // VocabularyReduce
+
+    public static class TermIdMap extends
+            Mapper<Text, Text, PairOfInts, PostingWritable> {
+        private final static PairOfInts KEY = new PairOfInts();
+        private FrontCodedString2IntBidiMap dictionary;
+        private Analyzer analyzer;
+        private final TokenBuffer termBuffer = new TokenBuffer();
+        private Map.PostingEmitter emitter;
+
+        @Override
+        public void setup(Context context) throws IOException {
+            Map.setBudget(context.getConfiguration());
+            Map.setDocnos(context.getConfiguration());
+            analyzer = Tokeniser.createAnalyzer(context.getConfiguration());
+            dictionary = loadDictionary(context.getConfiguration());
+            emitter = (term, posting) -> {
+                String s = term.toString();
+                int id = dictionary.get(s);
+                if (id < 0) {
+                    throw new IOException("Term not in the dictionary: " + s);
+                }
+                KEY.set(id, Map.docno);
+                context.write(KEY, posting);
+            };
+        }
+
+        public void map(Text key, Text value, Context context)
+                throws IOException, InterruptedException {
+            Map.aggregate(analyzer, termBuffer, key, value, context, emitter);
+        } // map
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            Map.flush(context, emitter);
+            Map.writeDocLengths(context);
+        }
+    } // TermIdMap
+
+    public static class TermIdReduce extends
+            Reducer<PairOfInts, PostingWritable, Text, PostingWritable> {
+        private FrontCodedString2IntBidiMap dictionary;
+
+        @Override
+        public void setup(Context context) throws IOException {
+            dictionary = loadDictionary(context.getConfiguration());
+        }
+
+        public void reduce(PairOfInts key, Iterable<PostingWritable> values, Context context)
+                throws IOException, InterruptedException {
+            Reduce.index(dictionary.get(key.getLeftElement()), // back to the term
+                    key::getRightElement, values, context);
+        }
+    } // TermIdReduce
+
+    // Counters reported by the jobs
+    public static enum Counters {
+        STEM_CACHE_HITS, // tokens whose stem was memoised
+        STEM_CACHE_MISSES, // tokens that went through the Stemmer
+        POSTINGS_EMITTED, // postings emitted by the mappers
+        FLUSHES, // times a mapper emitted its buffered postings
+        EARLY_FLUSHES, // ... of which because the buffer was full, before the end of the split
+        INDEX_POSTINGS, // postings written by BinaryPostingsOutputFormat
+        INDEX_POSTINGS_BYTES, // ... and the bytes of their doc ids and tfs
+        INDEX_POSITIONS, // positions written by BinaryPostingsOutputFormat
+        INDEX_POSITIONS_BYTES // ... and their bytes
+    }
 
     // Lets create an object! :)
     public BasicInvertedIndex() { }
@@ -336,6 +653,75 @@ public class BasicInvertedIndex extends Configured implements Tool {
     private static final String INPUT = "input";
     private static final String OUTPUT = "output";
     private static final String NUM_REDUCERS = "numReducers";
+    private static final String STEM_CACHE = "stemCacheSize";
+    private static final String STOP_WORDS = "stopwords";
+    private static final String DICTIONARY = "dictionary";
+    private static final String SEQUENCE_FILES = "sequenceFiles";
+    private static final String COMBINE = "combine";
+    private static final String CODEC = "codec";
+
+    // Configuration keys
+    public static final String DICTIONARY_FILE = "comp38211.dictionary.file";
+    public static final String DOCNO_FILE = "comp38211.docno.file";
+    public static final String PARTITIONS_FILE = "comp38211.partitions.file";
+    // the number of docs the sampling pass reads, with more than one reducer
+    public static final String SAMPLE_DOCS = "comp38211.partitions.sample.docs";
+    public static final int DEFAULT_SAMPLE_DOCS = 1000;
+    // set by the driver: the number of docs each task of the sampling pass reads
+    private static final String SAMPLE_TASK_DOCS = "comp38211.partitions.sample.task.docs";
+    // whether the input is the SequenceFiles of Ingest, rather than one doc per file
+    public static final String SEQUENCE_INPUT = "comp38211.input.sequence";
+    // the size of the splits of many files, when one doc per file is packed with CombineWholeFileInputFormat
+    public static final String COMBINE_SPLIT_SIZE = "comp38211.input.combine.split.size";
+    // the budget of the postings buffered by a mapper: a number of postings,
+    // and an estimate of their heap (by default a quarter of the task's heap)
+    public static final String MAX_BUFFERED_POSTINGS = "comp38211.map.buffer.postings";
+    public static final String MAX_BUFFERED_BYTES = "comp38211.map.buffer.bytes";
+    public static final int DEFAULT_MAX_BUFFERED_POSTINGS = 1000000;
+
+    // the term dictionary shipped with the indexing pass of the dictionary mode
+    public static FrontCodedString2IntBidiMap loadDictionary(Configuration conf) throws IOException {
+        return loadCached(conf, DICTIONARY_FILE);
+    }
+
+    // the doc name <-> docno mapping shipped with the indexing pass
+    public static FrontCodedString2IntBidiMap loadDocnos(Configuration conf) throws IOException {
+        return loadCached(conf, DOCNO_FILE);
+    }
+
+    // the split points of the range partitioners, shipped with the indexing pass
+    public static String[] loadPartitions(Configuration conf) throws IOException {
+        ArrayList<String> splits = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                FileSystem.getLocal(conf).open(cachedFile(conf, PARTITIONS_FILE)), "UTF-8"));
+        try {
+            String term;
+            while ((term = reader.readLine()) != null) {
+                splits.add(term);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return splits.toArray(new String[splits.size()]);
+    }
+
+    private static FrontCodedString2IntBidiMap loadCached(Configuration conf, String key) throws IOException {
+        return new FrontCodedString2IntBidiMap(FileSystem.getLocal(conf), cachedFile(conf, key));
+    }
+
+    private static Path cachedFile(Configuration conf, String key) throws IOException {
+        String name = conf.get(key);
+        Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+        if (name != null && cached != null) {
+            for (Path path : cached) {
+                if (path.getName().equals(name)) {
+                    return path;
+                }
+            }
+        }
+        throw new IOException(key + " " + name + " not in the distributed cache");
+    }
 
     @SuppressWarnings({ "static-access" })
     public int run(String[] args) throws Exception {
@@ -348,6 +734,20 @@ public class BasicInvertedIndex extends Configured implements Tool {
                 .withDescription("output path").create(OUTPUT));
         options.addOption(OptionBuilder.withArgName("num").hasArg()
                 .withDescription("number of reducers").create(NUM_REDUCERS));
+        options.addOption(OptionBuilder.withArgName("num").hasArg()
+                .withDescription("number of stems memoised per mapper (0 to disable)").create(STEM_CACHE));
+        options.addOption(OptionBuilder.withArgName("path").hasArg()
+                .withDescription("stop word list to ship with the job").create(STOP_WORDS));
+        options.addOption(OptionBuilder
+                .withDescription("shuffle integer term ids, from a dictionary built by a first pass"
+                        + " into <output>-dictionary").create(DICTIONARY));
+        options.addOption(OptionBuilder
+                .withDescription("read the (doc id, doc) SequenceFiles written by Ingest").create(SEQUENCE_FILES));
+        options.addOption(OptionBuilder.withArgName("bytes").hasArg()
+                .withDescription("pack many input files into each split, of up to this many bytes").create(COMBINE));
+        options.addOption(OptionBuilder.withArgName("name").hasArg()
+                .withDescription("write a binary index, compressed with this codec: vbyte, simple8b or eliasfano")
+                .create(CODEC));
 
         CommandLine cmdline = null;
         CommandLineParser parser = new XParser(true);
@@ -373,42 +773,285 @@ public class BasicInvertedIndex extends Configured implements Tool {
         }
 
         // Create a new Map Reduce Job
-        Configuration conf = new Configuration();
-        Job job = new Job(conf);
+        // (generic -D options, such as Analyzer.FILTERS, end up in getConf())
+        Configuration conf = getConf();
+        if (cmdline.hasOption(STEM_CACHE)) {
+            conf.setInt(Analyzer.STEM_CACHE_SIZE, Integer.parseInt(cmdline.getOptionValue(STEM_CACHE)));
+        }
+        if (cmdline.hasOption(STOP_WORDS)) {
+            // ship the list with the distributed cache, the mappers pick it up in setup
+            Analyzer.setStopWords(conf, new Path(cmdline.getOptionValue(STOP_WORDS)));
+        }
+        if (cmdline.hasOption(SEQUENCE_FILES)) {
+            conf.setBoolean(SEQUENCE_INPUT, true);
+        }
+        if (cmdline.hasOption(COMBINE)) {
+            conf.setLong(COMBINE_SPLIT_SIZE, Long.parseLong(cmdline.getOptionValue(COMBINE)));
+        }
+        boolean binary = cmdline.hasOption(CODEC);
+        if (binary) {
+            IntCodec.forName(cmdline.getOptionValue(CODEC)); // fail here on an unknown codec, not in the reducers
+            conf.set(BinaryPostingsOutputFormat.CODEC, cmdline.getOptionValue(CODEC));
+        }
         String inputPath = cmdline.getOptionValue(INPUT);
         String outputPath = cmdline.getOptionValue(OUTPUT);
         int reduceTasks = cmdline.hasOption(NUM_REDUCERS) ? Integer
                 .parseInt(cmdline.getOptionValue(NUM_REDUCERS)) : 1;
+        boolean dictionary = cmdline.hasOption(DICTIONARY);
+        buildDocnos(conf, new Path(inputPath), new Path(outputPath + "-docno"));
+        if (dictionary && !buildDictionary(conf, new Path(inputPath), new Path(outputPath + "-dictionary"),
+                reduceTasks)) {
+            return -1;
+        }
+        boolean ranges = reduceTasks > 1;
+        if (ranges && !samplePartitions(conf, new Path(inputPath), new Path(outputPath + "-partitions"),
+                reduceTasks)) {
+            return -1;
+        }
+        Job job = new Job(conf);
 
         // Set the name of the Job and the class it is in
         job.setJobName("Basic Inverted Index");
         job.setJarByClass(BasicInvertedIndex.class);
         job.setNumReduceTasks(reduceTasks);
 
-        // Set the Mapper and Reducer class (no need for combiner here)
-        job.setMapperClass(Map.class);
-        job.setReducerClass(Reduce.class);
+        // Set the Mapper, Combiner and Reducer class
+        job.setMapperClass(dictionary ? TermIdMap.class : Map.class);
+        job.setCombinerClass(Combine.class);
+        job.setReducerClass(dictionary ? TermIdReduce.class : Reduce.class);
+
+        // Sort by (term, docno), but partition and group by term only
+        // (by term range with more than one reducer)
+        if (dictionary) {
+            job.setPartitionerClass(ranges ? TermIdRangePartitioner.class : TermIdPartitioner.class);
+            job.setSortComparatorClass(PairOfInts.Comparator.class);
+            job.setGroupingComparatorClass(TermIdGroupingComparator.class);
+        }
+        else {
+            job.setPartitionerClass(ranges ? TermRangePartitioner.class : TermPartitioner.class);
+            job.setSortComparatorClass(PairOfStringInt.Comparator.class);
+            job.setGroupingComparatorClass(TermGroupingComparator.class);
+        }
 
         // Set the Output Classes
-        job.setMapOutputKeyClass(Text.class);
-        job.setMapOutputValueClass(Text.class);
+        job.setMapOutputKeyClass(dictionary ? PairOfInts.class : PairOfStringInt.class);
+        job.setMapOutputValueClass(PostingWritable.class);
         job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(ArrayListWritable.class);
+        job.setOutputValueClass(PostingWritable.class);
+        job.setOutputFormatClass(binary ? BinaryPostingsOutputFormat.class : PostingsOutputFormat.class);
 
-        // Set the input and output file paths
-        FileInputFormat.setInputPaths(job, new Path(inputPath));
+        // Set the input format, and the input and output file paths
+        // (whole docs, so that the mappers can count the token positions themselves)
+        setInput(job, new Path(inputPath));
         FileOutputFormat.setOutputPath(job, new Path(outputPath));
 
         // Time the job whilst it is running
         long startTime = System.currentTimeMillis();
-        job.waitForCompletion(true);
+        if (!job.waitForCompletion(true)) {
+            // the doc lengths are kept, to see what the failed job got to
+            return -1;
+        }
         LOG.info("Job Finished in " + (System.currentTimeMillis() - startTime)
                 / 1000.0 + " seconds");
+        if (binary) {
+            logIndexSize(job);
+            // the doc lengths are in the index now
+            for (FileStatus file : BinaryPostingsOutputFormat.listDocLengths(conf, new Path(outputPath))) {
+                file.getPath().getFileSystem(conf).delete(file.getPath(), false);
+            }
+        }
 
         // Returning 0 lets everyone know the job was successful
         return 0;
     }
 
+    // how well the codec of a binary index compressed it
+    private static void logIndexSize(Job job) throws IOException {
+        org.apache.hadoop.mapreduce.Counters counters = job.getCounters();
+        long postings = counters.findCounter(Counters.INDEX_POSTINGS).getValue();
+        long postingsBytes = counters.findCounter(Counters.INDEX_POSTINGS_BYTES).getValue();
+        long positions = counters.findCounter(Counters.INDEX_POSITIONS).getValue();
+        long positionsBytes = counters.findCounter(Counters.INDEX_POSITIONS_BYTES).getValue();
+        LOG.info(String.format("Index (%s): %d postings in %d bytes, %.3f bytes/posting;"
+                + " %d positions in %d bytes, %.3f bytes/position",
+                job.getConfiguration().get(BinaryPostingsOutputFormat.CODEC), postings, postingsBytes,
+                (double) postingsBytes / Math.max(postings, 1), positions, positionsBytes,
+                (double) positionsBytes / Math.max(positions, 1)));
+    }
+
+    // reads whole docs from the input: the SequenceFiles of Ingest, or one doc per file,
+    // with many files per split when COMBINE_SPLIT_SIZE is set
+    private static void setInput(Job job, Path input) throws IOException {
+        Configuration conf = job.getConfiguration();
+        long combineSplitSize = conf.getLong(COMBINE_SPLIT_SIZE, 0);
+        if (conf.getBoolean(SEQUENCE_INPUT, false)) {
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        }
+        else if (combineSplitSize > 0) {
+            job.setInputFormatClass(CombineWholeFileInputFormat.class);
+            CombineWholeFileInputFormat.setMaxSplitSize(job, combineSplitSize);
+        }
+        else {
+            job.setInputFormatClass(WholeFileInputFormat.class);
+        }
+        FileInputFormat.setInputPaths(job, input);
+    }
+
+    // numbers the docs of the input 0, 1, 2, ... in name order into the mapping dir/docno,
+    // and ships it with the jobs configured by conf from now on. The postings only carry
+    // the docnos, which keep the postings lists in the order of the doc names
+    private void buildDocnos(Configuration conf, Path input, Path dir) throws IOException {
+        FileSystem fs = dir.getFileSystem(conf);
+        fs.delete(dir, true);
+        Path docnos = new Path(dir, "docno");
+
+        Job job = new Job(conf);
+        FileInputFormat.setInputPaths(job, input);
+        List<String> docIds = conf.getBoolean(SEQUENCE_INPUT, false) ? Ingest.listDocIds(job)
+                : WholeFileInputFormat.listDocIds(job);
+        FrontCodedString2IntBidiMapBuilder.build(docIds, fs, docnos);
+        LOG.info("Numbered " + docIds.size() + " docs into " + docnos);
+
+        DistributedCache.addCacheFile(fs.makeQualified(docnos).toUri(), conf);
+        conf.set(DOCNO_FILE, docnos.getName());
+    }
+
+    // runs the sampling pass over a random sample of the docs into dir/sample, and writes the
+    // split points of reduceTasks ranges of about the same posting volume to dir/partitions:
+    // the first term of every range but the first. Ships them with the jobs configured by conf
+    // from now on.
+    private boolean samplePartitions(Configuration conf, Path input, Path dir, int reduceTasks)
+            throws Exception {
+        FileSystem fs = dir.getFileSystem(conf);
+        fs.delete(dir, true);
+        Path sample = new Path(dir, "sample");
+        Path partitions = new Path(dir, "partitions");
+
+        Job job = new Job(conf);
+        job.setJobName("Basic Inverted Index: sample");
+        job.setJarByClass(BasicInvertedIndex.class);
+        job.setNumReduceTasks(1); // the sample is small, and comes out sorted in a single part
+        job.setMapperClass(SampleMap.class);
+        job.setCombinerClass(SampleReduce.class);
+        job.setReducerClass(SampleReduce.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(LongWritable.class);
+        setInput(job, input);
+        // a random sample of the input files, with a fixed seed so that the same input gets
+        // the same ranges. A SequenceFile holds many docs, so the tasks then share out the docs
+        int sampleDocs = conf.getInt(SAMPLE_DOCS, DEFAULT_SAMPLE_DOCS);
+        List<Path> docs = WholeFileInputFormat.listDocs(job);
+        if (docs.isEmpty()) {
+            throw new IOException("No input files to sample in " + input);
+        }
+        Collections.shuffle(docs, new Random(38211));
+        docs = docs.subList(0, Math.min(docs.size(), sampleDocs));
+        FileInputFormat.setInputPaths(job, docs.toArray(new Path[docs.size()]));
+        if (conf.getBoolean(SEQUENCE_INPUT, false)) {
+            job.getConfiguration().setInt(SAMPLE_TASK_DOCS, (sampleDocs + docs.size() - 1) / docs.size());
+        }
+        FileOutputFormat.setOutputPath(job, sample);
+
+        long startTime = System.currentTimeMillis();
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+
+        ArrayList<String> terms = new ArrayList<>();
+        ArrayList<Long> volumes = new ArrayList<>();
+        long total = 0;
+        for (FileStatus part : fs.globStatus(new Path(sample, "part-*"))) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    terms.add(line.substring(0, tab));
+                    volumes.add(Long.parseLong(line.substring(tab + 1)));
+                    total += volumes.get(volumes.size() - 1);
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        // a term starts the next range once the ranges so far hold their share of the total
+        ArrayList<String> splits = new ArrayList<>();
+        long volume = 0;
+        for (int i = 0; i < terms.size() && splits.size() < reduceTasks - 1; i++) {
+            if (volume * reduceTasks >= total * (splits.size() + 1)) {
+                splits.add(terms.get(i));
+            }
+            volume += volumes.get(i);
+        }
+        Writer writer = new OutputStreamWriter(fs.create(partitions, true), "UTF-8");
+        try {
+            for (String split : splits) {
+                writer.write(split + "\n");
+            }
+        }
+        finally {
+            writer.close();
+        }
+        LOG.info("Sampled " + docs.size() + " files into " + (splits.size() + 1) + " term ranges in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+        DistributedCache.addCacheFile(fs.makeQualified(partitions).toUri(), conf);
+        conf.set(PARTITIONS_FILE, partitions.getName());
+        return true;
+    }
+
+    // runs the vocabulary pass into dir/terms, numbers the terms in sorted order,
+    // and ships the dictionary dir/dictionary with the jobs configured by conf from now on.
+    private boolean buildDictionary(Configuration conf, Path input, Path dir, int reduceTasks)
+            throws Exception {
+        FileSystem fs = dir.getFileSystem(conf);
+        fs.delete(dir, true);
+        Path terms = new Path(dir, "terms");
+        Path dictionary = new Path(dir, "dictionary");
+
+        Job job = new Job(conf);
+        job.setJobName("Basic Inverted Index: vocabulary");
+        job.setJarByClass(BasicInvertedIndex.class);
+        job.setNumReduceTasks(reduceTasks);
+        job.setMapperClass(VocabularyMap.class);
+        job.setCombinerClass(VocabularyReduce.class);
+        job.setReducerClass(VocabularyReduce.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(NullWritable.class);
+        setInput(job, input);
+        FileOutputFormat.setOutputPath(job, terms);
+
+        long startTime = System.currentTimeMillis();
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+
+        // the terms of each part are sorted, but not across parts
+        ArrayList<String> vocabulary = new ArrayList<>();
+        for (FileStatus part : fs.globStatus(new Path(terms, "part-*"))) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), "UTF-8"));
+            try {
+                String term;
+                while ((term = reader.readLine()) != null) {
+                    vocabulary.add(term);
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        // the ids follow the order of the terms, so the index still comes out sorted by term
+        Collections.sort(vocabulary);
+        FrontCodedString2IntBidiMapBuilder.build(vocabulary, fs, dictionary);
+        LOG.info("Dictionary of " + vocabulary.size() + " terms built in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+        DistributedCache.addCacheFile(fs.makeQualified(dictionary).toUri(), conf);
+        conf.set(DICTIONARY_FILE, dictionary.getName());
+        return true;
+    }
+
     public static void main(String[] args) throws Exception {
         ToolRunner.run(new BasicInvertedIndex(), args);
     } //  main
@@ -0,0 +1,144 @@
+/*
+  Binary Postings Output Format
+
+  Writes the index in binary, with IndexWriter: every reducer writes a
+  postings file, part-r-NNNNN.postings, and a lexicon file of the terms of its
+  partition, part-r-NNNNN.lexicon. The doc id gaps, term frequencies and
+  position gaps of the postings lists are compressed with the IntCodec named
+  by CODEC (-codec of BasicInvertedIndex).
+
+  Like PostingsOutputFormat, the reducer writes (term, posting) pairs, term
+  after term, so only a block of postings is ever held in memory. The sizes
+  of what is written are reported by the INDEX_* counters of the job.
+
+  The index is weighted with BM25 (parameters BM25_K1 and BM25_B), which
+  needs the length of every doc from the start: the mappers write the lengths
+  of their docs next to the index, as doclengths-m-NNNNN side files of
+  (docno, length) int pairs, which every reducer reads before it writes the
+  bounds of the scores of its blocks. The first reducer also writes them all
+  into part-r-00000.lengths, for IndexReader; the driver then deletes the side
+  files.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import uk.ac.man.cs.comp38211.exercise.BasicInvertedIndex.Counters;
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.ir.index.Bm25;
+import uk.ac.man.cs.comp38211.ir.index.IndexWriter;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.codec.VByteCodec;
+
+public class BinaryPostingsOutputFormat extends FileOutputFormat<Text, PostingWritable> {
+    // Configuration key: the name of the codec, vbyte by default
+    public static final String CODEC = "comp38211.output.codec";
+    // Configuration keys: the BM25 parameters of the index
+    public static final String BM25_K1 = "comp38211.bm25.k1";
+    public static final String BM25_B = "comp38211.bm25.b";
+    // the name of the side files of doc lengths
+    public static final String DOC_LENGTHS = "doclengths";
+
+    // writes the (docno, length) pairs of a map task as a side file of the output,
+    // which is committed (or not) with the task
+    public static void writeDocLengths(TaskInputOutputContext<?, ?, ?, ?> context, ArrayListOfInts pairs)
+            throws IOException, InterruptedException {
+        Path file = getPathForWorkFile(context, DOC_LENGTHS, "");
+        FSDataOutputStream out = file.getFileSystem(context.getConfiguration()).create(file, false);
+        try {
+            for (int i = 0; i < pairs.size(); i++) {
+                out.writeInt(pairs.get(i));
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    // the side files of doc lengths of an output dir
+    public static FileStatus[] listDocLengths(Configuration conf, Path dir) throws IOException {
+        return dir.getFileSystem(conf).globStatus(new Path(dir, DOC_LENGTHS + "-m-*"));
+    }
+
+    // the length of every doc, by docno, from the side files of the mappers
+    public static int[] readDocLengths(Configuration conf, Path dir) throws IOException {
+        FileSystem fs = dir.getFileSystem(conf);
+        int[] lengths = new int[0];
+        int docCount = 0;
+        for (FileStatus file : listDocLengths(conf, dir)) {
+            FSDataInputStream in = fs.open(file.getPath());
+            try {
+                for (long pairs = file.getLen() / 8; pairs > 0; pairs--) {
+                    int docno = in.readInt();
+                    if (docno >= lengths.length) {
+                        lengths = Arrays.copyOf(lengths, Math.max(docno + 1, lengths.length * 2));
+                    }
+                    lengths[docno] += in.readInt();
+                    docCount = Math.max(docCount, docno + 1);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        return Arrays.copyOf(lengths, docCount);
+    }
+
+    @Override
+    public RecordWriter<Text, PostingWritable> getRecordWriter(TaskAttemptContext job)
+            throws IOException {
+        Configuration conf = job.getConfiguration();
+        IntCodec codec = IntCodec.forName(conf.get(CODEC, VByteCodec.NAME));
+        int[] lengths = readDocLengths(conf, getOutputPath(job));
+        Bm25 bm25 = Bm25.of(conf.getFloat(BM25_K1, Bm25.DEFAULT_K1), conf.getFloat(BM25_B, Bm25.DEFAULT_B),
+                lengths);
+        Path postings = getDefaultWorkFile(job, IndexWriter.POSTINGS);
+        Path lexicon = getDefaultWorkFile(job, IndexWriter.LEXICON);
+        FileSystem fs = postings.getFileSystem(conf);
+        if (job.getTaskAttemptID().getTaskID().getId() == 0) {
+            FSDataOutputStream out = fs.create(getDefaultWorkFile(job, Bm25.LENGTHS), false);
+            try {
+                Bm25.writeLengths(lengths, out);
+            }
+            finally {
+                out.close();
+            }
+        }
+        final IndexWriter writer = new IndexWriter(fs.create(postings, false), fs.create(lexicon, false), codec,
+                bm25);
+        return new RecordWriter<Text, PostingWritable>() {
+            @Override
+            public void write(Text term, PostingWritable posting) throws IOException {
+                writer.add(term, posting);
+            }
+
+            @Override
+            public void close(TaskAttemptContext context) throws IOException {
+                writer.close();
+                // the reducer's own context, which has counters
+                if (context instanceof TaskInputOutputContext) {
+                    TaskInputOutputContext<?, ?, ?, ?> counters = (TaskInputOutputContext<?, ?, ?, ?>) context;
+                    counters.getCounter(Counters.INDEX_POSTINGS).increment(writer.getPostingCount());
+                    counters.getCounter(Counters.INDEX_POSTINGS_BYTES).increment(writer.getPostingsBytes());
+                    counters.getCounter(Counters.INDEX_POSITIONS).increment(writer.getPositionCount());
+                    counters.getCounter(Counters.INDEX_POSITIONS_BYTES).increment(writer.getPositionsBytes());
+                }
+            }
+        };
+    }
+} // BinaryPostingsOutputFormat
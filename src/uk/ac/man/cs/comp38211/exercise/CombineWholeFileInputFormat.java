@@ -0,0 +1,64 @@
+/*
+  Combine Whole File Input Format
+
+  Like WholeFileInputFormat, reads every file as a single (doc id, doc)
+  record, but packs many files into each split, so that a corpus of many
+  small documents does not take one map task per document. Splits hold files
+  up to the size set with setMaxSplitSize (of the files as stored, compressed
+  or not), preferring files of the same node and rack.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+public class CombineWholeFileInputFormat extends CombineFileInputFormat<Text, Text> {
+
+    // CombineFileInputFormat of Hadoop 1.0 reads its maximum split size from this key,
+    // rather than from the mapred.max.split.size of FileInputFormat
+    private static final String MAX_SPLIT_SIZE = "mapreduce.input.fileinputformat.split.maxsize";
+
+    // packs the files into splits of up to bytes (or a single split per node, if not set)
+    public static void setMaxSplitSize(Job job, long bytes) {
+        job.getConfiguration().setLong(MAX_SPLIT_SIZE, bytes);
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false; // a document is never cut in two
+    }
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        // reads the files of the split one after the other
+        return new CombineFileRecordReader<Text, Text>((CombineFileSplit) split, context,
+                CombinedFileRecordReader.class);
+    }
+
+    // reads the index-th file of a split. CombineFileRecordReader creates one per file,
+    // but initializes each with the whole split
+    public static class CombinedFileRecordReader extends WholeFileInputFormat.WholeFileRecordReader {
+        private final Path file;
+
+        public CombinedFileRecordReader(CombineFileSplit split, TaskAttemptContext context, Integer index) {
+            file = split.getPath(index);
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+            initialize(file, context.getConfiguration());
+        }
+    } // CombinedFileRecordReader
+} // CombineWholeFileInputFormat
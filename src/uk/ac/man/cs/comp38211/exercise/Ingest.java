@@ -0,0 +1,173 @@
+/*
+  Ingest
+
+  Converts a corpus of one document per file (plain text or compressed, like
+  the .txt.gz files of input/) into block-compressed SequenceFiles of
+  (doc id, doc) records, the doc id being the name of the file. Unlike gzip
+  files, SequenceFiles can be split, and many small documents are packed into
+  few files: one per reducer. WordCount and BasicInvertedIndex read them with
+  -sequenceFiles.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import uk.ac.man.cs.comp38211.util.XParser;
+
+public class Ingest extends Configured implements Tool
+{
+    private static final Logger LOG = Logger.getLogger(Ingest.class);
+
+    // the distinct doc ids of the SequenceFiles of a job's input, in sorted order.
+    // only the keys are read: the values of a block-compressed file are not even decompressed
+    public static List<String> listDocIds(JobContext job) throws IOException
+    {
+        Configuration conf = job.getConfiguration();
+        TreeSet<String> docIds = new TreeSet<>();
+        Text key = new Text();
+        for (Path file : WholeFileInputFormat.listDocs(job))
+        {
+            SequenceFile.Reader reader = new SequenceFile.Reader(
+                    file.getFileSystem(conf), file, conf);
+            try
+            {
+                while (reader.next(key))
+                    docIds.add(key.toString());
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        return new ArrayList<>(docIds);
+    }
+
+    /**
+     * Creates an instance of this tool.
+     */
+    public Ingest()
+    {
+    }
+
+    // Variables to hold cmd line args
+    private static final String INPUT = "input";
+    private static final String OUTPUT = "output";
+    private static final String NUM_REDUCERS = "numReducers";
+
+    /**
+     * Runs this tool.
+     */
+    @SuppressWarnings({ "static-access" })
+    public int run(String[] args) throws Exception
+    {
+        // Handle command line args
+        Options options = new Options();
+        options.addOption(OptionBuilder.withArgName("path").hasArg()
+                .withDescription("input path").create(INPUT));
+        options.addOption(OptionBuilder.withArgName("path").hasArg()
+                .withDescription("output path").create(OUTPUT));
+        options.addOption(OptionBuilder.withArgName("num").hasArg()
+                .withDescription("number of reducers, that is of SequenceFiles written")
+                .create(NUM_REDUCERS));
+
+        CommandLine cmdline;
+        CommandLineParser parser = new XParser(true);
+
+        try
+        {
+            cmdline = parser.parse(options, args);
+        }
+        catch (ParseException exp)
+        {
+            System.err.println("Error parsing command line: "
+                    + exp.getMessage());
+            return -1;
+        }
+
+        // If we are missing the input or output flag, let the user know
+        if (!cmdline.hasOption(INPUT) || !cmdline.hasOption(OUTPUT))
+        {
+            System.out.println("args: " + Arrays.toString(args));
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setWidth(120);
+            formatter.printHelp(this.getClass().getName(), options);
+            ToolRunner.printGenericCommandUsage(System.out);
+            return -1;
+        }
+
+        Configuration conf = getConf();
+        Job job = new Job(conf);
+        String inputPath = cmdline.getOptionValue(INPUT);
+        String outputPath = cmdline.getOptionValue(OUTPUT);
+        int reduceTasks = cmdline.hasOption(NUM_REDUCERS) ? Integer
+                .parseInt(cmdline.getOptionValue(NUM_REDUCERS)) : 1;
+
+        job.setJobName(Ingest.class.getSimpleName());
+        job.setJarByClass(Ingest.class);
+        job.setNumReduceTasks(reduceTasks);
+
+        // The identity Mapper and Reducer: the reducers only pack the docs,
+        // sorted by doc id, into their output files
+        job.setMapperClass(Mapper.class);
+        job.setReducerClass(Reducer.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        // Read whole docs, write block-compressed SequenceFiles.
+        // DefaultCodec (zlib) is used, as it needs no native library
+        job.setInputFormatClass(WholeFileInputFormat.class);
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        FileOutputFormat.setCompressOutput(job, true);
+        FileOutputFormat.setOutputCompressorClass(job, DefaultCodec.class);
+        SequenceFileOutputFormat.setOutputCompressionType(job,
+                SequenceFile.CompressionType.BLOCK);
+
+        FileInputFormat.setInputPaths(job, new Path(inputPath));
+        FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+        long startTime = System.currentTimeMillis();
+        if (!job.waitForCompletion(true))
+        {
+            return -1;
+        }
+        LOG.info("Job Finished in " + (System.currentTimeMillis() - startTime)
+                / 1000.0 + " seconds");
+        return 0;
+    }
+
+    /**
+     * Dispatches command-line arguments to the tool via the {@code ToolRunner}.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ToolRunner.run(new Ingest(), args);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  Postings Output Format
+
+  Writes the postings lists of the index as they are reduced, one posting at
+  a time, instead of a whole list per term: the reducer writes (term, posting)
+  pairs, term after term, and the postings of a term are written out in
+  chunks of a bounded number of postings (and bytes), each chunk a line with
+  its own header:
+
+    term|n	[docno|tf|[position, ...], ...]
+
+  where n is the number of postings of the chunk. A term of up to a chunk of
+  postings takes a single line, n being its doc freq; a longer postings list
+  takes several consecutive lines, and its doc freq is the sum of their n.
+  So the memory of a reducer stays bounded whatever the doc freq of a term.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+
+public class PostingsOutputFormat extends FileOutputFormat<Text, PostingWritable> {
+    // Configuration keys: the most postings, and (about) the most bytes, of a chunk
+    public static final String CHUNK_POSTINGS = "comp38211.output.chunk.postings";
+    public static final String CHUNK_BYTES = "comp38211.output.chunk.bytes";
+    public static final int DEFAULT_CHUNK_POSTINGS = 1024;
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+
+    @Override
+    public RecordWriter<Text, PostingWritable> getRecordWriter(TaskAttemptContext job)
+            throws IOException {
+        // like TextOutputFormat, compress the output if asked to
+        Configuration conf = job.getConfiguration();
+        boolean compress = getCompressOutput(job);
+        CompressionCodec codec = null;
+        String extension = "";
+        if (compress) {
+            Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(job, GzipCodec.class);
+            codec = ReflectionUtils.newInstance(codecClass, conf);
+            extension = codec.getDefaultExtension();
+        }
+        Path file = getDefaultWorkFile(job, extension);
+        FSDataOutputStream out = file.getFileSystem(conf).create(file, false);
+        return new ChunkWriter(compress ? new DataOutputStream(codec.createOutputStream(out)) : out,
+                conf.getInt(CHUNK_POSTINGS, DEFAULT_CHUNK_POSTINGS),
+                conf.getInt(CHUNK_BYTES, DEFAULT_CHUNK_BYTES));
+    }
+
+    public static class ChunkWriter extends RecordWriter<Text, PostingWritable> {
+        private static final byte[] SEPARATOR = { ',', ' ' };
+
+        private final DataOutputStream out;
+        private final int maxPostings;
+        private final int maxBytes;
+        // the term of the chunk, and the postings of the chunk so far, as text
+        private final Text term = new Text();
+        private final DataOutputBuffer chunk = new DataOutputBuffer();
+        private int postings;
+        // each posting is rendered here before it's copied to the chunk
+        private final StringBuilder posting = new StringBuilder();
+
+        public ChunkWriter(DataOutputStream out, int maxPostings, int maxBytes) {
+            this.out = out;
+            this.maxPostings = maxPostings;
+            this.maxBytes = maxBytes;
+        }
+
+        // the postings of a term must be written one after the other, in the order of the list
+        @Override
+        public void write(Text key, PostingWritable value) throws IOException {
+            if (!key.equals(term)) {
+                writeChunk();
+                term.set(key);
+            }
+            else if (postings == maxPostings || chunk.getLength() >= maxBytes) {
+                writeChunk(); // ... and the list goes on in the next chunk
+            }
+            if (postings > 0) {
+                chunk.write(SEPARATOR);
+            }
+            // docno|tf|[position, ...], all ASCII
+            posting.setLength(0);
+            posting.append(value.getDocId()).append('|').append(value.getTf()).append("|[");
+            for (int i = 0; i < value.getTf(); i++) {
+                if (i > 0) {
+                    posting.append(", ");
+                }
+                posting.append(value.getPosition(i));
+            }
+            posting.append(']');
+            for (int i = 0; i < posting.length(); i++) {
+                chunk.write(posting.charAt(i));
+            }
+            postings++;
+        }
+
+        private void writeChunk() throws IOException {
+            if (postings == 0) {
+                return;
+            }
+            out.write(term.getBytes(), 0, term.getLength());
+            out.writeBytes("|" + postings + "\t[");
+            out.write(chunk.getData(), 0, chunk.getLength());
+            out.writeBytes("]\n");
+            chunk.reset();
+            postings = 0;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            writeChunk();
+            out.close();
+        }
+    } // ChunkWriter
+} // PostingsOutputFormat
@@ -0,0 +1,183 @@
+/*
+  Search
+
+  Runs a query against the binary index of BasicInvertedIndex -codec, which
+  is memory-mapped from its local output directory, and prints the docs
+  matching it, by name when the doc numbering of the indexing job is found
+  next to the index, in <output>-docno. Words are analysed like the text of
+  the index, and phrases in quotes are matched by the positions of the terms:
+
+    Search -index output -query "bart AND (general OR genius) AND NOT lisa"
+    Search -index output -query '"bart the general" OR "bart lisa"~3'
+
+  With -rank, the query is a bag of words instead, and the docs of the
+  highest BM25 scores are printed, highest first, with their scores:
+
+    Search -index output -rank -query "bart general genius"
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.query.IndexSearcher;
+import uk.ac.man.cs.comp38211.ir.query.Query;
+import uk.ac.man.cs.comp38211.ir.query.QueryParser;
+import uk.ac.man.cs.comp38211.ir.query.TopDocs;
+import uk.ac.man.cs.comp38211.util.XParser;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+import uk.ac.man.cs.comp38211.util.map.FrontCodedString2IntBidiMap;
+
+public class Search extends Configured implements Tool
+{
+    // the docno mapping BasicInvertedIndex writes next to an index, or null
+    public static FrontCodedString2IntBidiMap loadDocnos(Configuration conf, String index)
+            throws IOException
+    {
+        Path docnos = new Path(index + "-docno", "docno");
+        FileSystem fs = FileSystem.getLocal(conf);
+        return fs.exists(docnos) ? new FrontCodedString2IntBidiMap(fs, docnos) : null;
+    }
+
+    // the value of an option as it was given: commons-cli strips the quotes off
+    // both ends of option values, which would take those of a phrase with them
+    private static String rawOptionValue(String[] args, String option)
+    {
+        for (int i = 0; i + 1 < args.length; i++)
+        {
+            if (args[i].equals("-" + option))
+            {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates an instance of this tool.
+     */
+    public Search()
+    {
+    }
+
+    // Variables to hold cmd line args
+    private static final String INDEX = "index";
+    private static final String QUERY = "query";
+    private static final String LIMIT = "limit";
+    private static final String RANK = "rank";
+
+    /**
+     * Runs this tool.
+     */
+    @SuppressWarnings({ "static-access" })
+    public int run(String[] args) throws Exception
+    {
+        // Handle command line args
+        Options options = new Options();
+        options.addOption(OptionBuilder.withArgName("path").hasArg()
+                .withDescription("local output directory of BasicInvertedIndex -codec").create(INDEX));
+        options.addOption(OptionBuilder.withArgName("query").hasArg()
+                .withDescription("boolean query: words, \"phrases\", \"words near\"~k, AND, OR, NOT and brackets").create(QUERY));
+        options.addOption(OptionBuilder.withArgName("num").hasArg()
+                .withDescription("most docs to print (default 10)").create(LIMIT));
+        options.addOption(OptionBuilder
+                .withDescription("rank the docs of any of the words by BM25, rather than match a boolean query")
+                .create(RANK));
+
+        CommandLine cmdline;
+        CommandLineParser parser = new XParser(true);
+
+        try
+        {
+            cmdline = parser.parse(options, args);
+        }
+        catch (ParseException exp)
+        {
+            System.err.println("Error parsing command line: "
+                    + exp.getMessage());
+            return -1;
+        }
+
+        // If we are missing the index or query flag, let the user know
+        if (!cmdline.hasOption(INDEX) || !cmdline.hasOption(QUERY))
+        {
+            System.out.println("args: " + Arrays.toString(args));
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setWidth(120);
+            formatter.printHelp(this.getClass().getName(), options);
+            ToolRunner.printGenericCommandUsage(System.out);
+            return -1;
+        }
+
+        Configuration conf = getConf();
+        String index = cmdline.getOptionValue(INDEX);
+        int limit = cmdline.hasOption(LIMIT) ? Integer.parseInt(cmdline.getOptionValue(LIMIT)) : 10;
+
+        IndexSearcher searcher = new IndexSearcher(new IndexReader(new File(index)));
+        FrontCodedString2IntBidiMap docnos = loadDocnos(conf, index);
+        if (cmdline.hasOption(RANK))
+        {
+            List<String> terms = BasicInvertedIndex.Tokeniser.createAnalyzer(conf)
+                    .analyse(cmdline.getOptionValue(QUERY));
+            long startTime = System.nanoTime();
+            TopDocs top = searcher.rank(terms, limit);
+            System.out.println("Top " + top.size() + " docs for " + terms + " ("
+                    + (System.nanoTime() - startTime) / 1000 + " us)");
+            for (int i = 0; i < top.size(); i++)
+            {
+                int doc = top.getDoc(i);
+                System.out.println((docnos == null ? String.valueOf(doc) : docnos.get(doc)) + "\t"
+                        + String.format("%.4f", top.getScore(i)));
+            }
+            return 0;
+        }
+
+        Query query;
+        try
+        {
+            query = new QueryParser(BasicInvertedIndex.Tokeniser.createAnalyzer(conf))
+                    .parse(rawOptionValue(args, QUERY));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error parsing query: " + e.getMessage());
+            return -1;
+        }
+
+        long startTime = System.nanoTime();
+        int count = searcher.count(query);
+        ArrayListOfInts docs = searcher.match(query, limit);
+        System.out.println(count + " docs match " + query + " ("
+                + (System.nanoTime() - startTime) / 1000 + " us)");
+        for (int i = 0; i < docs.size(); i++)
+        {
+            System.out.println(docnos == null ? String.valueOf(docs.get(i)) : docnos.get(docs.get(i)));
+        }
+        return 0;
+    }
+
+    /**
+     * Dispatches command-line arguments to the tool via the {@code ToolRunner}.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        System.exit(ToolRunner.run(new Search(), args));
+    }
+}
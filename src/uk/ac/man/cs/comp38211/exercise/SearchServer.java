@@ -0,0 +1,592 @@
+/*
+  Search Server
+
+  Serves queries against the binary index of BasicInvertedIndex -codec over
+  HTTP, with JSON responses, on the JDK's own com.sun.net.httpserver:
+
+    SearchServer -index output -port 8038
+
+    curl 'localhost:8038/search?q=bart+AND+%22the+general%22&limit=5'
+    curl 'localhost:8038/rank?q=bart+general+genius&k=10'
+    curl 'localhost:8038/stats'
+
+  /search takes the queries of Search: words, "phrases", "words near"~k, AND,
+  OR, NOT and brackets, and returns the number of docs matching and the first
+  of them; /rank takes a bag of words, and returns the docs of the highest
+  BM25 scores. Words are analysed like the text of the index.
+
+  The index is memory-mapped once, and shared read-only by all the requests,
+  as are the caches of results and of decoded postings lists in front of it.
+  Every request runs on a thread of its own: a virtual thread on Java 21 and
+  later, a thread of a pool before. At most -concurrency requests are searched
+  at once, each with an analyzer of its own: the others wait up to -wait ms
+  for a turn, and are then turned away with 503, so that a server under too
+  much load stays responsive rather than queueing without end.
+
+  Every response has the time it took, as "micros" and as a Server-Timing
+  header; /stats has the counts and latencies of the requests so far, and the
+  statistics of the caches.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.query.IndexSearcher;
+import uk.ac.man.cs.comp38211.ir.query.PostingsCache;
+import uk.ac.man.cs.comp38211.ir.query.Query;
+import uk.ac.man.cs.comp38211.ir.query.QueryParser;
+import uk.ac.man.cs.comp38211.ir.query.ResultCache;
+import uk.ac.man.cs.comp38211.ir.query.TopDocs;
+import uk.ac.man.cs.comp38211.util.XParser;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+import uk.ac.man.cs.comp38211.util.cache.CacheStats;
+import uk.ac.man.cs.comp38211.util.map.FrontCodedString2IntBidiMap;
+
+public class SearchServer extends Configured implements Tool
+{
+    // the most docs a request may ask for
+    private static final int MAX_LIMIT = 10000;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private IndexSearcher searcher;
+    private FrontCodedString2IntBidiMap docnos;
+    // the analyzers of the requests being searched, which are not thread-safe: taking one is
+    // taking a turn
+    private BlockingQueue<Worker> workers;
+    private long waitMillis;
+    private boolean virtualThreads;
+
+    // statistics
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Creates an instance of this tool.
+     */
+    public SearchServer()
+    {
+    }
+
+    // Variables to hold cmd line args
+    private static final String INDEX = "index";
+    private static final String PORT = "port";
+    private static final String CONCURRENCY = "concurrency";
+    private static final String WAIT = "wait";
+    private static final String RESULT_CACHE = "resultCache";
+    private static final String POSTINGS_CACHE = "postingsCache";
+    private static final String OFF_HEAP = "offHeap";
+
+    /**
+     * Runs this tool.
+     */
+    @SuppressWarnings({ "static-access" })
+    public int run(String[] args) throws Exception
+    {
+        // Handle command line args
+        Options options = new Options();
+        options.addOption(OptionBuilder.withArgName("path").hasArg()
+                .withDescription("local output directory of BasicInvertedIndex -codec").create(INDEX));
+        options.addOption(OptionBuilder.withArgName("num").hasArg()
+                .withDescription("port to listen on (default 8038)").create(PORT));
+        options.addOption(OptionBuilder.withArgName("num").hasArg()
+                .withDescription("most requests searched at once (default: the number of processors)")
+                .create(CONCURRENCY));
+        options.addOption(OptionBuilder.withArgName("ms").hasArg()
+                .withDescription("how long a request waits for a turn before a 503 (default 100)").create(WAIT));
+        options.addOption(OptionBuilder.withArgName("MB").hasArg()
+                .withDescription("budget of the cache of query results (default 16, 0 for none)")
+                .create(RESULT_CACHE));
+        options.addOption(OptionBuilder.withArgName("MB").hasArg()
+                .withDescription("budget of the cache of decoded postings lists (default 256, 0 for none)")
+                .create(POSTINGS_CACHE));
+        options.addOption(OptionBuilder
+                .withDescription("hold the decoded postings lists out of the heap").create(OFF_HEAP));
+
+        CommandLine cmdline;
+        CommandLineParser parser = new XParser(true);
+
+        try
+        {
+            cmdline = parser.parse(options, args);
+        }
+        catch (ParseException exp)
+        {
+            System.err.println("Error parsing command line: "
+                    + exp.getMessage());
+            return -1;
+        }
+
+        // If we are missing the index flag, let the user know
+        if (!cmdline.hasOption(INDEX))
+        {
+            System.out.println("args: " + Arrays.toString(args));
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setWidth(120);
+            formatter.printHelp(this.getClass().getName(), options);
+            ToolRunner.printGenericCommandUsage(System.out);
+            return -1;
+        }
+
+        Configuration conf = getConf();
+        String index = cmdline.getOptionValue(INDEX);
+        int port = Integer.parseInt(cmdline.getOptionValue(PORT, "8038"));
+        int concurrency = cmdline.hasOption(CONCURRENCY) ? Integer.parseInt(cmdline.getOptionValue(CONCURRENCY))
+                : Runtime.getRuntime().availableProcessors();
+        waitMillis = Long.parseLong(cmdline.getOptionValue(WAIT, "100"));
+        long resultCacheBytes = Long.parseLong(cmdline.getOptionValue(RESULT_CACHE, "16")) << 20;
+        long postingsCacheBytes = Long.parseLong(cmdline.getOptionValue(POSTINGS_CACHE, "256")) << 20;
+
+        IndexReader reader = new IndexReader(new File(index));
+        searcher = new IndexSearcher(reader,
+                resultCacheBytes > 0 ? new ResultCache(resultCacheBytes) : null,
+                postingsCacheBytes > 0 ? new PostingsCache(reader, postingsCacheBytes, cmdline.hasOption(OFF_HEAP)) : null);
+        docnos = Search.loadDocnos(conf, index);
+        workers = new ArrayBlockingQueue<Worker>(concurrency);
+        for (int i = 0; i < concurrency; i++)
+        {
+            workers.add(new Worker(BasicInvertedIndex.Tokeniser.createAnalyzer(conf)));
+        }
+
+        ExecutorService executor = newExecutor(concurrency);
+        final HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/search", new Endpoint()
+        {
+            void respond(Map<String, String> parameters, JsonGenerator json) throws IOException
+            {
+                search(parameters, json);
+            }
+        });
+        server.createContext("/rank", new Endpoint()
+        {
+            void respond(Map<String, String> parameters, JsonGenerator json) throws IOException
+            {
+                rank(parameters, json);
+            }
+        });
+        server.createContext("/stats", new Endpoint()
+        {
+            void respond(Map<String, String> parameters, JsonGenerator json) throws IOException
+            {
+                stats(json);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Serving " + index + " (" + reader.getTermCount() + " terms) on http://localhost:"
+                + server.getAddress().getPort() + "/, concurrency " + concurrency + ", on "
+                + (virtualThreads ? "virtual threads" : "a pool of threads"));
+
+        // serve until killed
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            public void run()
+            {
+                server.stop(1);
+                stopped.countDown();
+            }
+        });
+        stopped.await();
+        executor.shutdown();
+        return 0;
+    }
+
+    // a thread per request: a virtual thread where there are (Java 21 on), which costs next to
+    // nothing while it waits for a turn; otherwise a pool of threads, enough to keep the turns busy
+    private ExecutorService newExecutor(int concurrency)
+    {
+        try
+        {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtualThreads = true;
+            return executor;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newFixedThreadPool(4 * concurrency);
+        }
+    }
+
+    // the docs matching a boolean query, and how many there are
+    private void search(Map<String, String> parameters, JsonGenerator json) throws IOException
+    {
+        int limit = intParameter(parameters, "limit", 10);
+        String text = requiredParameter(parameters, "q");
+        Worker worker = takeTurn();
+        Query query;
+        int count;
+        ArrayListOfInts docs;
+        try
+        {
+            query = worker.parser.parse(text);
+            count = searcher.count(query);
+            docs = searcher.match(query, limit);
+        }
+        finally
+        {
+            workers.add(worker);
+        }
+        json.writeStringField("query", query.toString());
+        json.writeNumberField("count", count);
+        json.writeArrayFieldStart("docs");
+        for (int i = 0; i < docs.size(); i++)
+        {
+            json.writeStartObject();
+            writeDoc(json, docs.get(i));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    // the docs of the highest BM25 scores for a bag of words
+    private void rank(Map<String, String> parameters, JsonGenerator json) throws IOException
+    {
+        int k = intParameter(parameters, "k", 10);
+        String text = requiredParameter(parameters, "q");
+        Worker worker = takeTurn();
+        List<String> terms;
+        TopDocs top;
+        try
+        {
+            terms = worker.analyzer.analyse(text);
+            top = searcher.rank(terms, k);
+        }
+        finally
+        {
+            workers.add(worker);
+        }
+        json.writeArrayFieldStart("terms");
+        for (String term : terms)
+        {
+            json.writeString(term);
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("docs");
+        for (int i = 0; i < top.size(); i++)
+        {
+            json.writeStartObject();
+            writeDoc(json, top.getDoc(i));
+            json.writeNumberField("score", top.getScore(i));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    private void writeDoc(JsonGenerator json, int doc) throws IOException
+    {
+        json.writeNumberField("doc", doc);
+        if (docnos != null)
+        {
+            String name;
+            // the front-coded list of the names is not documented as thread-safe
+            synchronized (docnos)
+            {
+                name = docnos.get(doc);
+            }
+            json.writeStringField("name", name);
+        }
+    }
+
+    private void stats(JsonGenerator json) throws IOException
+    {
+        json.writeNumberField("requests", requestCount.get());
+        json.writeNumberField("rejected", rejectedCount.get());
+        json.writeNumberField("errors", errorCount.get());
+        json.writeObjectFieldStart("latencyMicros");
+        json.writeNumberField("mean", latencies.mean());
+        json.writeNumberField("p50", latencies.percentile(0.5));
+        json.writeNumberField("p90", latencies.percentile(0.9));
+        json.writeNumberField("p99", latencies.percentile(0.99));
+        json.writeNumberField("max", latencies.max());
+        json.writeEndObject();
+        if (searcher.getResultCache() != null)
+        {
+            writeStats(json, "resultCache", searcher.getResultCache().getStats());
+        }
+        if (searcher.getPostingsCache() != null)
+        {
+            writeStats(json, "postingsCache", searcher.getPostingsCache().getStats());
+        }
+    }
+
+    private static void writeStats(JsonGenerator json, String name, CacheStats stats) throws IOException
+    {
+        json.writeObjectFieldStart(name);
+        json.writeNumberField("hits", stats.getHitCount());
+        json.writeNumberField("misses", stats.getMissCount());
+        json.writeNumberField("hitRate", stats.getHitRate());
+        json.writeNumberField("admitted", stats.getAdmissionCount());
+        json.writeNumberField("rejected", stats.getRejectionCount());
+        json.writeNumberField("evicted", stats.getEvictionCount());
+        json.writeNumberField("entries", stats.getEntryCount());
+        json.writeNumberField("bytes", stats.getBytes());
+        json.writeNumberField("maxBytes", stats.getMaxBytes());
+        json.writeEndObject();
+    }
+
+    // waits for a turn to search, for up to waitMillis
+    private Worker takeTurn()
+    {
+        Worker worker;
+        try
+        {
+            worker = workers.poll(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            worker = null;
+        }
+        if (worker == null) throw new Overloaded();
+        return worker;
+    }
+
+    private static String requiredParameter(Map<String, String> parameters, String name)
+    {
+        String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue)
+    {
+        String value = parameters.get(name);
+        if (value == null) return defaultValue;
+        try
+        {
+            int n = Integer.parseInt(value);
+            if (n >= 0 && n <= MAX_LIMIT) return n;
+        }
+        catch (NumberFormatException e)
+        {
+            // reported below
+        }
+        throw new IllegalArgumentException(name + " must be a number from 0 to " + MAX_LIMIT + ": " + value);
+    }
+
+    private static Map<String, String> parameters(String query) throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) return parameters;
+        for (String parameter : query.split("&"))
+        {
+            int equals = parameter.indexOf('=');
+            if (equals < 0) continue;
+            parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                    URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    // thrown when a request finds no turn to search in time
+    private static class Overloaded extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // an analyzer, and a query parser over it
+    private static class Worker
+    {
+        final Analyzer analyzer;
+        final QueryParser parser;
+
+        Worker(Analyzer analyzer)
+        {
+            this.analyzer = analyzer;
+            parser = new QueryParser(analyzer);
+        }
+    }
+
+    // answers the GET requests of a path with a JSON object, and times them
+    private abstract class Endpoint implements HttpHandler
+    {
+        abstract void respond(Map<String, String> parameters, JsonGenerator json) throws IOException;
+
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            long startTime = System.nanoTime();
+            requestCount.incrementAndGet();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            JsonGenerator json = JSON.createJsonGenerator(body, JsonEncoding.UTF8);
+            json.writeStartObject();
+            int status = 200;
+            try
+            {
+                if (!exchange.getRequestMethod().equals("GET"))
+                {
+                    status = 405;
+                    json.writeStringField("error", "Only GET is supported");
+                }
+                else
+                {
+                    respond(parameters(exchange.getRequestURI().getRawQuery()), json);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                status = 400;
+                json = restart(body);
+                json.writeStringField("error", e.getMessage());
+            }
+            catch (Overloaded e)
+            {
+                status = 503;
+                rejectedCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                json = restart(body);
+                json.writeStringField("error", "Too many requests at once");
+            }
+            catch (RuntimeException e)
+            {
+                status = 500;
+                errorCount.incrementAndGet();
+                json = restart(body);
+                json.writeStringField("error", String.valueOf(e));
+            }
+            long micros = (System.nanoTime() - startTime) / 1000;
+            json.writeNumberField("micros", micros);
+            json.writeEndObject();
+            json.close();
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("Server-Timing", String.format("search;dur=%.3f", micros / 1000.0));
+            exchange.sendResponseHeaders(status, body.size());
+            OutputStream out = exchange.getResponseBody();
+            try
+            {
+                body.writeTo(out);
+            }
+            finally
+            {
+                out.close();
+                latencies.record((System.nanoTime() - startTime) / 1000);
+            }
+        }
+
+        // throws away what was written of a response, for an error
+        private JsonGenerator restart(ByteArrayOutputStream body) throws IOException
+        {
+            body.reset();
+            JsonGenerator json = JSON.createJsonGenerator(body, JsonEncoding.UTF8);
+            json.writeStartObject();
+            return json;
+        }
+    }
+
+    // the latencies of the requests, in buckets of a quarter of a power of 2, so that a
+    // percentile is known to within 25% in a fixed amount of memory
+    private static class LatencyHistogram
+    {
+        private final AtomicLongArray counts = new AtomicLongArray(4 * 63);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long micros)
+        {
+            counts.incrementAndGet(bucket(micros));
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            long m;
+            while ((m = max.get()) < micros && !max.compareAndSet(m, micros))
+            {
+                // raced with another request: try again
+            }
+        }
+
+        private static int bucket(long micros)
+        {
+            if (micros < 4) return (int) Math.max(micros, 0);
+            int log = 63 - Long.numberOfLeadingZeros(micros);
+            return 4 * (log - 1) + (int) (micros >>> (log - 2) & 3);
+        }
+
+        // the least value of the next bucket
+        private static long upperBound(int bucket)
+        {
+            if (bucket < 4) return bucket + 1;
+            int log = bucket / 4 + 1;
+            return (long) (4 + bucket % 4 + 1) << (log - 2);
+        }
+
+        long mean()
+        {
+            long n = count.get();
+            return n == 0 ? 0 : sum.get() / n;
+        }
+
+        long max()
+        {
+            return max.get();
+        }
+
+        // an upper bound of the latency of a share p of the requests
+        long percentile(double p)
+        {
+            long n = count.get();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++)
+            {
+                seen += counts.get(bucket);
+                if (seen >= rank) return Math.min(upperBound(bucket), max.get());
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Dispatches command-line arguments to the tool via the {@code ToolRunner}.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        System.exit(ToolRunner.run(new SearchServer(), args));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  Whole File Input Format
+
+  Reads every file as a single record: the key is the name of the file, which
+  is the doc id of the index, and the value is the whole (decompressed) file.
+  Files are never split, so a mapper always sees a document from start to end
+  and can count token positions itself.
+
+ */
+package uk.ac.man.cs.comp38211.exercise;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+public class WholeFileInputFormat extends FileInputFormat<Text, Text> {
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false; // a document is never cut in two
+    }
+
+    // the docs (files) of the input of a job
+    public static List<Path> listDocs(JobContext job) throws IOException {
+        List<Path> docs = new ArrayList<>();
+        for (FileStatus file : new WholeFileInputFormat().listStatus(job)) {
+            docs.add(file.getPath());
+        }
+        return docs;
+    }
+
+    // the distinct doc ids (file names) of the input of a job, in sorted order.
+    // they are known from the file listing, without reading any file
+    public static List<String> listDocIds(JobContext job) throws IOException {
+        TreeSet<String> docIds = new TreeSet<>();
+        for (Path doc : listDocs(job)) {
+            docIds.add(doc.getName());
+        }
+        return new ArrayList<>(docIds);
+    }
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new WholeFileRecordReader();
+    }
+
+    public static class WholeFileRecordReader extends RecordReader<Text, Text> {
+        private final Text key = new Text();
+        private final Text value = new Text();
+        // the file is read into this buffer, which is reused for the next file
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+        private Path path;
+        private Configuration conf;
+        private boolean read;
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+            initialize(((FileSplit) split).getPath(), context.getConfiguration());
+        }
+
+        // the file to read, as a single record
+        protected void initialize(Path path, Configuration conf) {
+            this.path = path;
+            this.conf = conf;
+            read = false;
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (read) {
+                return false;
+            }
+            read = true;
+            FileSystem fs = path.getFileSystem(conf);
+            // decompress .gz (or any other known codec) files on the fly
+            CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+            InputStream in = fs.open(path);
+            if (codec != null) {
+                in = codec.createInputStream(in);
+            }
+            try {
+                buffer.reset();
+                IOUtils.copyBytes(in, buffer, 4096, false);
+            }
+            finally {
+                in.close();
+            }
+            key.set(path.getName());
+            value.set(buffer.getData(), 0, buffer.getLength());
+            return true;
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return read ? 1.0f : 0.0f;
+        }
+
+        @Override
+        public void close() {
+        }
+    } // WholeFileRecordReader
+} // WholeFileInputFormat
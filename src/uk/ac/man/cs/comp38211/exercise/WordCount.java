@@ -12,7 +12,6 @@ package uk.ac.man.cs.comp38211.exercise;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.StringTokenizer;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -24,17 +23,20 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+import uk.ac.man.cs.comp38211.ir.TokenBuffer;
+import uk.ac.man.cs.comp38211.ir.TokenFilters;
 import uk.ac.man.cs.comp38211.util.XParser;
 
 public class WordCount extends Configured implements Tool
@@ -42,44 +44,51 @@ public class WordCount extends Configured implements Tool
     // A logger is used to output text to system.out nicely
     private static final Logger LOG = Logger.getLogger(WordCount.class);
 
-    private static class MyMapper extends
-            Mapper<LongWritable, Text, Text, IntWritable> {
+    // The default analysis chain, overridable with Analyzer.FILTERS.
+    // Tokens are never dropped, so words without letters are counted as ""
+    public static final String FILTERS = "lowercase,letters";
+
+    // The keys are line offsets, or doc ids when reading whole docs
+    // (from the SequenceFiles of Ingest, or many files per split with -combine)
+    public static class MyMapper extends
+            Mapper<Object, Text, Text, IntWritable> {
 
         // Use these objects instead of creating new ones every time
         private final static IntWritable ONE = new IntWritable(1);
         private final static Text WORD = new Text();
+        private final TokenBuffer token = new TokenBuffer();
+
+        // The analysis chain, replaced by the configured one in setup
+        private Analyzer analyzer = new Analyzer(Analyzer.Tokenizer.WHITESPACE,
+                TokenFilters.LOWER_CASE, TokenFilters.LETTERS);
 
-        // The map method takes in a line from a file, splits it into tokens
+        @Override
+        public void setup(Context context) throws IOException {
+            analyzer = Analyzer.create(context.getConfiguration(),
+                    Analyzer.Tokenizer.WHITESPACE, FILTERS);
+        }
+
+        // The map method takes in a line from a file (or a whole doc), splits it into tokens
         // then outputs each token with a value of 1
         @Override
-        public void map(LongWritable key, Text value, Context context)
+        public void map(Object key, Text value, Context context)
                 throws IOException, InterruptedException {
-            // The line is broken up and turned into an iterator 
-            String line = value.toString();
-            StringTokenizer itr = new StringTokenizer(line);
-            
-            // While there are more tokens in the input, output with value 1
-            while (itr.hasMoreTokens()) {
-            	String token = itr.nextToken();
-            	//clean up the token before setting
-            	token = cleanUp(token);
-                WORD.set(token);
+            // The text is broken up on whitespace, and every token is
+            // cleaned up by the analyzer before it is output with value 1
+            analyzer.analyse(value, token, term -> {
+                term.copyTo(WORD);
                 // context.write() is also known as 'output' or 'emit'
                 // infrastructure will do the rest of the work for you.
                 context.write(WORD, ONE);
-            } // while
+            });
         } // map
 
         public String cleanUp(String token) {
-            // trim the token
-            token = token.trim();
-            // normalise to lower case
-            token = token.toLowerCase();
-            // get rid of non-alphabetic characters
-            // credit: https://stackoverflow.com/a/1805533
-            token = token.replaceAll("[^a-z]", "");
-            // return the token
-            return token;
+            // runs a single token through the analysis chain:
+            // normalise to lower case, then get rid of non-alphabetic characters
+            TokenBuffer buffer = new TokenBuffer(token);
+            analyzer.filter(buffer);
+            return buffer.toString();
         }  // clean up
     }  // static class MyMapper
 
@@ -119,6 +128,8 @@ public class WordCount extends Configured implements Tool
     private static final String INPUT = "input";
     private static final String OUTPUT = "output";
     private static final String NUM_REDUCERS = "numReducers";
+    private static final String SEQUENCE_FILES = "sequenceFiles";
+    private static final String COMBINE = "combine";
 
     /**
      * Runs this tool.
@@ -134,6 +145,12 @@ public class WordCount extends Configured implements Tool
                 .withDescription("output path").create(OUTPUT));
         options.addOption(OptionBuilder.withArgName("num").hasArg()
                 .withDescription("number of reducers").create(NUM_REDUCERS));
+        options.addOption(OptionBuilder
+                .withDescription("read the (doc id, doc) SequenceFiles written by Ingest")
+                .create(SEQUENCE_FILES));
+        options.addOption(OptionBuilder.withArgName("bytes").hasArg()
+                .withDescription("pack many input files into each split, of up to this many bytes")
+                .create(COMBINE));
 
         CommandLine cmdline;
         CommandLineParser parser = new XParser(true);
@@ -161,7 +178,8 @@ public class WordCount extends Configured implements Tool
         }
 
         // Create a new Map Reduce Job
-        Configuration conf = new Configuration();
+        // (generic -D options, such as Analyzer.FILTERS, end up in getConf())
+        Configuration conf = getConf();
         Job job = new Job(conf);
         String inputPath = cmdline.getOptionValue(INPUT);
         String outputPath = cmdline.getOptionValue(OUTPUT);
@@ -181,7 +199,16 @@ public class WordCount extends Configured implements Tool
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(IntWritable.class);
 
-        // Set the input and output file paths
+        // Set the input format (lines by default), and the input and output file paths
+        if (cmdline.hasOption(SEQUENCE_FILES))
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        else if (cmdline.hasOption(COMBINE))
+        {
+            // whole docs, which are tokenised just like their lines
+            job.setInputFormatClass(CombineWholeFileInputFormat.class);
+            CombineWholeFileInputFormat.setMaxSplitSize(job,
+                    Long.parseLong(cmdline.getOptionValue(COMBINE)));
+        }
         FileInputFormat.setInputPaths(job, new Path(inputPath));
         FileOutputFormat.setOutputPath(job, new Path(outputPath));
         
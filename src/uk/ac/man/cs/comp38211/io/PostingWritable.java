@@ -0,0 +1,225 @@
+package uk.ac.man.cs.comp38211.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Writable representing a posting: a document number, and the positions at
+ * which a term occurs in the document, the term frequency being the number of
+ * positions. The document number and the positions are written as
+ * variable-length ints, the positions as gaps between consecutive positions,
+ * so a posting of ascending positions takes about one byte per position.
+ * Positions out of order are written as negative gaps, which still
+ * round-trip, only less compactly.
+ * 
+ * Like Hadoop's own Writables, a posting is meant to be reused: readFields
+ * and set keep the buffers of the instance, and only grow them when needed.
+ */
+public class PostingWritable implements Writable
+{
+    private int docId;
+    private int[] positions = new int[8];
+    private int tf;
+
+    /**
+     * Creates an empty posting.
+     */
+    public PostingWritable()
+    {
+    }
+
+    /**
+     * Creates a posting.
+     * 
+     * @param docId
+     *            the document number
+     * @param positions
+     *            the positions of the term in the document
+     */
+    public PostingWritable(int docId, int... positions)
+    {
+        set(docId);
+        for (int position : positions)
+        {
+            addPosition(position);
+        }
+    }
+
+    /**
+     * Deserializes the posting, reusing this instance.
+     * 
+     * @param in
+     *            source for raw byte representation
+     */
+    public void readFields(DataInput in) throws IOException
+    {
+        docId = WritableUtils.readVInt(in);
+        int n = WritableUtils.readVInt(in);
+        if (positions.length < n)
+        {
+            positions = new int[Math.max(n, positions.length * 2)];
+        }
+        int position = 0;
+        for (int i = 0; i < n; i++)
+        {
+            position += WritableUtils.readVInt(in);
+            positions[i] = position;
+        }
+        tf = n;
+    }
+
+    /**
+     * Serializes this posting.
+     * 
+     * @param out
+     *            where to write the raw byte representation
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        WritableUtils.writeVInt(out, docId);
+        WritableUtils.writeVInt(out, tf);
+        int previous = 0;
+        for (int i = 0; i < tf; i++)
+        {
+            WritableUtils.writeVInt(out, positions[i] - previous);
+            previous = positions[i];
+        }
+    }
+
+    /**
+     * Starts a new posting for a document, with no positions.
+     * 
+     * @param docId
+     *            the document number
+     */
+    public void set(int docId)
+    {
+        this.docId = docId;
+        tf = 0;
+    }
+
+    /**
+     * Empties the posting: document 0 and no positions.
+     */
+    public void clear()
+    {
+        set(0);
+    }
+
+    /**
+     * Adds a position of the term.
+     * 
+     * @param position
+     *            the position
+     */
+    public void addPosition(int position)
+    {
+        if (tf == positions.length)
+        {
+            positions = Arrays.copyOf(positions, tf * 2);
+        }
+        positions[tf++] = position;
+    }
+
+    /**
+     * Adds the positions of another posting of the term in the same document.
+     * If the positions of both postings are in ascending order, so are the
+     * merged positions.
+     * 
+     * @param posting
+     *            the other posting, which is left as it is
+     */
+    public void merge(PostingWritable posting)
+    {
+        int n = tf + posting.tf;
+        if (positions.length < n)
+        {
+            positions = Arrays.copyOf(positions, Math.max(n, positions.length * 2));
+        }
+        if (tf == 0 || posting.tf == 0 || posting.positions[0] >= positions[tf - 1])
+        {
+            // the common case: the other positions all come after these
+            System.arraycopy(posting.positions, 0, positions, tf, posting.tf);
+        }
+        else
+        {
+            // merge from the back, so that no position is overwritten before it is moved
+            int i = tf - 1;
+            int j = posting.tf - 1;
+            for (int k = n - 1; j >= 0; k--)
+            {
+                if (i >= 0 && positions[i] > posting.positions[j])
+                {
+                    positions[k] = positions[i--];
+                }
+                else
+                {
+                    positions[k] = posting.positions[j--];
+                }
+            }
+        }
+        tf = n;
+    }
+
+    /**
+     * Returns the document number.
+     * 
+     * @return the document number
+     */
+    public int getDocId()
+    {
+        return docId;
+    }
+
+    /**
+     * Returns the term frequency, that is the number of positions.
+     * 
+     * @return the term frequency
+     */
+    public int getTf()
+    {
+        return tf;
+    }
+
+    /**
+     * Returns a position of the term.
+     * 
+     * @param i
+     *            index of the position, less than getTf()
+     * @return the position
+     */
+    public int getPosition(int i)
+    {
+        if (i >= tf)
+        {
+            throw new IndexOutOfBoundsException(i + " >= " + tf);
+        }
+        return positions[i];
+    }
+
+    /**
+     * Returns a copy of the positions of the term.
+     * 
+     * @return the positions
+     */
+    public int[] getPositions()
+    {
+        return Arrays.copyOf(positions, tf);
+    }
+
+    /**
+     * Generates human-readable String representation of this posting, in the
+     * form <code>doc|tf|[position, ...]</code>.
+     * 
+     * @return human-readable String representation of this posting
+     */
+    public String toString()
+    {
+        return docId + "|" + tf + "|" + Arrays.toString(getPositions());
+    }
+}
@@ -0,0 +1,469 @@
+package uk.ac.man.cs.comp38211.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Turns text into terms: splits it into tokens and runs every token through a
+ * chain of {@link TokenFilter}s. Both jobs build their chain from the job
+ * Configuration with {@link #create(Configuration, Tokenizer, String)}, and
+ * query code should use the same chain, so that index-time and query-time
+ * analysis agree.
+ *
+ * Every token is loaded into one reused {@link TokenBuffer} that the filters
+ * rewrite in place. When a chain starts with the filters of the inverted
+ * index (date, url, isbn, pagenum, alphabet, cleanse, lowercase) over space
+ * separated tokens, those seven filters are replaced by a single scan over the
+ * text that does all of them at once, and only the rest of the chain runs per
+ * token.
+ *
+ * Text can be analysed as chars or straight from its UTF-8 bytes, as held by
+ * a {@link Text}, which saves decoding every input line into a String. The
+ * delimiters and everything the fused scan looks for are ASCII, and no byte
+ * of a multi-byte UTF-8 sequence is, so the bytes can be scanned as they are;
+ * only tokens that contain non-ASCII bytes are decoded, and only when they
+ * reach a filter that looks at chars.
+ *
+ * An Analyzer holds per-token state (and the stem cache of its "stem" filter),
+ * so it is not thread-safe; use one per task or thread.
+ */
+public class Analyzer
+{
+    /** Configuration key: how text is split into tokens, see Tokenizer. */
+    public static final String TOKENIZER = "comp38211.analyzer.tokenizer";
+    /** Configuration key: comma-separated filter names, see TokenFilters. */
+    public static final String FILTERS = "comp38211.analyzer.filters";
+    /** Configuration key: number of stems memoised per analyzer. */
+    public static final String STEM_CACHE_SIZE = "comp38211.stem.cache.size";
+    /** Configuration key: name of a stop word list in the distributed cache. */
+    public static final String STOP_WORDS_FILE = "comp38211.stopwords.file";
+
+    public static final int DEFAULT_STEM_CACHE_SIZE = 8192;
+
+    /** How text is split into tokens. */
+    public static enum Tokenizer
+    {
+        /** on spaces only */
+        SPACE(" "),
+        /** on runs of whitespace, like StringTokenizer */
+        WHITESPACE(" \t\n\r\f");
+
+        private final String delimiters;
+
+        private Tokenizer(String delimiters)
+        {
+            this.delimiters = delimiters;
+        }
+
+        boolean isDelimiter(char c)
+        {
+            return delimiters.indexOf(c) >= 0;
+        }
+    }
+
+    /** Receives the tokens that survive the chain. */
+    public interface TokenHandler
+    {
+        /**
+         * The buffer is reused for the next token, so copy it to keep it.
+         */
+        void token(TokenBuffer token) throws IOException, InterruptedException;
+    }
+
+    // the filters the fused scan does
+    private static final TokenFilter[] SCANNED = { TokenFilters.DATE,
+            TokenFilters.URL, TokenFilters.ISBN, TokenFilters.PAGE_NUMBER,
+            TokenFilters.ALPHABET, TokenFilters.CLEANSE,
+            TokenFilters.LOWER_CASE };
+
+    private final Tokenizer tokenizer;
+    private final TokenFilter[] filters;
+    // the number of leading filters done by the fused scan, 0 if none
+    private final int scanned;
+
+    public Analyzer(Tokenizer tokenizer, TokenFilter... filters)
+    {
+        this.tokenizer = tokenizer;
+        this.filters = filters.clone();
+        this.scanned = tokenizer == Tokenizer.SPACE && startsWithScanned(filters) ? SCANNED.length
+                : 0;
+    }
+
+    /**
+     * Builds the chain configured in conf, using the given defaults for
+     * whatever is not set.
+     */
+    public static Analyzer create(Configuration conf,
+            Tokenizer defaultTokenizer, String defaultFilters)
+            throws IOException
+    {
+        Tokenizer tokenizer = Tokenizer.valueOf(conf.get(TOKENIZER,
+                defaultTokenizer.name()).trim().toUpperCase());
+        String[] names = conf.get(FILTERS, defaultFilters).split(",");
+        int stemCacheSize = conf.getInt(STEM_CACHE_SIZE, DEFAULT_STEM_CACHE_SIZE);
+        StopAnalyser stopWords = null;
+        List<TokenFilter> filters = new ArrayList<TokenFilter>();
+        for (String name : names)
+        {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            if (name.equals("stop") && stopWords == null)
+            {
+                stopWords = loadStopWords(conf);
+            }
+            filters.add(TokenFilters.forName(name, stopWords, stemCacheSize));
+        }
+        return new Analyzer(tokenizer, filters.toArray(new TokenFilter[filters.size()]));
+    }
+
+    /**
+     * Ships a stop word list with a job through the distributed cache, to be
+     * used by the "stop" filter of every Analyzer the job creates.
+     */
+    public static void setStopWords(Configuration conf, Path stopWords)
+            throws IOException
+    {
+        DistributedCache.addCacheFile(stopWords.getFileSystem(conf)
+                .makeQualified(stopWords).toUri(), conf);
+        conf.set(STOP_WORDS_FILE, stopWords.getName());
+    }
+
+    // the stop word list shipped with the job, or the default list when there is none
+    private static StopAnalyser loadStopWords(Configuration conf)
+            throws IOException
+    {
+        String name = conf.get(STOP_WORDS_FILE);
+        Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+        if (name != null && cached != null)
+        {
+            for (Path path : cached)
+            {
+                if (path.getName().equals(name))
+                {
+                    return StopAnalyser.load(FileSystem.getLocal(conf).open(path));
+                }
+            }
+        }
+        return StopAnalyser.getDefault();
+    }
+
+    public Tokenizer getTokenizer()
+    {
+        return tokenizer;
+    }
+
+    public TokenFilter[] getFilters()
+    {
+        return filters.clone();
+    }
+
+    /**
+     * Returns the first filter of the chain of the given type, or null.
+     */
+    public <T extends TokenFilter> T getFilter(Class<T> type)
+    {
+        for (TokenFilter filter : filters)
+            if (type.isInstance(filter)) return type.cast(filter);
+        return null;
+    }
+
+    /**
+     * Runs a single, already split token through the chain.
+     *
+     * @return <code>false</code> if a filter dropped it
+     */
+    public boolean filter(TokenBuffer token)
+    {
+        for (TokenFilter filter : filters)
+            if (!filter.filter(token)) return false;
+        return true;
+    }
+
+    /**
+     * Analyses text, handing every surviving token to handler in order.
+     */
+    public void analyse(CharSequence text, TokenBuffer token,
+            TokenHandler handler) throws IOException, InterruptedException
+    {
+        if (scanned > 0)
+        {
+            scan(text, token, handler);
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length)
+        {
+            if (tokenizer.isDelimiter(text.charAt(i)))
+            {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && !tokenizer.isDelimiter(text.charAt(i)))
+                i++;
+            token.set(text, start, i);
+            if (filter(token)) handler.token(token);
+        }
+    }
+
+    /**
+     * Analyses the UTF-8 bytes of text, handing every surviving token to
+     * handler in order. The terms are the same as those of
+     * analyse(text.toString(), token, handler).
+     */
+    public void analyse(Text text, TokenBuffer token, TokenHandler handler)
+            throws IOException, InterruptedException
+    {
+        analyse(text.getBytes(), 0, text.getLength(), token, handler);
+    }
+
+    /**
+     * Analyses len bytes of UTF-8 text starting at offset off, handing every
+     * surviving token to handler in order.
+     */
+    public void analyse(byte[] utf8, int off, int len, TokenBuffer token,
+            TokenHandler handler) throws IOException, InterruptedException
+    {
+        if (scanned > 0)
+        {
+            scan(utf8, off, len, token, handler);
+            return;
+        }
+        int end = off + len;
+        int i = off;
+        while (i < end)
+        {
+            if (isDelimiter(utf8[i]))
+            {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < end && !isDelimiter(utf8[i]))
+                i++;
+            token.set(utf8, start, i - start);
+            if (filter(token)) handler.token(token);
+        }
+    }
+
+    /**
+     * Analyses every line of a whole document on its own, as if each had been
+     * read by a LineRecordReader: lines end at '\n', '\r' or "\r\n", and the
+     * terminators are never part of a token, whatever the tokenizer.
+     */
+    public void analyseLines(Text text, TokenBuffer token,
+            TokenHandler handler) throws IOException, InterruptedException
+    {
+        byte[] utf8 = text.getBytes();
+        int end = text.getLength();
+        int start = 0;
+        for (int i = 0; i < end; i++)
+        {
+            if (utf8[i] == '\n' || utf8[i] == '\r')
+            {
+                analyse(utf8, start, i - start, token, handler);
+                if (utf8[i] == '\r' && i + 1 < end && utf8[i + 1] == '\n')
+                    i++;
+                start = i + 1;
+            }
+        }
+        if (start < end) analyse(utf8, start, end - start, token, handler);
+    }
+
+    /**
+     * Analyses text into a list of terms, for callers that want Strings.
+     */
+    public List<String> analyse(CharSequence text)
+    {
+        final List<String> terms = new ArrayList<String>();
+        try
+        {
+            analyse(text, new TokenBuffer(), new TokenHandler()
+            {
+                public void token(TokenBuffer token)
+                {
+                    terms.add(token.toString());
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e); // the handler above never throws
+        }
+        catch (InterruptedException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return terms;
+    }
+
+    /* scan() does the filters of the inverted index in a single pass over the
+     * chars of the text, rather than filter by filter per token, and then runs
+     * the rest of the chain. */
+
+    private void scan(CharSequence text, TokenBuffer token, TokenHandler handler)
+            throws IOException, InterruptedException
+    {
+        int length = text.length();
+        char[] buffer = token.resize(length); // holds the cleansed & folded chars of the current token
+        int i = 0;
+        while (i <= length)
+        {
+            // isbn and pagenum only look at the start of the token
+            boolean rejected = startsWith(text, i, TokenFilters.ISBN_PREFIX)
+                    || startsWith(text, i, TokenFilters.PAGE_NUM_PREFIX);
+            boolean hasAlphabet = false;
+            int size = 0;
+            int date = 0;
+            int url = 0;
+            int domain = 0;
+            char c;
+            for (; i < length && (c = text.charAt(i)) != ' '; i++)
+            {
+                if (rejected)
+                {
+                    continue; // just skip to the next separator
+                }
+                date = TokenFilters.nextDateState(date, c);
+                url = TokenFilters.nextUrlState(url, c);
+                domain = TokenFilters.nextDomainState(domain, c);
+                if (date == TokenFilters.DATE_MATCHED
+                        || url == TokenFilters.URL_MATCHED
+                        || domain == TokenFilters.DOMAIN_MATCHED)
+                {
+                    rejected = true;
+                }
+                else if (c >= 'a' && c <= 'z')
+                {
+                    hasAlphabet = true;
+                    buffer[size++] = c;
+                }
+                else if (c >= 'A' && c <= 'Z')
+                {
+                    hasAlphabet = true;
+                    buffer[size++] = (char) (c + ('a' - 'A'));
+                }
+                else if (c == '-')
+                {
+                    buffer[size++] = c;
+                }
+                // anything else is cleansed away
+            }
+            i++; // skip the separator
+            if (rejected || !hasAlphabet)
+            {
+                continue;
+            }
+            token.setLength(size);
+            if (filterRest(token)) handler.token(token);
+            buffer = token.buffer(); // a filter may have grown the buffer
+        }
+    }
+
+    private void scan(byte[] utf8, int off, int len, TokenBuffer token,
+            TokenHandler handler) throws IOException, InterruptedException
+    {
+        // the same scan over bytes. A byte of a multi-byte char is >= 0x80,
+        // which (like the char itself) is cleansed away and resets the matchers.
+        int end = off + len;
+        char[] buffer = token.resize(len);
+        int i = off;
+        while (i <= end)
+        {
+            boolean rejected = startsWith(utf8, i, end, TokenFilters.ISBN_PREFIX)
+                    || startsWith(utf8, i, end, TokenFilters.PAGE_NUM_PREFIX);
+            boolean hasAlphabet = false;
+            int size = 0;
+            int date = 0;
+            int url = 0;
+            int domain = 0;
+            byte b;
+            for (; i < end && (b = utf8[i]) != ' '; i++)
+            {
+                if (rejected)
+                {
+                    continue;
+                }
+                char c = (char) (b & 0xff);
+                date = TokenFilters.nextDateState(date, c);
+                url = TokenFilters.nextUrlState(url, c);
+                domain = TokenFilters.nextDomainState(domain, c);
+                if (date == TokenFilters.DATE_MATCHED
+                        || url == TokenFilters.URL_MATCHED
+                        || domain == TokenFilters.DOMAIN_MATCHED)
+                {
+                    rejected = true;
+                }
+                else if (c >= 'a' && c <= 'z')
+                {
+                    hasAlphabet = true;
+                    buffer[size++] = c;
+                }
+                else if (c >= 'A' && c <= 'Z')
+                {
+                    hasAlphabet = true;
+                    buffer[size++] = (char) (c + ('a' - 'A'));
+                }
+                else if (c == '-')
+                {
+                    buffer[size++] = c;
+                }
+            }
+            i++;
+            if (rejected || !hasAlphabet)
+            {
+                continue;
+            }
+            token.setLength(size);
+            if (filterRest(token)) handler.token(token);
+            buffer = token.buffer();
+        }
+    }
+
+    private boolean isDelimiter(byte b)
+    {
+        // bytes of multi-byte chars are negative, and never delimiters
+        return b >= 0 && tokenizer.isDelimiter((char) b);
+    }
+
+    private boolean filterRest(TokenBuffer token)
+    {
+        for (int f = scanned; f < filters.length; f++)
+            if (!filters[f].filter(token)) return false;
+        return true;
+    }
+
+    private static boolean startsWith(CharSequence text, int offset,
+            String prefix)
+    {
+        if (text.length() - offset < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (text.charAt(offset + i) != prefix.charAt(i)) return false;
+        return true;
+    }
+
+    private static boolean startsWith(byte[] utf8, int offset, int end,
+            String prefix)
+    {
+        if (end - offset < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (utf8[offset + i] != prefix.charAt(i)) return false;
+        return true;
+    }
+
+    private static boolean startsWithScanned(TokenFilter[] filters)
+    {
+        if (filters.length < SCANNED.length) return false;
+        for (int f = 0; f < SCANNED.length; f++)
+            if (filters[f] != SCANNED[f]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,234 @@
+package uk.ac.man.cs.comp38211.ir;
+
+/**
+ * A bounded cache from surface forms to their Porter stems, sitting in front
+ * of a {@link Stemmer}. Term frequencies follow a Zipf curve, so most words of
+ * a task have been stemmed a few tokens earlier; a hit costs one hash and one
+ * compare instead of the six steps of the stemmer.
+ *
+ * The cache holds at most <code>capacity</code> words and evicts with the
+ * CLOCK policy: every hit sets a reference bit, and the clock hand clears bits
+ * until it finds an entry that has not been used since it was last passed.
+ * Words are looked up in an open-addressing table of slot numbers, and the
+ * slots keep their char buffers, so a lookup never allocates and a miss only
+ * allocates when a slot has to grow.
+ *
+ * Like the Stemmer, a StemCache is not thread-safe; use one per task.
+ */
+public class StemCache
+{
+    private final Stemmer stemmer = new Stemmer();
+    private final int capacity;
+
+    // open-addressing table of slot + 1, 0 marks an empty bucket
+    private final int[] table;
+    private final int mask;
+
+    // the slots, in CLOCK order
+    private final char[][] words;
+    private final int[] wordLengths;
+    private final char[][] stems;
+    private final int[] stemLengths;
+    private final int[] hashes;
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+
+    private char[] result;
+    private int resultLength;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache holding at most <code>capacity</code> words. A capacity
+     * of 0 disables caching: every word goes straight to the stemmer.
+     */
+    public StemCache(int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("negative capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        // keep the table at most half full so that probe sequences stay short
+        int buckets = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+        table = new int[buckets];
+        mask = buckets - 1;
+        words = new char[capacity][];
+        wordLengths = new int[capacity];
+        stems = new char[capacity][];
+        stemLengths = new int[capacity];
+        hashes = new int[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    /**
+     * Stems len characters starting at offset off of word, from the cache if
+     * possible. The stem can then be read with getResultBuffer() and
+     * getResultLength(). Returns the length of the stem.
+     */
+    public int stem(char[] word, int off, int len)
+    {
+        if (capacity == 0)
+        {
+            misses++;
+            resultLength = stemmer.stem(word, off, len);
+            result = stemmer.getResultBuffer();
+            return resultLength;
+        }
+
+        int hash = hash(word, off, len);
+        for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask)
+        {
+            int slot = table[i] - 1;
+            if (hashes[slot] == hash && matches(slot, word, off, len))
+            {
+                hits++;
+                referenced[slot] = true;
+                result = stems[slot];
+                resultLength = stemLengths[slot];
+                return resultLength;
+            }
+        }
+
+        misses++;
+        int slot = size < capacity ? size++ : evict();
+        words[slot] = copy(words[slot], word, off, len);
+        wordLengths[slot] = len;
+        int stemLength = stemmer.stem(word, off, len);
+        stems[slot] = copy(stems[slot], stemmer.getResultBuffer(), 0, stemLength);
+        stemLengths[slot] = stemLength;
+        hashes[slot] = hash;
+        referenced[slot] = false;
+        int i = hash & mask;
+        while (table[i] != 0)
+        {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+
+        result = stems[slot];
+        resultLength = stemLength;
+        return resultLength;
+    }
+
+    /**
+     * Returns a reference to a character buffer holding the last stem. It is
+     * owned by the cache; consult getResultLength() for its length.
+     */
+    public char[] getResultBuffer()
+    {
+        return result;
+    }
+
+    /**
+     * Returns the length of the last stem.
+     */
+    public int getResultLength()
+    {
+        return resultLength;
+    }
+
+    /**
+     * Returns the number of words that were found in the cache.
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of words that had to be stemmed.
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the maximum number of words the cache holds.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of words currently cached.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /* evict() advances the clock hand to the first unreferenced slot, clearing
+     * reference bits on the way, and unlinks that slot from the table. */
+
+    private int evict()
+    {
+        while (referenced[hand])
+        {
+            referenced[hand] = false;
+            hand = hand + 1 == capacity ? 0 : hand + 1;
+        }
+        int slot = hand;
+        hand = hand + 1 == capacity ? 0 : hand + 1;
+
+        int i = hashes[slot] & mask;
+        while (table[i] != slot + 1)
+        {
+            i = (i + 1) & mask;
+        }
+        // backward-shift deletion keeps the probe sequences intact without
+        // leaving tombstones behind
+        int j = i;
+        while (true)
+        {
+            j = (j + 1) & mask;
+            if (table[j] == 0)
+            {
+                break;
+            }
+            int home = hashes[table[j] - 1] & mask;
+            boolean stays = i <= j ? (i < home && home <= j)
+                    : (i < home || home <= j);
+            if (!stays)
+            {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+        return slot;
+    }
+
+    private boolean matches(int slot, char[] word, int off, int len)
+    {
+        if (wordLengths[slot] != len) return false;
+        char[] w = words[slot];
+        for (int c = 0; c < len; c++)
+            if (w[c] != word[off + c]) return false;
+        return true;
+    }
+
+    private static int hash(char[] word, int off, int len)
+    {
+        int h = 0;
+        for (int c = off; c < off + len; c++)
+            h = 31 * h + word[c];
+        // spread the bits, since the table is indexed with the low ones
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static char[] copy(char[] dst, char[] src, int off, int len)
+    {
+        if (dst == null || dst.length < len)
+        {
+            dst = new char[Math.max(len, 16)];
+        }
+        System.arraycopy(src, off, dst, 0, len);
+        return dst;
+    }
+}
@@ -74,6 +74,39 @@ public class Stemmer
             b[i++] = w[c];
     }
 
+    /**
+     * Adds wLen characters starting at offset off of a char[] array. Lets a
+     * caller hand over a slice of its own reusable buffer without copying it
+     * into a fresh array first.
+     */
+    public void add(char[] w, int off, int wLen)
+    {
+        if (i + wLen >= b.length)
+        {
+            char[] new_b = new char[i + wLen + INC];
+            System.arraycopy(b, 0, new_b, 0, i);
+            b = new_b;
+        }
+        System.arraycopy(w, off, b, i, wLen);
+        i += wLen;
+    }
+
+    /**
+     * Adds all the characters of a CharSequence to the word being stemmed.
+     */
+    public void add(CharSequence w)
+    {
+        int wLen = w.length();
+        if (i + wLen >= b.length)
+        {
+            char[] new_b = new char[i + wLen + INC];
+            System.arraycopy(b, 0, new_b, 0, i);
+            b = new_b;
+        }
+        for (int c = 0; c < wLen; c++)
+            b[i++] = w.charAt(c);
+    }
+
     /**
      * After a word has been stemmed, it can be retrieved by toString(), or a
      * reference to the internal buffer can be retrieved by getResultBuffer and
@@ -102,6 +135,17 @@ public class Stemmer
         return b;
     }
 
+    /**
+     * Copies the result of the stemming process into a caller-supplied
+     * buffer, which must have room for getResultLength() characters from
+     * offset off. Returns the number of characters copied.
+     */
+    public int getResult(char[] dst, int off)
+    {
+        System.arraycopy(b, 0, dst, off, i_end);
+        return i_end;
+    }
+
     /* cons(i) is true <=> b[i] is a consonant. */
 
     private final boolean cons(int i)
@@ -573,6 +617,20 @@ public class Stemmer
         i = 0;
     }
 
+    /**
+     * Stems wLen characters starting at offset off of a char[] array. The
+     * Stemmer is left ready for the next word, so a single instance can be
+     * reused for every token of a task. Returns the length of the result,
+     * which can be read with getResultBuffer() or getResult(char[], int).
+     */
+    public int stem(char[] w, int off, int wLen)
+    {
+        i = 0;
+        add(w, off, wLen);
+        stem();
+        return i_end;
+    }
+
     /**
      * Test program for demonstrating the Stemmer. It reads text from a a list
      * of files, stems each word, and writes the result to standard output. Note
@@ -1,63 +1,231 @@
 package uk.ac.man.cs.comp38211.ir;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 
+/**
+ * A set of stop words, held in an immutable open-addressing hash table that is
+ * built once. Lookups take a CharSequence or a slice of a char[], so a token
+ * never has to become a String to be checked, and a set can be shared by any
+ * number of threads without locking.
+ *
+ * The default set is read from <code>stopwords.txt</code> or
+ * <code>lib/stopwords.txt</code> on the classpath (the latter being where the
+ * job jar keeps it), falling back to <code>./lib/stopwords.txt</code> for runs
+ * from the project directory. Other lists, such as one shipped through the
+ * distributed cache, can be loaded with {@link #load(InputStream)}.
+ */
 public class StopAnalyser
 {
+    /** The name the stop word list is looked up by. */
+    public static final String STOP_WORDS_FILE = "stopwords.txt";
 
-    private static List<String> stopWords = new ArrayList<String>();
+    private static final String[] RESOURCES = { "/" + STOP_WORDS_FILE,
+            "/lib/" + STOP_WORDS_FILE };
+    private static final String PROJECT_FILE = "./lib/" + STOP_WORDS_FILE;
 
+    private static final StopAnalyser DEFAULT = new StopAnalyser(loadDefault());
+
+    private final List<String> stopWords;
+
+    // all the words back to back, and where each one starts and ends
+    private final char[] chars;
+    private final int[] starts;
+    // open-addressing table of word index + 1, 0 marks an empty bucket
+    private final int[] table;
+    private final int mask;
+
+    /**
+     * Creates the default set.
+     */
     public StopAnalyser()
     {
-        init();
+        this(DEFAULT.stopWords);
+    }
+
+    /**
+     * Creates a set of the given words. Duplicates are dropped.
+     */
+    public StopAnalyser(Collection<String> words)
+    {
+        stopWords = Collections.unmodifiableList(new ArrayList<String>(
+                new LinkedHashSet<String>(words)));
+
+        int length = 0;
+        for (String word : stopWords)
+            length += word.length();
+        chars = new char[length];
+        starts = new int[stopWords.size() + 1];
+        for (int w = 0, offset = 0; w < stopWords.size(); w++)
+        {
+            String word = stopWords.get(w);
+            word.getChars(0, word.length(), chars, offset);
+            offset += word.length();
+            starts[w + 1] = offset;
+        }
+
+        // keep the table at most half full so that probe sequences stay short
+        int buckets = Integer.highestOneBit(Math.max(1, stopWords.size()) * 2 - 1) << 1;
+        table = new int[buckets];
+        mask = buckets - 1;
+        for (int w = 0; w < stopWords.size(); w++)
+        {
+            int i = hash(chars, starts[w], starts[w + 1] - starts[w]) & mask;
+            while (table[i] != 0)
+                i = (i + 1) & mask;
+            table[i] = w + 1;
+        }
+    }
+
+    /**
+     * Reads a set from a list of one word per line, and closes the stream.
+     */
+    public static StopAnalyser load(InputStream in) throws IOException
+    {
+        return new StopAnalyser(read(in));
     }
 
+    /**
+     * Returns the default set.
+     */
+    public static StopAnalyser getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the default stop words, in the order they were read. The list
+     * cannot be modified.
+     */
     public static List<String> getStopWords()
+    {
+        return DEFAULT.stopWords;
+    }
+
+    /**
+     * Checks a word against the default set.
+     */
+    public static boolean isStopWord(CharSequence word)
+    {
+        return DEFAULT.contains(word);
+    }
+
+    /**
+     * Checks len characters starting at offset off of word against the
+     * default set.
+     */
+    public static boolean isStopWord(char[] word, int off, int len)
+    {
+        return DEFAULT.contains(word, off, len);
+    }
+
+    /**
+     * Returns the words of this set, in the order they were added.
+     */
+    public List<String> getWords()
     {
         return stopWords;
     }
 
-    public static Boolean isStopWord(String word)
+    public boolean contains(CharSequence word)
     {
-        List<String> words = Collections.synchronizedList(stopWords);
-        return words.contains(word);
+        int len = word.length();
+        int h = 0;
+        for (int c = 0; c < len; c++)
+            h = 31 * h + word.charAt(c);
+        for (int i = spread(h) & mask; table[i] != 0; i = (i + 1) & mask)
+        {
+            int w = table[i] - 1;
+            int start = starts[w];
+            if (starts[w + 1] - start != len) continue;
+            int c = 0;
+            while (c < len && chars[start + c] == word.charAt(c))
+                c++;
+            if (c == len) return true;
+        }
+        return false;
     }
 
-    private void init()
+    /**
+     * Checks len characters starting at offset off of word.
+     */
+    public boolean contains(char[] word, int off, int len)
     {
-        String stopwords = "./lib/stopwords.txt";
-        BufferedReader in = null;
-        String stopWord;
+        for (int i = hash(word, off, len) & mask; table[i] != 0; i = (i + 1) & mask)
+        {
+            int w = table[i] - 1;
+            int start = starts[w];
+            if (starts[w + 1] - start != len) continue;
+            int c = 0;
+            while (c < len && chars[start + c] == word[off + c])
+                c++;
+            if (c == len) return true;
+        }
+        return false;
+    }
 
-        // List<String> words = Collections.synchronizedList(new ArrayList<String>());
-        
+    private static int hash(char[] word, int off, int len)
+    {
+        int h = 0;
+        for (int c = off; c < off + len; c++)
+            h = 31 * h + word[c];
+        return spread(h);
+    }
+
+    private static int spread(int h)
+    {
+        // the table is indexed with the low bits
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static List<String> loadDefault()
+    {
+        InputStream in = null;
+        for (int r = 0; in == null && r < RESOURCES.length; r++)
+        {
+            in = StopAnalyser.class.getResourceAsStream(RESOURCES[r]);
+        }
         try
         {
-            in = new BufferedReader(new FileReader(stopwords));
-
-            while ((stopWord = in.readLine()) != null)
+            if (in == null)
             {
-                stopWords.add(stopWord);
+                in = new FileInputStream(PROJECT_FILE);
             }
+            return read(in);
         }
         catch (IOException e)
         {
-            System.err.println("Sentiment analysis term file ./lib/stopwords.txt lost");
+            System.err.println("Stop word list " + STOP_WORDS_FILE + " lost");
+            return Collections.emptyList();
         }
-        /*
-        synchronized(words)
+    }
+
+    private static List<String> read(InputStream in) throws IOException
+    {
+        List<String> words = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+                "UTF-8"));
+        try
         {
-            Iterator<String> i = words.iterator();
-            while(i.hasNext())
-                stopWords.add(i.next());
+            String stopWord;
+            while ((stopWord = reader.readLine()) != null)
+            {
+                words.add(stopWord);
+            }
         }
-        */
-
+        finally
+        {
+            reader.close();
+        }
+        return words;
     }
-
 }
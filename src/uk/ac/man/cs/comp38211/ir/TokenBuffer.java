@@ -0,0 +1,177 @@
+package uk.ac.man.cs.comp38211.ir;
+
+import java.nio.charset.CharacterCodingException;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A mutable token: a growable char[] and the number of chars in use. The
+ * {@link Analyzer} loads each token into the same buffer and every
+ * {@link TokenFilter} rewrites it in place, so analysing a token does not
+ * allocate.
+ */
+public class TokenBuffer implements CharSequence
+{
+    private char[] chars;
+    private int length;
+
+    // the token encoded as UTF-8, for copyTo(Text)
+    private byte[] bytes = new byte[32];
+
+    public TokenBuffer()
+    {
+        chars = new char[32];
+    }
+
+    /**
+     * Creates a buffer holding a copy of s.
+     */
+    public TokenBuffer(CharSequence s)
+    {
+        chars = new char[Math.max(32, s.length())];
+        set(s, 0, s.length());
+    }
+
+    /**
+     * Returns the backing array. Only the first length() chars are part of
+     * the token, and the array may be replaced by resize(int).
+     */
+    public char[] buffer()
+    {
+        return chars;
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    /**
+     * Sets the number of chars in use, which must not exceed the capacity.
+     */
+    public void setLength(int length)
+    {
+        if (length > chars.length)
+        {
+            throw new IndexOutOfBoundsException(length + " > " + chars.length);
+        }
+        this.length = length;
+    }
+
+    /**
+     * Makes room for at least capacity chars, keeping the token, and returns
+     * the (possibly new) backing array.
+     */
+    public char[] resize(int capacity)
+    {
+        if (capacity > chars.length)
+        {
+            char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            chars = newChars;
+        }
+        return chars;
+    }
+
+    /**
+     * Replaces the token with the chars of s from start (inclusive) to end
+     * (exclusive).
+     */
+    public void set(CharSequence s, int start, int end)
+    {
+        char[] c = resize(end - start);
+        if (s instanceof String)
+        {
+            ((String) s).getChars(start, end, c, 0);
+        }
+        else
+        {
+            for (int i = start; i < end; i++)
+                c[i - start] = s.charAt(i);
+        }
+        length = end - start;
+    }
+
+    /**
+     * Replaces the token with len chars of src starting at offset off.
+     */
+    public void set(char[] src, int off, int len)
+    {
+        System.arraycopy(src, off, resize(len), 0, len);
+        length = len;
+    }
+
+    /**
+     * Replaces the token with len bytes of UTF-8 starting at offset off. ASCII
+     * bytes are copied with a plain cast; only a token with other bytes is
+     * decoded, replacing malformed input the way Text.toString() does.
+     */
+    public void set(byte[] utf8, int off, int len)
+            throws CharacterCodingException
+    {
+        char[] c = resize(len);
+        for (int i = 0; i < len; i++)
+        {
+            byte b = utf8[off + i];
+            if (b < 0)
+            {
+                String s = Text.decode(utf8, off, len);
+                set(s, 0, s.length());
+                return;
+            }
+            c[i] = (char) b;
+        }
+        length = len;
+    }
+
+    public void append(char c)
+    {
+        resize(length + 1)[length++] = c;
+    }
+
+    public void clear()
+    {
+        length = 0;
+    }
+
+    public char charAt(int index)
+    {
+        if (index >= length)
+        {
+            throw new IndexOutOfBoundsException(index + " >= " + length);
+        }
+        return chars[index];
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        return new String(chars, start, end - start);
+    }
+
+    /**
+     * Sets text to this token. ASCII tokens, which is what the index chain
+     * produces, are encoded with a plain cast into a reused byte[].
+     */
+    public void copyTo(Text text)
+    {
+        if (bytes.length < length)
+        {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (chars[i] >= 0x80)
+            {
+                text.set(toString()); // let Text do the encoding
+                return;
+            }
+            bytes[i] = (byte) chars[i];
+        }
+        text.set(bytes, 0, length);
+    }
+
+    public String toString()
+    {
+        return new String(chars, 0, length);
+    }
+}
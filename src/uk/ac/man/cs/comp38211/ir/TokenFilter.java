@@ -0,0 +1,16 @@
+package uk.ac.man.cs.comp38211.ir;
+
+/**
+ * One step of an {@link Analyzer} chain. A filter looks at a token, may
+ * rewrite it in place, and decides whether it survives. Filters should not
+ * allocate per token; the ones in {@link TokenFilters} do not.
+ */
+public interface TokenFilter
+{
+    /**
+     * Processes the token in place.
+     *
+     * @return <code>false</code> to drop the token
+     */
+    boolean filter(TokenBuffer token);
+}
@@ -0,0 +1,289 @@
+package uk.ac.man.cs.comp38211.ir;
+
+/**
+ * The filters an {@link Analyzer} chain is built from, each with the name it
+ * is configured by. The stateless ones are shared constants; the chain of the
+ * inverted index (date, url, isbn, pagenum, alphabet, cleanse, lowercase) is
+ * also fused into a single scan by the Analyzer, using the matchers below.
+ */
+public final class TokenFilters
+{
+    private TokenFilters()
+    {
+    }
+
+    /** "date": drops tokens containing a date like 2009-06-13. */
+    public static final TokenFilter DATE = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g.:
+            // 2009-06-13.?
+            // (1992-02-20).|1	[Bart_the_Lover.txt.gz|1]
+            // any four-digit numbers as well. (might be important (e.g.
+            // bart mentionining a novel 1984, or 1940s), but
+            // making a compromise here.
+            char[] c = token.buffer();
+            int state = 0;
+            for (int i = 0; i < token.length(); i++)
+            {
+                state = nextDateState(state, c[i]);
+                if (state == DATE_MATCHED) return false;
+            }
+            return true;
+        }
+    };
+
+    /** "url": drops tokens containing http:, https: or .com, in any case. */
+    public static final TokenFilter URL = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g.:
+            // http://www.npr.org/templates/story/story.php?storyid=4249835.|1	[Bart_the_Mother.txt.gz|1]
+            // tvshowsondvd.com.|2	[Bart_the_General.txt.gz|1, Bart_the_Genius.txt.gz|1]
+            // tv.com|4	[Bart_the_Fink.txt.gz|1, Bart_the_Genius.txt.gz|1, Bart_the_Mother.txt.gz|1, Bart_the_Murderer.txt.gz|1]
+            char[] c = token.buffer();
+            int url = 0;
+            int domain = 0;
+            for (int i = 0; i < token.length(); i++)
+            {
+                url = nextUrlState(url, c[i]);
+                domain = nextDomainState(domain, c[i]);
+                if (url == URL_MATCHED || domain == DOMAIN_MATCHED) return false;
+            }
+            return true;
+        }
+    };
+
+    /** "isbn": drops tokens starting with isbn. */
+    public static final TokenFilter ISBN = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g.
+            // isbn?0-00-638898-1.?|4	[Bart_the_Fink.txt.gz|1, Bart_the_General.txt.gz|1, Bart_the_Genius.txt.gz|1, Bart_the_Murderer.txt.gz|1]
+            // isbn?978-0-306-81341-2.?|1	[Bart_the_Fink.txt.gz|1]
+            // there is no way "my boss" would search for isbn
+            return !startsWith(token, ISBN_PREFIX);
+        }
+    };
+
+    /** "pagenum": drops tokens starting with p. */
+    public static final TokenFilter PAGE_NUMBER = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g.
+            //p.|2	[Bart_the_Genius.txt.gz|1, Bart_the_Lover.txt.gz|1]
+            //p.?136.|1	[Bart_the_Fink.txt.gz|1]
+            //p.?36d.?|1	[Bart_the_Fink.txt.gz|1]
+            return !startsWith(token, PAGE_NUM_PREFIX);
+        }
+    };
+
+    /** "alphabet": drops tokens without a single letter a-z or A-Z. */
+    public static final TokenFilter ALPHABET = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g.
+            // just pure numbers.
+            char[] c = token.buffer();
+            for (int i = 0; i < token.length(); i++)
+                if (isAlphabet(c[i])) return true;
+            return false;
+        }
+    };
+
+    /** "cleanse": removes all but the letters a-z, A-Z and hyphens. */
+    public static final TokenFilter CLEANSE = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            char[] c = token.buffer();
+            int size = 0;
+            for (int i = 0; i < token.length(); i++)
+                if (isAlphabet(c[i]) || c[i] == '-') c[size++] = c[i];
+            token.setLength(size);
+            return true;
+        }
+    };
+
+    /** "lowercase": lowers the case of every char. */
+    public static final TokenFilter LOWER_CASE = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            char[] c = token.buffer();
+            for (int i = 0; i < token.length(); i++)
+            {
+                if (c[i] >= 'A' && c[i] <= 'Z')
+                    c[i] += 'a' - 'A';
+                else if (c[i] >= 0x80) c[i] = Character.toLowerCase(c[i]);
+            }
+            return true;
+        }
+    };
+
+    /** "letters": removes all but the letters a-z, keeping empty tokens. */
+    public static final TokenFilter LETTERS = new TokenFilter()
+    {
+        public boolean filter(TokenBuffer token)
+        {
+            char[] c = token.buffer();
+            int size = 0;
+            for (int i = 0; i < token.length(); i++)
+                if (c[i] >= 'a' && c[i] <= 'z') c[size++] = c[i];
+            token.setLength(size);
+            return true;
+        }
+    };
+
+    /** "stop": drops the words of a stop word set. */
+    public static class StopFilter implements TokenFilter
+    {
+        private final StopAnalyser stopWords;
+
+        public StopFilter(StopAnalyser stopWords)
+        {
+            this.stopWords = stopWords;
+        }
+
+        public boolean filter(TokenBuffer token)
+        {
+            // e.g. don't, ain't, etc.
+            return !stopWords.contains(token.buffer(), 0, token.length());
+        }
+    }
+
+    /** "stem": replaces the token with its Porter stem, through a StemCache. */
+    public static class StemFilter implements TokenFilter
+    {
+        private final StemCache stemCache;
+
+        /**
+         * @param stemCacheSize
+         *            the number of stems memoised, 0 to turn the cache off
+         */
+        public StemFilter(int stemCacheSize)
+        {
+            stemCache = new StemCache(stemCacheSize);
+        }
+
+        public StemCache getStemCache()
+        {
+            return stemCache;
+        }
+
+        public boolean filter(TokenBuffer token)
+        {
+            int length = stemCache.stem(token.buffer(), 0, token.length());
+            System.arraycopy(stemCache.getResultBuffer(), 0,
+                    token.resize(length), 0, length);
+            token.setLength(length);
+            return true;
+        }
+    }
+
+    /**
+     * Creates the filter configured by name. The stop word set and the stem
+     * cache size are only used by "stop" and "stem".
+     */
+    public static TokenFilter forName(String name, StopAnalyser stopWords,
+            int stemCacheSize)
+    {
+        if (name.equals("date")) return DATE;
+        if (name.equals("url")) return URL;
+        if (name.equals("isbn")) return ISBN;
+        if (name.equals("pagenum")) return PAGE_NUMBER;
+        if (name.equals("alphabet")) return ALPHABET;
+        if (name.equals("cleanse")) return CLEANSE;
+        if (name.equals("lowercase")) return LOWER_CASE;
+        if (name.equals("letters")) return LETTERS;
+        if (name.equals("stop")) return new StopFilter(stopWords);
+        if (name.equals("stem")) return new StemFilter(stemCacheSize);
+        throw new IllegalArgumentException("Unknown token filter: " + name);
+    }
+
+    // domain-specific prefixes, matched against the raw (uncleansed) token
+    static final String ISBN_PREFIX = "isbn";
+    static final String PAGE_NUM_PREFIX = "p.";
+
+    // states of the hand-written matchers below.
+    // a state is the length of the pattern prefix matched so far.
+    static final int DATE_MATCHED = 10; // [0-9]{4}-[0-9]{2}-[0-9]{2}
+    static final int URL_MATCHED = 6; // http: or https:
+    static final int DOMAIN_MATCHED = 4; // .com
+
+    static boolean isAlphabet(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static int nextDateState(int state, char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            switch (state)
+            {
+                case 4: return 4; // 5 digits in a row still end with 4 digits
+                case 7: return 3; // "dddd-ddd" ends with 3 digits
+                default: return state + 1;
+            }
+        }
+        if (c == '-')
+        {
+            switch (state)
+            {
+                case 4: return 5;
+                case 7: return 8;
+                default: return 0;
+            }
+        }
+        return 0;
+    }
+
+    static int nextUrlState(int state, char c)
+    {
+        // matches http: or https:, case insensitive
+        if (c >= 'A' && c <= 'Z')
+        {
+            c += 'a' - 'A';
+        }
+        switch (state)
+        {
+            case 1: if (c == 't') return 2; break;
+            case 2: if (c == 't') return 3; break;
+            case 3: if (c == 'p') return 4; break;
+            case 4: if (c == ':') return URL_MATCHED; if (c == 's') return 5; break;
+            case 5: if (c == ':') return URL_MATCHED; break;
+        }
+        return c == 'h' ? 1 : 0;
+    }
+
+    static int nextDomainState(int state, char c)
+    {
+        // matches .com, case insensitive
+        if (c >= 'A' && c <= 'Z')
+        {
+            c += 'a' - 'A';
+        }
+        switch (state)
+        {
+            case 1: if (c == 'c') return 2; break;
+            case 2: if (c == 'o') return 3; break;
+            case 3: if (c == 'm') return DOMAIN_MATCHED; break;
+        }
+        return c == '.' ? 1 : 0;
+    }
+
+    private static boolean startsWith(TokenBuffer token, String prefix)
+    {
+        if (token.length() < prefix.length()) return false;
+        char[] c = token.buffer();
+        for (int i = 0; i < prefix.length(); i++)
+            if (c[i] != prefix.charAt(i)) return false;
+        return true;
+    }
+}
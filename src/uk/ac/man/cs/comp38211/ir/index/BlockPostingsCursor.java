@@ -0,0 +1,228 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.nio.ByteBuffer;
+
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+
+/**
+ * A cursor over a postings list where it lies in a mapped postings file,
+ * which decodes the list block by block as it moves along: the doc ids and
+ * term frequencies of a block when the cursor first stops in it, its
+ * positions only when they are asked for, and nothing of the blocks
+ * {@link #advance} skips. The bounds of the blocks are read from the skip
+ * table.
+ */
+final class BlockPostingsCursor extends PostingsCursor
+{
+    private final ByteBuffer in;
+    private final IntCodec codec;
+    // where the list, and its skip table (if it has more than one block), start in the buffer
+    private final int start;
+    private final int skipTable;
+    private final int blockCount;
+    private final PostingsBlock block = new PostingsBlock();
+    // the block the cursor is in, and its posting in the block, -1 before the first
+    private int blockIndex = -1;
+    private int index = -1;
+    private boolean exhausted;
+    // the greatest tf weight of the block found by advanceShallow
+    private float shallowWeight;
+
+    /**
+     * Creates a cursor over a postings list.
+     * 
+     * @param in
+     *            the buffer, at the start of the list, for the cursor only
+     * @param codec
+     *            the codec of the list
+     * @param docFreq
+     *            the number of postings of the list
+     * @param skipTable
+     *            the offset of the skip table from the start of the list, if
+     *            the list has more than one block
+     * @param maxWeight
+     *            the greatest tf weight of the list
+     */
+    BlockPostingsCursor(ByteBuffer in, IntCodec codec, int docFreq, int skipTable, float maxWeight)
+    {
+        super(docFreq, maxWeight);
+        this.in = in;
+        this.codec = codec;
+        start = in.position();
+        this.skipTable = start + skipTable;
+        blockCount = (docFreq + PostingsBlock.SIZE - 1) / PostingsBlock.SIZE;
+    }
+
+    public boolean next()
+    {
+        if (exhausted) return false;
+        if (blockIndex >= 0 && index + 1 < block.size())
+        {
+            index++;
+            return true;
+        }
+        if (blockIndex + 1 == blockCount)
+        {
+            exhausted = true;
+            return false;
+        }
+        readBlock(blockIndex + 1);
+        index = 0;
+        return true;
+    }
+
+    /**
+     * The block of the posting is found by a galloping search of the skip
+     * table, from the current block on, so the blocks before it are never
+     * read; then the posting is binary searched in its block. Moving through a list of n
+     * blocks by k calls takes O(k log(n / k)) block lookups.
+     */
+    public boolean advance(int target)
+    {
+        if (exhausted) return false;
+        int from = index + 1;
+        if (blockIndex < 0 || block.getLastDoc() < target)
+        {
+            int b = findBlock(target);
+            if (b == blockCount)
+            {
+                exhausted = true;
+                return false;
+            }
+            readBlock(b);
+            if (block.getLastDoc() < target)
+            {
+                exhausted = true; // a single block, read to find out
+                return false;
+            }
+            from = 0;
+        }
+        else if (index >= 0 && block.getDoc(index) >= target)
+        {
+            return true;
+        }
+        int lo = from;
+        int hi = block.size() - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (block.getDoc(mid) < target) lo = mid + 1;
+            else hi = mid;
+        }
+        index = lo;
+        return true;
+    }
+
+    /**
+     * Finds the block in the skip table, without reading it. A list of a
+     * single block has no skip table: Integer.MAX_VALUE is returned for it
+     * until it is read.
+     */
+    public int advanceShallow(int target)
+    {
+        if (!exhausted && blockIndex >= 0 && block.getLastDoc() >= target)
+        {
+            shallowWeight = blockCount == 1 ? maxWeight : weight(blockIndex);
+            return block.getLastDoc();
+        }
+        int b = exhausted || blockIndex + 1 == blockCount ? blockCount : findBlock(target);
+        if (b == blockCount)
+        {
+            shallowWeight = 0;
+            return Integer.MAX_VALUE;
+        }
+        if (blockCount == 1)
+        {
+            shallowWeight = maxWeight; // no skip table: the bound of the list
+            return Integer.MAX_VALUE;
+        }
+        shallowWeight = weight(b);
+        return lastDoc(b);
+    }
+
+    public float getShallowMaxWeight()
+    {
+        return shallowWeight;
+    }
+
+    // the first block after the current one whose last doc id is at least target, or blockCount
+    private int findBlock(int target)
+    {
+        int lo = blockIndex + 1;
+        if (blockCount == 1) return lo; // no skip table: the block is read to find out
+        // gallop: double the step until a block ends at or after the target
+        int step = 1;
+        int hi = lo;
+        while (hi < blockCount && lastDoc(hi) < target)
+        {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, blockCount);
+        // then binary search between the last two steps
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (lastDoc(mid) < target) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int lastDoc(int b)
+    {
+        return in.getInt(skipTable + 12 * b);
+    }
+
+    private float weight(int b)
+    {
+        return in.getFloat(skipTable + 12 * b + 8);
+    }
+
+    // reads a block, and decodes its doc ids and term frequencies
+    private void readBlock(int b)
+    {
+        int previousLastDoc;
+        if (b == blockIndex + 1)
+        {
+            // the next block starts where this one ends, which is where the buffer is
+            previousLastDoc = blockIndex < 0 ? -1 : block.getLastDoc();
+        }
+        else
+        {
+            in.position(start + in.getInt(skipTable + 12 * b + 4));
+            previousLastDoc = lastDoc(b - 1);
+        }
+        int count = b == blockCount - 1 ? docFreq - b * PostingsBlock.SIZE : PostingsBlock.SIZE;
+        block.read(in, count, previousLastDoc);
+        block.decodeDocs(codec);
+        blockIndex = b;
+        index = -1;
+    }
+
+    public int getDoc()
+    {
+        return block.getDoc(index);
+    }
+
+    public int getTf()
+    {
+        return block.getTf(index);
+    }
+
+    /**
+     * The positions of the block are decoded the first time this is called in
+     * the block.
+     */
+    public int[] getPositions()
+    {
+        block.decodePositions(codec);
+        return block.getPositions();
+    }
+
+    public int getPositionsStart()
+    {
+        return block.getPositionsStart(index);
+    }
+}
@@ -0,0 +1,165 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * The BM25 weighting of the terms of a binary index. The score of a doc d for
+ * a term t is
+ * 
+ * <pre>
+ * idf(t) * tf (k1 + 1) / (tf + k1 (1 - b + b |d| / avgdl))
+ * </pre>
+ * 
+ * where idf(t) = log(1 + (N - df + 0.5) / (df + 0.5)), which is never
+ * negative, N is the number of docs, |d| the length of d in terms and avgdl
+ * the average length of a doc. The second factor, the tf weight, depends on
+ * the doc and not on the term: {@link IndexWriter} stores the greatest tf
+ * weight of every postings list and of every block of it, which bound the
+ * scores of the docs of the list and of the block.
+ * 
+ * The lengths of the docs are kept in a file of their own, part-r-NNNNN
+ * {@link #LENGTHS}, of a 4-byte int per doc in doc id order.
+ */
+public class Bm25
+{
+    /** The extension of the file of doc lengths. */
+    public static final String LENGTHS = ".lengths";
+
+    public static final float DEFAULT_K1 = 1.2f;
+    public static final float DEFAULT_B = 0.75f;
+
+    private final float k1;
+    private final float b;
+    private final int docCount;
+    private final double averageLength;
+    private final IntBuffer lengths;
+
+    /**
+     * Creates the weighting of an index.
+     * 
+     * @param k1
+     *            how soon the weight of a term saturates with its tf
+     * @param b
+     *            how much the weight of a term is normalised by the length
+     *            of the doc, from 0 to 1
+     * @param docCount
+     *            the number of docs
+     * @param averageLength
+     *            the average length of a doc
+     * @param lengths
+     *            the length of every doc, or null if they are all of the
+     *            average length
+     */
+    public Bm25(float k1, float b, int docCount, double averageLength, IntBuffer lengths)
+    {
+        this.k1 = k1;
+        this.b = b;
+        this.docCount = docCount;
+        this.averageLength = averageLength;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Creates the weighting of docs of given lengths.
+     * 
+     * @param k1
+     *            how soon the weight of a term saturates with its tf
+     * @param b
+     *            how much the weight of a term is normalised by the length
+     *            of the doc, from 0 to 1
+     * @param lengths
+     *            the length of every doc
+     */
+    public static Bm25 of(float k1, float b, int[] lengths)
+    {
+        long total = 0;
+        for (int length : lengths)
+        {
+            total += length;
+        }
+        return new Bm25(k1, b, lengths.length,
+                lengths.length == 0 ? 0 : (double) total / lengths.length, IntBuffer.wrap(lengths));
+    }
+
+    /**
+     * Writes the lengths of docs, as a {@link #LENGTHS} file.
+     */
+    public static void writeLengths(int[] lengths, DataOutput out) throws IOException
+    {
+        for (int length : lengths)
+        {
+            out.writeInt(length);
+        }
+    }
+
+    public float getK1()
+    {
+        return k1;
+    }
+
+    public float getB()
+    {
+        return b;
+    }
+
+    /**
+     * Returns the number of docs.
+     */
+    public int getDocCount()
+    {
+        return docCount;
+    }
+
+    /**
+     * Returns the average length of a doc, in terms.
+     */
+    public double getAverageLength()
+    {
+        return averageLength;
+    }
+
+    /**
+     * Returns the length of a doc, in terms.
+     */
+    public double getLength(int doc)
+    {
+        return lengths == null ? averageLength : lengths.get(doc);
+    }
+
+    /**
+     * Returns the inverse doc freq of a term.
+     * 
+     * @param docFreq
+     *            the doc freq of the term
+     */
+    public double idf(int docFreq)
+    {
+        return Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    /**
+     * Returns the tf weight of a term in a doc.
+     * 
+     * @param tf
+     *            the term frequency of the term in the doc
+     * @param doc
+     *            the doc id
+     */
+    public double tfWeight(int tf, int doc)
+    {
+        double norm = averageLength == 0 ? 1 : 1 - b + b * getLength(doc) / averageLength;
+        return tf * (k1 + 1) / (tf + k1 * norm);
+    }
+
+    /**
+     * Returns a tf weight as a float not less than it, to be stored as a
+     * bound of tf weights.
+     */
+    public static float bound(double weight)
+    {
+        float f = (float) weight;
+        return f < weight ? Math.nextUp(f) : f;
+    }
+}
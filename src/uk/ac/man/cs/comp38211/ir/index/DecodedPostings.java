@@ -0,0 +1,246 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+
+/**
+ * A postings list decoded whole, doc ids, term frequencies, positions and
+ * block bounds, to be read by any number of cursors without decoding it
+ * again. Decoding a whole list costs more than the blocks of it a query
+ * needs, but only once for all the queries of the term: this is what a
+ * cache of the postings of popular terms holds.
+ * 
+ * The list is held in a single IntBuffer, of: the doc ids; the term
+ * frequencies; where the positions of every posting start, and where the
+ * last end; the greatest tf weights of the blocks of {@link PostingsBlock#SIZE}
+ * postings, as the bits of floats, so that the bounds are those of the
+ * index; and the positions. The buffer may be direct, out of the heap: the
+ * garbage collector then only sees a few small objects however long the list,
+ * and the memory is freed when they are collected (up to
+ * -XX:MaxDirectMemorySize may be allocated in all).
+ */
+public class DecodedPostings
+{
+    private final int docFreq;
+    private final float maxWeight;
+    private final int blockCount;
+    private final IntBuffer buffer;
+    // where the sections of the buffer start
+    private final int tfs;
+    private final int offsets;
+    private final int weights;
+    private final int positions;
+
+    private DecodedPostings(int docFreq, float maxWeight, IntBuffer buffer)
+    {
+        this.docFreq = docFreq;
+        this.maxWeight = maxWeight;
+        this.buffer = buffer;
+        blockCount = (docFreq + PostingsBlock.SIZE - 1) / PostingsBlock.SIZE;
+        tfs = docFreq;
+        offsets = 2 * docFreq;
+        weights = 3 * docFreq + 1;
+        positions = weights + blockCount;
+    }
+
+    /**
+     * Decodes the rest of a postings list.
+     * 
+     * @param postings
+     *            the cursor over the list, before its first posting; it is
+     *            left at its end
+     * @param direct
+     *            whether to hold the list out of the heap
+     * @return the decoded list
+     */
+    public static DecodedPostings decode(PostingsCursor postings, boolean direct)
+    {
+        int docFreq = postings.getDocFreq();
+        int blockCount = (docFreq + PostingsBlock.SIZE - 1) / PostingsBlock.SIZE;
+        int[] head = new int[3 * docFreq + 1 + blockCount];
+        ArrayListOfInts positions = new ArrayListOfInts();
+        for (int i = 0; postings.next(); i++)
+        {
+            int doc = postings.getDoc();
+            int tf = postings.getTf();
+            head[i] = doc;
+            head[docFreq + i] = tf;
+            head[2 * docFreq + i] = positions.size();
+            if (i % PostingsBlock.SIZE == 0)
+            {
+                postings.advanceShallow(doc);
+                head[3 * docFreq + 1 + i / PostingsBlock.SIZE] = Float.floatToRawIntBits(postings.getShallowMaxWeight());
+            }
+            int[] array = postings.getPositions();
+            int start = postings.getPositionsStart();
+            for (int p = 0; p < tf; p++)
+            {
+                positions.add(array[start + p]);
+            }
+        }
+        head[3 * docFreq] = positions.size();
+
+        long length = (long) head.length + positions.size();
+        if (length > Integer.MAX_VALUE / 4)
+        {
+            throw new IllegalArgumentException("A list of " + length + " ints is too long to decode");
+        }
+        IntBuffer buffer = direct
+                ? ByteBuffer.allocateDirect(4 * (int) length).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.allocate((int) length);
+        buffer.put(head);
+        buffer.put(positions.getArray(), 0, positions.size());
+        return new DecodedPostings(docFreq, postings.getMaxWeight(), buffer);
+    }
+
+    /**
+     * Returns the doc freq of the term, that is the length of the list.
+     */
+    public int getDocFreq()
+    {
+        return docFreq;
+    }
+
+    /**
+     * Returns whether the list is held out of the heap.
+     */
+    public boolean isDirect()
+    {
+        return buffer.isDirect();
+    }
+
+    /**
+     * Returns about how many bytes the list takes, in or out of the heap.
+     */
+    public long getBytes()
+    {
+        return 4L * buffer.capacity() + 64;
+    }
+
+    /**
+     * Returns a new cursor over the list, before its first posting.
+     */
+    public PostingsCursor cursor()
+    {
+        return new Cursor();
+    }
+
+    private final class Cursor extends PostingsCursor
+    {
+        // the posting the cursor is at, -1 before the first and docFreq after the last
+        private int index = -1;
+        private float shallowWeight;
+        // the positions of the posting, copied out of a direct buffer
+        private int[] positionsCopy = new int[0];
+
+        Cursor()
+        {
+            super(DecodedPostings.this.docFreq, DecodedPostings.this.maxWeight);
+        }
+
+        public boolean next()
+        {
+            if (index < docFreq) index++;
+            return index < docFreq;
+        }
+
+        public boolean advance(int target)
+        {
+            if (index >= docFreq) return false;
+            if (index >= 0 && buffer.get(index) >= target) return true;
+            // gallop, then binary search between the last two steps
+            int lo = index + 1;
+            int hi = lo;
+            int step = 1;
+            while (hi < docFreq && buffer.get(hi) < target)
+            {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, docFreq);
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (buffer.get(mid) < target) lo = mid + 1;
+                else hi = mid;
+            }
+            index = lo;
+            return index < docFreq;
+        }
+
+        public int advanceShallow(int target)
+        {
+            // the first block, from the current one on, ending at or after the target
+            int lo = index >= docFreq ? blockCount : Math.max(index, 0) / PostingsBlock.SIZE;
+            int hi = lo;
+            int step = 1;
+            while (hi < blockCount && lastDoc(hi) < target)
+            {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, blockCount);
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (lastDoc(mid) < target) lo = mid + 1;
+                else hi = mid;
+            }
+            int b = lo;
+            if (b == blockCount)
+            {
+                shallowWeight = 0;
+                return Integer.MAX_VALUE;
+            }
+            shallowWeight = Float.intBitsToFloat(buffer.get(weights + b));
+            return lastDoc(b);
+        }
+
+        private int lastDoc(int b)
+        {
+            return buffer.get(Math.min((b + 1) * PostingsBlock.SIZE, docFreq) - 1);
+        }
+
+        public float getShallowMaxWeight()
+        {
+            return shallowWeight;
+        }
+
+        public int getDoc()
+        {
+            return buffer.get(index);
+        }
+
+        public int getTf()
+        {
+            return buffer.get(tfs + index);
+        }
+
+        public int[] getPositions()
+        {
+            if (buffer.hasArray()) return buffer.array();
+            int tf = getTf();
+            if (positionsCopy.length < tf)
+            {
+                positionsCopy = new int[Math.max(tf, 2 * positionsCopy.length)];
+            }
+            int start = positions + buffer.get(offsets + index);
+            for (int p = 0; p < tf; p++)
+            {
+                positionsCopy[p] = buffer.get(start + p);
+            }
+            return positionsCopy;
+        }
+
+        public int getPositionsStart()
+        {
+            if (!buffer.hasArray()) return 0;
+            return buffer.arrayOffset() + positions + buffer.get(offsets + index);
+        }
+    }
+}
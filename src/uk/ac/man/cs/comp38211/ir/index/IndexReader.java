@@ -0,0 +1,392 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.codec.VByteCodec;
+
+/**
+ * Reads a binary index, as written by {@link IndexWriter} (the output of
+ * BasicInvertedIndex with -codec), from a local directory. The lexicon and
+ * postings files of every reducer are memory-mapped, and searched and decoded
+ * where they lie: opening an index only reads the headers and ends of its
+ * files, so it takes the same time and heap whatever the size of the index.
+ * 
+ * A term is looked up by a binary search over the first terms of the buckets
+ * of the lexicon, then a scan of one bucket; its postings list is decoded
+ * block by block as a {@link PostingsCursor} moves along it.
+ * 
+ * Terms are compared as their UTF-8 bytes, which is the order of the terms of
+ * the reducers. With more than one reducer, every reducer has a range of the
+ * terms, and the ranges are told apart by their first terms.
+ * 
+ * The {@link Bm25} weighting of the index is that of its lexicons, with the
+ * doc lengths of its {@link Bm25#LENGTHS} file, which is mapped too.
+ * 
+ * A reader may be shared by threads: every lookup and every cursor reads from
+ * its own view of the mapped files.
+ */
+public class IndexReader implements PostingsSource
+{
+    private final List<Part> parts = new ArrayList<Part>();
+    private final IntCodec codec;
+    private final long termCount;
+    private final Bm25 bm25;
+
+    /**
+     * Opens the index of a directory.
+     * 
+     * @param dir
+     *            the output directory of the indexing job
+     */
+    public IndexReader(File dir) throws IOException
+    {
+        File[] lexicons = dir.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(IndexWriter.LEXICON);
+            }
+        });
+        if (lexicons == null || lexicons.length == 0)
+        {
+            throw new IOException("No *" + IndexWriter.LEXICON + " files in " + dir);
+        }
+        Arrays.sort(lexicons);
+        IntCodec codec = null;
+        Bm25 weighting = null;
+        long termCount = 0;
+        for (File lexicon : lexicons)
+        {
+            String name = lexicon.getName();
+            File postings = new File(dir, name.substring(0, name.length()
+                    - IndexWriter.LEXICON.length()) + IndexWriter.POSTINGS);
+            Part part = new Part(map(lexicon), map(postings));
+            if (codec != null && codec != part.codec)
+            {
+                throw new IOException(lexicon + " is written with " + part.codec
+                        + ", not " + codec);
+            }
+            codec = part.codec;
+            if (weighting == null) weighting = part.bm25;
+            termCount += part.termCount;
+            if (part.termCount > 0)
+            {
+                parts.add(part);
+            }
+        }
+        Collections.sort(parts, new Comparator<Part>()
+        {
+            public int compare(Part a, Part b)
+            {
+                return compareBytes(a.firstTerm, b.firstTerm);
+            }
+        });
+        this.codec = codec;
+        this.termCount = termCount;
+
+        File[] lengths = dir.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(Bm25.LENGTHS);
+            }
+        });
+        if (lengths.length != 1)
+        {
+            throw new IOException(lengths.length + " *" + Bm25.LENGTHS + " files in " + dir + ", not 1");
+        }
+        bm25 = new Bm25(weighting.getK1(), weighting.getB(), weighting.getDocCount(),
+                weighting.getAverageLength(), map(lengths[0]).asIntBuffer());
+    }
+
+    private static ByteBuffer map(File file) throws IOException
+    {
+        if (file.length() > Integer.MAX_VALUE)
+        {
+            throw new IOException(file + " is over 2GB, which cannot be mapped at once:"
+                    + " index with more reducers");
+        }
+        FileChannel channel = FileChannel.open(file.toPath());
+        try
+        {
+            // the mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the codec of the postings lists.
+     */
+    public IntCodec getCodec()
+    {
+        return codec;
+    }
+
+    /**
+     * Returns the BM25 weighting of the index.
+     */
+    public Bm25 getBm25()
+    {
+        return bm25;
+    }
+
+    /**
+     * Returns the number of terms of the index.
+     */
+    public long getTermCount()
+    {
+        return termCount;
+    }
+
+    /**
+     * Returns the doc freq of a term.
+     * 
+     * @param term
+     *            the term
+     * @return the doc freq, 0 if the term is not in the index
+     */
+    public int getDocFreq(String term)
+    {
+        Entry entry = lookup(term);
+        return entry == null ? 0 : entry.docFreq;
+    }
+
+    /**
+     * Returns a cursor over the postings list of a term, before its first
+     * posting.
+     * 
+     * @param term
+     *            the term
+     * @return the cursor, or null if the term is not in the index
+     */
+    public PostingsCursor getPostings(String term)
+    {
+        Entry entry = lookup(term);
+        if (entry == null) return null;
+        ByteBuffer postings = entry.part.postings.duplicate();
+        postings.position((int) entry.offset);
+        return new BlockPostingsCursor(postings, codec, entry.docFreq, entry.skipTable, entry.maxWeight);
+    }
+
+    private Entry lookup(String term)
+    {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        // the last part starting at or before the term
+        int lo = 0;
+        int hi = parts.size() - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi + 1) >>> 1;
+            if (compareBytes(parts.get(mid).firstTerm, key) <= 0) lo = mid;
+            else hi = mid - 1;
+        }
+        return parts.isEmpty() ? null : parts.get(lo).lookup(key);
+    }
+
+    /**
+     * Prints the postings lists of terms, in the text format of the index:
+     * <code>IndexReader &lt;index dir&gt; &lt;term&gt;...</code>
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("usage: " + IndexReader.class.getName() + " <index dir> <term>...");
+            System.exit(-1);
+        }
+        IndexReader index = new IndexReader(new File(args[0]));
+        for (int t = 1; t < args.length; t++)
+        {
+            PostingsCursor postings = index.getPostings(args[t]);
+            StringBuilder line = new StringBuilder(args[t]).append('|');
+            line.append(postings == null ? 0 : postings.getDocFreq()).append("\t[");
+            for (int n = 0; postings != null && postings.next(); n++)
+            {
+                if (n > 0) line.append(", ");
+                line.append(postings.getDoc()).append('|').append(postings.getTf()).append("|[");
+                int[] positions = postings.getPositions();
+                for (int i = 0; i < postings.getTf(); i++)
+                {
+                    if (i > 0) line.append(", ");
+                    line.append(positions[postings.getPositionsStart() + i]);
+                }
+                line.append(']');
+            }
+            System.out.println(line.append(']'));
+        }
+    }
+
+    static int compareBytes(byte[] a, byte[] b)
+    {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++)
+        {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    // where a term was found
+    private static class Entry
+    {
+        final Part part;
+        final int docFreq;
+        final long offset;
+        final int skipTable;
+        final float maxWeight;
+
+        Entry(Part part, int docFreq, long offset, int skipTable, float maxWeight)
+        {
+            this.part = part;
+            this.docFreq = docFreq;
+            this.offset = offset;
+            this.skipTable = skipTable;
+            this.maxWeight = maxWeight;
+        }
+    }
+
+    // the lexicon and postings files of a reducer
+    private static class Part
+    {
+        final ByteBuffer lexicon;
+        final ByteBuffer postings;
+        final IntCodec codec;
+        final Bm25 bm25;
+        final long termCount;
+        final int bucketCount;
+        final int bucketsStart;
+        final byte[] firstTerm;
+
+        Part(ByteBuffer lexicon, ByteBuffer postings) throws IOException
+        {
+            this.lexicon = lexicon;
+            this.postings = postings;
+            ByteBuffer in = lexicon.duplicate();
+            codec = readHeader(in);
+            bm25 = new Bm25(in.getFloat(), in.getFloat(), in.getInt(), in.getDouble(), null);
+            if (readHeader(postings.duplicate()) != codec)
+            {
+                throw new IOException("The lexicon and postings files have different codecs");
+            }
+            int end = lexicon.limit();
+            termCount = lexicon.getLong(end - 16);
+            bucketsStart = (int) lexicon.getLong(end - 8);
+            bucketCount = (end - 16 - bucketsStart) / 8;
+            firstTerm = termCount == 0 ? null : firstTerm(0);
+        }
+
+        private static IntCodec readHeader(ByteBuffer in) throws IOException
+        {
+            if (in.getInt() != IndexWriter.MAGIC)
+            {
+                throw new IOException("Not an index file");
+            }
+            int version = in.getInt();
+            if (version != IndexWriter.VERSION)
+            {
+                throw new IOException("Index version " + version + ", not "
+                        + IndexWriter.VERSION);
+            }
+            byte[] name = new byte[in.getShort()];
+            in.get(name);
+            return IntCodec.forName(new String(name, StandardCharsets.UTF_8));
+        }
+
+        private int bucket(int i)
+        {
+            return (int) lexicon.getLong(bucketsStart + 8 * i);
+        }
+
+        private byte[] firstTerm(int bucket)
+        {
+            ByteBuffer in = lexicon.duplicate();
+            in.position(bucket(bucket));
+            VByteCodec.readVInt(in); // no prefix
+            byte[] term = new byte[VByteCodec.readVInt(in)];
+            in.get(term);
+            return term;
+        }
+
+        // compares the first term of a bucket with a key, where it lies
+        private int compareFirstTerm(int bucket, byte[] key)
+        {
+            ByteBuffer in = lexicon.duplicate();
+            in.position(bucket(bucket));
+            VByteCodec.readVInt(in);
+            int length = VByteCodec.readVInt(in);
+            int start = in.position();
+            int n = Math.min(length, key.length);
+            for (int i = 0; i < n; i++)
+            {
+                int cmp = (lexicon.get(start + i) & 0xFF) - (key[i] & 0xFF);
+                if (cmp != 0) return cmp;
+            }
+            return length - key.length;
+        }
+
+        Entry lookup(byte[] key)
+        {
+            // the last bucket starting at or before the key
+            int lo = 0;
+            int hi = bucketCount - 1;
+            while (lo < hi)
+            {
+                int mid = (lo + hi + 1) >>> 1;
+                if (compareFirstTerm(mid, key) <= 0) lo = mid;
+                else hi = mid - 1;
+            }
+
+            // the terms of the bucket, rebuilt one from the previous
+            ByteBuffer in = lexicon.duplicate();
+            in.position(bucket(lo));
+            long terms = Math.min(IndexWriter.LEXICON_BUCKET,
+                    termCount - (long) lo * IndexWriter.LEXICON_BUCKET);
+            byte[] term = new byte[Math.max(key.length, 16)];
+            for (int t = 0; t < terms; t++)
+            {
+                int prefix = VByteCodec.readVInt(in);
+                int suffix = VByteCodec.readVInt(in);
+                if (term.length < prefix + suffix)
+                {
+                    term = Arrays.copyOf(term, prefix + suffix);
+                }
+                in.get(term, prefix, suffix);
+                int docFreq = VByteCodec.readVInt(in);
+                long offset = VByteCodec.readVLong(in);
+                int skipTable = docFreq > PostingsBlock.SIZE ? VByteCodec.readVInt(in) : 0;
+                float maxWeight = in.getFloat();
+                int cmp = compare(term, prefix + suffix, key);
+                if (cmp == 0) return new Entry(this, docFreq, offset, skipTable, maxWeight);
+                if (cmp > 0) return null;
+            }
+            return null;
+        }
+
+        private static int compare(byte[] term, int length, byte[] key)
+        {
+            int n = Math.min(length, key.length);
+            for (int i = 0; i < n; i++)
+            {
+                int cmp = (term[i] & 0xFF) - (key[i] & 0xFF);
+                if (cmp != 0) return cmp;
+            }
+            return length - key.length;
+        }
+    }
+}
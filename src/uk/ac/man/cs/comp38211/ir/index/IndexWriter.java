@@ -0,0 +1,301 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfFloats;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfLongs;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.codec.VByteCodec;
+
+/**
+ * Writes a binary index: a postings file, of the postings lists of the terms
+ * one after the other, each as {@link PostingsBlock}s; and a lexicon file, of
+ * the terms in the same order, each with its doc freq and the offset of its
+ * postings list in the postings file.
+ * 
+ * Both files start with {@link #MAGIC}, {@link #VERSION} and the name of the
+ * {@link IntCodec} of the postings lists; the lexicon then has the
+ * parameters and statistics of the {@link Bm25} weighting of the index: k1
+ * and b as 4-byte floats, the number of docs as a 4-byte int and the average
+ * length of a doc as an 8-byte double. The lexicon is front-coded, like
+ * the FrontCodedStringList of the dictionary, but laid out to be searched
+ * where it lies, without loading it (see {@link IndexReader}):
+ * <ul>
+ * <li>the terms, in buckets of {@link #LEXICON_BUCKET}: every term as the
+ * length of the prefix it shares with the previous term of its bucket (0 for
+ * the first term of a bucket, which is written whole), the length of the rest
+ * of its UTF-8 bytes, and those bytes; then its doc freq and the offset of its
+ * postings list, and for a list of more than one block, the offset of its
+ * skip table from the start of the list, all as variable-byte ints or longs;
+ * and the greatest tf weight of the list, as a 4-byte float;</li>
+ * <li>the offsets of the buckets in the lexicon file, as 8-byte longs;</li>
+ * <li>the number of terms and the offset of the bucket offsets, as 8-byte
+ * longs, at the very end.</li>
+ * </ul>
+ * 
+ * A postings list of more than one block is followed by its skip table: the
+ * last doc id of every block and the offset of the block from the start of
+ * the list, as 4-byte ints, and the greatest tf weight of the block, as a
+ * 4-byte float. A reader looking for a doc id searches the table rather than
+ * reading the blocks before it; a ranked search skips the blocks whose
+ * scores are bound to be too low.
+ * 
+ * The postings are added one at a time, term after term, so a writer only
+ * ever holds a block of postings, and the skip table of the term: 12 bytes
+ * every {@link PostingsBlock#SIZE} postings. The doc lengths of the weighting
+ * must be known from the start.
+ */
+public class IndexWriter implements Closeable
+{
+    /** The extension of a postings file. */
+    public static final String POSTINGS = ".postings";
+    /** The extension of a lexicon file. */
+    public static final String LEXICON = ".lexicon";
+
+    /** The first bytes of both files: "C38I". */
+    public static final int MAGIC = 0x43333849;
+    /** The version of the format. */
+    public static final int VERSION = 5;
+    /** The number of terms of a bucket of the lexicon. */
+    public static final int LEXICON_BUCKET = 16;
+
+    private final DataOutputStream postings;
+    private final DataOutputStream lexicon;
+    private final IntCodec codec;
+    private final Bm25 bm25;
+
+    // the term being written, and its postings so far
+    private final Text term = new Text();
+    private final PostingsBlock block = new PostingsBlock();
+    private long offset;
+    private final ArrayListOfInts skipDocs = new ArrayListOfInts();
+    private final ArrayListOfInts skipOffsets = new ArrayListOfInts();
+    private final ArrayListOfFloats skipWeights = new ArrayListOfFloats();
+    // the greatest tf weights of the block and of the list so far
+    private double blockWeight;
+    private double listWeight;
+    // the length of the postings file so far
+    private long length;
+
+    // the lexicon so far: its length, the offsets of its buckets, and the last term written
+    private long lexiconLength;
+    private final ArrayListOfLongs buckets = new ArrayListOfLongs();
+    private final Text previousTerm = new Text();
+    private long termCount;
+    private int docFreq;
+    private int lastDoc = -1;
+
+    // statistics
+    private long postingCount;
+    private long positionCount;
+    private long postingsBytes;
+    private long positionsBytes;
+
+    /**
+     * Creates a writer, and writes the headers of the files.
+     * 
+     * @param postings
+     *            where to write the postings file
+     * @param lexicon
+     *            where to write the lexicon file
+     * @param codec
+     *            the codec of the postings lists
+     * @param bm25
+     *            the weighting of the index, with the lengths of its docs
+     */
+    public IndexWriter(DataOutputStream postings, DataOutputStream lexicon,
+            IntCodec codec, Bm25 bm25) throws IOException
+    {
+        this.postings = postings;
+        this.lexicon = lexicon;
+        this.codec = codec;
+        this.bm25 = bm25;
+        writeHeader(postings, codec);
+        writeHeader(lexicon, codec);
+        lexicon.writeFloat(bm25.getK1());
+        lexicon.writeFloat(bm25.getB());
+        lexicon.writeInt(bm25.getDocCount());
+        lexicon.writeDouble(bm25.getAverageLength());
+        length = postings.size();
+        lexiconLength = lexicon.size();
+    }
+
+    private static void writeHeader(DataOutputStream out, IntCodec codec)
+            throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(codec.getName());
+    }
+
+    /**
+     * Adds a posting of a term. The terms must come in order, and the
+     * postings of a term one after the other, in ascending doc id order.
+     * 
+     * @param term
+     *            the term
+     * @param posting
+     *            the posting, which is copied
+     */
+    public void add(Text term, PostingWritable posting) throws IOException
+    {
+        if (!term.equals(this.term))
+        {
+            finishTerm();
+            this.term.set(term);
+            offset = length;
+        }
+        else if (block.isFull())
+        {
+            writeBlock();
+        }
+        block.add(posting);
+        double weight = bm25.tfWeight(posting.getTf(), posting.getDocId());
+        blockWeight = Math.max(blockWeight, weight);
+        listWeight = Math.max(listWeight, weight);
+        docFreq++;
+        postingCount++;
+        positionCount += posting.getTf();
+    }
+
+    private void writeBlock() throws IOException
+    {
+        skipOffsets.add(listOffset());
+        int written = block.write(postings, codec, lastDoc);
+        length += written;
+        postingsBytes += written - block.getPositionsLength();
+        positionsBytes += block.getPositionsLength();
+        lastDoc = block.getLastDoc();
+        skipDocs.add(lastDoc);
+        skipWeights.add(Bm25.bound(blockWeight));
+        block.clear();
+        blockWeight = 0;
+    }
+
+    // where the postings file is, from the start of the list of the term
+    private int listOffset() throws IOException
+    {
+        if (length - offset > Integer.MAX_VALUE)
+        {
+            throw new IOException("The postings list of " + term + " is over 2GB");
+        }
+        return (int) (length - offset);
+    }
+
+    private void finishTerm() throws IOException
+    {
+        if (docFreq == 0) return;
+        writeBlock();
+        int skipTable = 0;
+        if (skipDocs.size() > 1)
+        {
+            skipTable = listOffset();
+            for (int i = 0; i < skipDocs.size(); i++)
+            {
+                postings.writeInt(skipDocs.get(i));
+                postings.writeInt(skipOffsets.get(i));
+                postings.writeFloat(skipWeights.get(i));
+            }
+            length += 12 * skipDocs.size();
+            postingsBytes += 12 * skipDocs.size();
+        }
+        skipDocs.clear();
+        skipOffsets.clear();
+        skipWeights.clear();
+        int prefix = 0;
+        if (termCount % LEXICON_BUCKET == 0)
+        {
+            buckets.add(lexiconLength);
+        }
+        else
+        {
+            prefix = sharedPrefix(previousTerm, term);
+        }
+        int suffix = term.getLength() - prefix;
+        lexiconLength += VByteCodec.writeVInt(lexicon, prefix);
+        lexiconLength += VByteCodec.writeVInt(lexicon, suffix);
+        lexicon.write(term.getBytes(), prefix, suffix);
+        lexiconLength += suffix;
+        lexiconLength += VByteCodec.writeVInt(lexicon, docFreq);
+        lexiconLength += VByteCodec.writeVLong(lexicon, offset);
+        if (skipTable > 0)
+        {
+            lexiconLength += VByteCodec.writeVInt(lexicon, skipTable);
+        }
+        lexicon.writeFloat(Bm25.bound(listWeight));
+        lexiconLength += 4;
+        previousTerm.set(term);
+        termCount++;
+        docFreq = 0;
+        lastDoc = -1;
+        listWeight = 0;
+    }
+
+    private static int sharedPrefix(Text a, Text b)
+    {
+        int n = Math.min(a.getLength(), b.getLength());
+        byte[] x = a.getBytes();
+        byte[] y = b.getBytes();
+        int i = 0;
+        while (i < n && x[i] == y[i])
+        {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Writes the last term and the end of the lexicon, and closes both files.
+     */
+    public void close() throws IOException
+    {
+        finishTerm();
+        for (int i = 0; i < buckets.size(); i++)
+        {
+            lexicon.writeLong(buckets.get(i));
+        }
+        lexicon.writeLong(termCount);
+        lexicon.writeLong(lexiconLength);
+        postings.close();
+        lexicon.close();
+    }
+
+    /**
+     * Returns the number of postings written.
+     */
+    public long getPostingCount()
+    {
+        return postingCount;
+    }
+
+    /**
+     * Returns the number of positions written.
+     */
+    public long getPositionCount()
+    {
+        return positionCount;
+    }
+
+    /**
+     * Returns the bytes written for the doc ids and term frequencies of the
+     * postings, block headers and skip tables included.
+     */
+    public long getPostingsBytes()
+    {
+        return postingsBytes;
+    }
+
+    /**
+     * Returns the bytes written for the positions of the postings.
+     */
+    public long getPositionsBytes()
+    {
+        return positionsBytes;
+    }
+}
@@ -0,0 +1,329 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import uk.ac.man.cs.comp38211.io.PostingWritable;
+import uk.ac.man.cs.comp38211.util.codec.IntCodec;
+import uk.ac.man.cs.comp38211.util.codec.VByteCodec;
+
+/**
+ * A block of up to {@link #SIZE} consecutive postings of a postings list, the
+ * unit in which binary postings lists are written and read. A list of df
+ * postings is written as ceil(df / SIZE) blocks, all full but the last.
+ * 
+ * A block is written as:
+ * <ul>
+ * <li>a header of three variable-byte ints: the last doc id of the block, as
+ * the gap from the last doc id of the previous block (or from -1), and the
+ * lengths in bytes of the two sections that follow;</li>
+ * <li>the doc ids, as an ascending list of their gaps from the last doc id of
+ * the previous block, less one, and less their index in the block: the ids
+ * ascend strictly, so the list still ascends, and the gap codecs write a doc
+ * following the one before it as a gap of 0 (see {@link IntCodec}); then the
+ * term frequencies, less one;</li>
+ * <li>the positions, doc after doc, as the gaps between the positions of a
+ * doc, the first being from 0.</li>
+ * </ul>
+ * The lists of full blocks are written with the {@link IntCodec} of the
+ * index, those of the last, partial block of a list with variable-byte ints:
+ * block codecs pay for whole words, which short lists (most of them) do not
+ * fill. From the header alone, a
+ * reader can tell whether a doc id may be in the block, and skip it
+ * otherwise; and it only decodes the positions of the blocks it needs them of.
+ * 
+ * A block is reused from one block to the next, both to write and to read.
+ */
+public class PostingsBlock
+{
+    /** The number of postings of a full block. */
+    public static final int SIZE = 128;
+
+    private final int[] docs = new int[SIZE];
+    private final int[] tfs = new int[SIZE];
+    // the positions of all the docs, one after the other, and where those of each doc start
+    private int[] positions = new int[SIZE * 4];
+    private final int[] offsets = new int[SIZE + 1];
+    private int count;
+    private int lastDoc;
+
+    // to write: the sections are encoded here first, to know their lengths
+    private DataOutputBuffer docsSection;
+    private DataOutputBuffer positionsSection;
+    private int[] gaps = new int[0];
+
+    // to read: where the sections of the block are in the buffer, and what has been decoded
+    private ByteBuffer in;
+    private int previousLastDoc;
+    private int docsStart;
+    private int positionsStart;
+    private int end;
+    private boolean docsDecoded;
+    private boolean positionsDecoded;
+
+    /**
+     * Empties the block, to add postings to it.
+     */
+    public void clear()
+    {
+        count = 0;
+        offsets[0] = 0;
+    }
+
+    /**
+     * Adds a posting at the end of the block, which must not be full. The doc
+     * ids must ascend, from block to block too.
+     * 
+     * @param posting
+     *            the posting, whose positions are copied
+     */
+    public void add(PostingWritable posting)
+    {
+        int tf = posting.getTf();
+        int offset = offsets[count];
+        ensurePositions(offset + tf);
+        for (int i = 0; i < tf; i++)
+        {
+            positions[offset + i] = posting.getPosition(i);
+        }
+        docs[count] = posting.getDocId();
+        tfs[count] = tf;
+        offsets[++count] = offset + tf;
+        lastDoc = posting.getDocId();
+    }
+
+    /**
+     * Writes the block.
+     * 
+     * @param out
+     *            where to write the block
+     * @param codec
+     *            the codec of the lists of the block
+     * @param previousLastDoc
+     *            the last doc id of the previous block of the list, or -1
+     * @return the number of bytes written
+     */
+    public int write(DataOutput out, IntCodec codec, int previousLastDoc)
+            throws IOException
+    {
+        if (docsSection == null)
+        {
+            docsSection = new DataOutputBuffer();
+            positionsSection = new DataOutputBuffer();
+        }
+        docsSection.reset();
+        positionsSection.reset();
+
+        codec = codecOf(codec);
+        // the lists are turned into what is written in place, and back
+        for (int i = 0; i < count; i++)
+        {
+            docs[i] -= previousLastDoc + 1 + i;
+            tfs[i]--;
+        }
+        codec.encodeAscending(docs, count, docsSection);
+        codec.encode(tfs, count, docsSection);
+        for (int i = 0; i < count; i++)
+        {
+            docs[i] += previousLastDoc + 1 + i;
+            tfs[i]++;
+        }
+        int n = offsets[count];
+        if (gaps.length < n)
+        {
+            gaps = new int[Math.max(n, positions.length)];
+        }
+        for (int i = 0; i < count; i++)
+        {
+            int previous = 0;
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+            {
+                gaps[j] = positions[j] - previous;
+                previous = positions[j];
+            }
+        }
+        codec.encode(gaps, n, positionsSection);
+
+        int length = docsSection.getLength() + positionsSection.getLength();
+        length += VByteCodec.writeVInt(out, lastDoc - previousLastDoc);
+        length += VByteCodec.writeVInt(out, docsSection.getLength());
+        length += VByteCodec.writeVInt(out, positionsSection.getLength());
+        out.write(docsSection.getData(), 0, docsSection.getLength());
+        out.write(positionsSection.getData(), 0, positionsSection.getLength());
+        return length;
+    }
+
+    /**
+     * Returns the length in bytes of the positions section of the block last
+     * written, the rest of the block being its header and doc ids.
+     */
+    public int getPositionsLength()
+    {
+        return positionsSection.getLength();
+    }
+
+    /**
+     * Reads the header of a block, and moves past the block. The lists of
+     * the block are only decoded when they are first asked for.
+     * 
+     * @param in
+     *            the buffer, at the start of the block. It is left past the
+     *            block, also once the lists of the block are decoded
+     * @param count
+     *            the number of postings of the block
+     * @param previousLastDoc
+     *            the last doc id of the previous block of the list, or -1
+     */
+    public void read(ByteBuffer in, int count, int previousLastDoc)
+    {
+        this.in = in;
+        this.count = count;
+        lastDoc = previousLastDoc + VByteCodec.readVInt(in);
+        int docsLength = VByteCodec.readVInt(in);
+        int positionsLength = VByteCodec.readVInt(in);
+        docsStart = in.position();
+        positionsStart = docsStart + docsLength;
+        end = positionsStart + positionsLength;
+        in.position(end);
+        docsDecoded = false;
+        positionsDecoded = false;
+        this.previousLastDoc = previousLastDoc;
+    }
+
+    /**
+     * Decodes the doc ids and term frequencies of the block read, unless
+     * they already are.
+     * 
+     * @param codec
+     *            the codec the block was written with
+     */
+    public void decodeDocs(IntCodec codec)
+    {
+        if (docsDecoded) return;
+        codec = codecOf(codec);
+        in.position(docsStart);
+        codec.decodeAscending(in, docs, count);
+        codec.decode(in, tfs, count);
+        in.position(end);
+        offsets[0] = 0;
+        for (int i = 0; i < count; i++)
+        {
+            docs[i] += previousLastDoc + 1 + i;
+            tfs[i]++;
+            offsets[i + 1] = offsets[i] + tfs[i];
+        }
+        docsDecoded = true;
+    }
+
+    /**
+     * Decodes the positions of the block read, and its doc ids and term
+     * frequencies, unless they already are.
+     * 
+     * @param codec
+     *            the codec the block was written with
+     */
+    public void decodePositions(IntCodec codec)
+    {
+        if (positionsDecoded) return;
+        decodeDocs(codec);
+        codec = codecOf(codec);
+        int n = offsets[count];
+        ensurePositions(n);
+        in.position(positionsStart);
+        codec.decode(in, positions, n);
+        in.position(end);
+        for (int i = 0; i < count; i++)
+        {
+            for (int j = offsets[i] + 1; j < offsets[i + 1]; j++)
+            {
+                positions[j] += positions[j - 1];
+            }
+        }
+        positionsDecoded = true;
+    }
+
+    // the codec of the lists of this block
+    private IntCodec codecOf(IntCodec codec)
+    {
+        return count == SIZE ? codec : VByteCodec.INSTANCE;
+    }
+
+    private void ensurePositions(int n)
+    {
+        if (positions.length < n)
+        {
+            positions = Arrays.copyOf(positions, Math.max(n, positions.length * 2));
+        }
+    }
+
+    /**
+     * Returns the number of postings of the block.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns whether the block is full.
+     */
+    public boolean isFull()
+    {
+        return count == SIZE;
+    }
+
+    /**
+     * Returns the last doc id of the block, known from its header alone.
+     */
+    public int getLastDoc()
+    {
+        return lastDoc;
+    }
+
+    /**
+     * Returns the doc id of the i-th posting of the block.
+     */
+    public int getDoc(int i)
+    {
+        return docs[i];
+    }
+
+    /**
+     * Returns the term frequency of the i-th posting of the block.
+     */
+    public int getTf(int i)
+    {
+        return tfs[i];
+    }
+
+    /**
+     * Returns the array holding the positions of the block, those of the
+     * i-th posting being from {@link #getPositionsStart}(i), for getTf(i).
+     */
+    public int[] getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * Returns where the positions of the i-th posting of the block start in
+     * {@link #getPositions}.
+     */
+    public int getPositionsStart(int i)
+    {
+        return offsets[i];
+    }
+
+    /**
+     * Returns the number of positions of the block, that is the sum of its
+     * term frequencies.
+     */
+    public int getPositionCount()
+    {
+        return offsets[count];
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+/**
+ * A cursor over a postings list of a binary index: over the list where it
+ * lies in the index, decoded block by block as the cursor moves along (see
+ * {@link IndexReader#getPostings}), or over a list decoded whole beforehand
+ * (see {@link DecodedPostings}).
+ * 
+ * A cursor starts before the first posting of the list: {@link #next} or
+ * {@link #advance} must be called before the posting is looked at.
+ * 
+ * The greatest {@link Bm25} tf weights of the list and of its blocks bound
+ * the scores of their docs: {@link #advanceShallow} looks up the bound of the
+ * block of a doc id, without reading the block.
+ */
+public abstract class PostingsCursor
+{
+    final int docFreq;
+    final float maxWeight;
+
+    PostingsCursor(int docFreq, float maxWeight)
+    {
+        this.docFreq = docFreq;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the doc freq of the term, that is the length of the list.
+     */
+    public final int getDocFreq()
+    {
+        return docFreq;
+    }
+
+    /**
+     * Returns the greatest tf weight of the postings of the list.
+     */
+    public final float getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    /**
+     * Moves to the next posting.
+     * 
+     * @return false if there are no more postings
+     */
+    public abstract boolean next();
+
+    /**
+     * Moves to the first posting of a doc id not less than a target, unless
+     * the cursor is already there; the cursor never moves back.
+     * 
+     * @param target
+     *            the doc id
+     * @return false if there are no such postings
+     */
+    public abstract boolean advance(int target);
+
+    /**
+     * Finds the block that holds the first posting of a doc id not less than
+     * a target, if the cursor was advanced to it, without moving the cursor:
+     * its greatest tf weight is then returned by {@link #getShallowMaxWeight}.
+     * 
+     * @param target
+     *            the doc id, not less than that of the posting
+     * @return the last doc id of the block, or Integer.MAX_VALUE if there is
+     *         no such block, or if the end of the block is not known
+     */
+    public abstract int advanceShallow(int target);
+
+    /**
+     * Returns the greatest tf weight of the block last found by
+     * {@link #advanceShallow}, 0 if there was none.
+     */
+    public abstract float getShallowMaxWeight();
+
+    /**
+     * Returns the doc id of the posting.
+     */
+    public abstract int getDoc();
+
+    /**
+     * Returns the term frequency of the posting.
+     */
+    public abstract int getTf();
+
+    /**
+     * Returns the array holding the positions of the posting, from
+     * {@link #getPositionsStart}, for {@link #getTf}.
+     */
+    public abstract int[] getPositions();
+
+    /**
+     * Returns where the positions of the posting start in
+     * {@link #getPositions}.
+     */
+    public abstract int getPositionsStart();
+}
@@ -0,0 +1,18 @@
+package uk.ac.man.cs.comp38211.ir.index;
+
+/**
+ * Where queries get the postings lists of their terms from: an
+ * {@link IndexReader}, or a cache of decoded lists in front of one.
+ */
+public interface PostingsSource
+{
+    /**
+     * Returns a cursor over the postings list of a term, before its first
+     * posting.
+     * 
+     * @param term
+     *            the term
+     * @return the cursor, or null if the term is not in the index
+     */
+    PostingsCursor getPostings(String term);
+}
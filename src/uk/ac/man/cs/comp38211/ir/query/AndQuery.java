@@ -0,0 +1,70 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs of all of a number of queries, less those of its {@link NotQuery}
+ * clauses: there must be at least one clause that is not a NotQuery.
+ */
+public class AndQuery extends Query
+{
+    private final List<Query> clauses;
+
+    /**
+     * Creates the conjunction of queries.
+     * 
+     * @param clauses
+     *            the queries
+     */
+    public AndQuery(List<Query> clauses)
+    {
+        this.clauses = Collections.unmodifiableList(new ArrayList<Query>(clauses));
+        boolean positive = false;
+        for (Query clause : clauses)
+        {
+            positive |= !(clause instanceof NotQuery);
+        }
+        if (!positive)
+        {
+            throw new IllegalArgumentException("NOT needs something to exclude from: " + this);
+        }
+    }
+
+    /**
+     * Returns the clauses of the conjunction.
+     */
+    public List<Query> getClauses()
+    {
+        return clauses;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        List<DocIterator> include = new ArrayList<DocIterator>();
+        List<DocIterator> exclude = new ArrayList<DocIterator>();
+        for (Query clause : clauses)
+        {
+            if (clause instanceof NotQuery)
+            {
+                exclude.add(((NotQuery) clause).getClause().iterator(index));
+            }
+            else
+            {
+                include.add(clause.iterator(index));
+            }
+        }
+        DocIterator iterator = include.size() == 1 ? include.get(0) : new ConjunctionIterator(include);
+        if (exclude.isEmpty()) return iterator;
+        return new ExclusionIterator(iterator, exclude.size() == 1 ? exclude.get(0)
+                : new DisjunctionIterator(exclude));
+    }
+
+    public String toString()
+    {
+        return OrQuery.join(clauses, " AND ");
+    }
+}
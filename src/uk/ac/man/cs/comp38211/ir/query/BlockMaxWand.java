@@ -0,0 +1,158 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+/**
+ * Ranks the docs of any of a number of terms by Block-Max WAND (Ding and
+ * Suel, 2011), which only scores the docs whose scores may make the top k.
+ * 
+ * The terms are kept in the order of their current doc ids. The pivot is the
+ * doc id of the first term at which the sum of the bounds of the scores of
+ * the lists so far could beat the k-th score: no doc before it can, as it is
+ * in none of the other lists. Then the bounds of the blocks that would hold
+ * the pivot, from the skip tables, are summed: if they could beat the k-th
+ * score, the pivot is scored (or the terms behind it are advanced to it);
+ * otherwise the terms are advanced past the first of those blocks to end, or
+ * to the next doc of the other terms, without reading the blocks at all.
+ */
+final class BlockMaxWand
+{
+    private BlockMaxWand()
+    {
+    }
+
+    /**
+     * Returns the k docs of the highest scores.
+     * 
+     * @param terms
+     *            the scorers of the terms, before their first docs; the score
+     *            of a doc is summed over them in this order
+     * @param k
+     *            the number of docs
+     */
+    static TopDocs search(TermScorer[] terms, int k)
+    {
+        TopDocsCollector top = new TopDocsCollector(k);
+        TermScorer[] sorted = terms.clone();
+        int n = sorted.length;
+        for (TermScorer term : terms)
+        {
+            term.next();
+        }
+        while (true)
+        {
+            sortByDoc(sorted);
+            double threshold = top.threshold();
+            int p = -1;
+            double bound = 0;
+            for (int i = 0; i < n && sorted[i].doc != DocIterator.NO_MORE_DOCS; i++)
+            {
+                bound += sorted[i].maxScore;
+                if (competitive(bound, threshold))
+                {
+                    p = i;
+                    break;
+                }
+            }
+            if (p < 0) break;
+            int pivot = sorted[p].doc;
+            while (p + 1 < n && sorted[p + 1].doc == pivot)
+            {
+                p++;
+            }
+
+            int blockEnd = Integer.MAX_VALUE;
+            double blockBound = 0;
+            for (int i = 0; i <= p; i++)
+            {
+                blockEnd = Math.min(blockEnd, sorted[i].advanceShallow(pivot));
+                blockBound += sorted[i].getShallowMaxScore();
+            }
+            if (!competitive(blockBound, threshold))
+            {
+                // no doc from the pivot to the end of the first of the blocks can make it
+                int target = blockEnd == Integer.MAX_VALUE ? DocIterator.NO_MORE_DOCS : blockEnd + 1;
+                if (p + 1 < n) target = Math.min(target, sorted[p + 1].doc);
+                for (int i = 0; i <= p; i++)
+                {
+                    sorted[i].advance(target);
+                }
+            }
+            else if (sorted[0].doc == pivot)
+            {
+                double score = 0;
+                for (TermScorer term : terms)
+                {
+                    if (term.doc == pivot) score += term.score();
+                }
+                top.collect(pivot, score);
+                for (int i = 0; i <= p; i++)
+                {
+                    sorted[i].next();
+                }
+            }
+            else
+            {
+                for (int i = 0; sorted[i].doc < pivot; i++)
+                {
+                    sorted[i].advance(pivot);
+                }
+            }
+        }
+        return top.topDocs();
+    }
+
+    /**
+     * Returns the k docs of the highest scores, scoring every doc of any of
+     * the terms: what {@link #search} returns, the slow way.
+     */
+    static TopDocs searchExhaustively(TermScorer[] terms, int k)
+    {
+        TopDocsCollector top = new TopDocsCollector(k);
+        for (TermScorer term : terms)
+        {
+            term.next();
+        }
+        while (true)
+        {
+            int doc = DocIterator.NO_MORE_DOCS;
+            for (TermScorer term : terms)
+            {
+                doc = Math.min(doc, term.doc);
+            }
+            if (doc == DocIterator.NO_MORE_DOCS) break;
+            double score = 0;
+            for (TermScorer term : terms)
+            {
+                if (term.doc == doc) score += term.score();
+            }
+            top.collect(doc, score);
+            for (TermScorer term : terms)
+            {
+                if (term.doc == doc) term.next();
+            }
+        }
+        return top.topDocs();
+    }
+
+    // whether docs of scores up to a bound may make the top k. A score and its bound are sums
+    // over the same terms in different orders, which may round apart: hence the slack
+    private static boolean competitive(double bound, double threshold)
+    {
+        return bound >= threshold * (1 - 1e-9);
+    }
+
+    // insertion sort: the terms are few, and mostly in order already
+    private static void sortByDoc(TermScorer[] terms)
+    {
+        for (int i = 1; i < terms.length; i++)
+        {
+            TermScorer term = terms[i];
+            int j = i - 1;
+            while (j >= 0 && terms[j].doc > term.doc)
+            {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Iterates over the docs of all of a number of iterators. The iterators are
+ * taken in increasing order of cost, that is of doc freq for terms: the
+ * rarest leads, and the others are only advanced to the docs it (and they)
+ * can match, so that, with the skip tables of the postings lists, a rare
+ * term and a common one are intersected in O(rare log common) rather than by
+ * a merge of both lists.
+ */
+public class ConjunctionIterator extends DocIterator
+{
+    private final DocIterator[] iterators;
+    private final DocIterator lead;
+    private int doc = -1;
+
+    /**
+     * Creates the conjunction of iterators.
+     * 
+     * @param iterators
+     *            at least one iterator, before its first doc
+     */
+    public ConjunctionIterator(List<? extends DocIterator> iterators)
+    {
+        List<DocIterator> sorted = new ArrayList<DocIterator>(iterators);
+        Collections.sort(sorted, new Comparator<DocIterator>()
+        {
+            public int compare(DocIterator a, DocIterator b)
+            {
+                return Long.compare(a.cost(), b.cost());
+            }
+        });
+        this.iterators = sorted.toArray(new DocIterator[sorted.size()]);
+        lead = this.iterators[0];
+    }
+
+    public int doc()
+    {
+        return doc;
+    }
+
+    public int next()
+    {
+        return doc = align(lead.next());
+    }
+
+    public int advance(int target)
+    {
+        return doc = align(lead.advance(target));
+    }
+
+    // the first doc, from the lead's on, that all the iterators are at
+    private int align(int doc)
+    {
+        outer: while (doc != NO_MORE_DOCS)
+        {
+            for (int i = 1; i < iterators.length; i++)
+            {
+                int d = iterators[i].doc();
+                if (d < doc)
+                {
+                    d = iterators[i].advance(doc);
+                }
+                if (d > doc)
+                {
+                    // past the lead's doc: move the lead up, and start again
+                    doc = d == NO_MORE_DOCS ? d : lead.advance(d);
+                    continue outer;
+                }
+            }
+            return doc;
+        }
+        return NO_MORE_DOCS;
+    }
+
+    public long cost()
+    {
+        return lead.cost();
+    }
+}
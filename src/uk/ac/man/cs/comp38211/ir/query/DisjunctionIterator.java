@@ -0,0 +1,70 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.List;
+
+/**
+ * Iterates over the docs of any of a number of iterators, by keeping them all
+ * at or past the current doc, which is the least of their docs. That takes a
+ * pass over the iterators per doc, which suits the few clauses of a query.
+ */
+public class DisjunctionIterator extends DocIterator
+{
+    private final DocIterator[] iterators;
+    private int doc = -1;
+
+    /**
+     * Creates the disjunction of iterators.
+     * 
+     * @param iterators
+     *            the iterators, before their first docs
+     */
+    public DisjunctionIterator(List<? extends DocIterator> iterators)
+    {
+        this.iterators = iterators.toArray(new DocIterator[iterators.size()]);
+    }
+
+    public int doc()
+    {
+        return doc;
+    }
+
+    public int next()
+    {
+        int min = NO_MORE_DOCS;
+        for (DocIterator iterator : iterators)
+        {
+            int d = iterator.doc();
+            if (d == doc)
+            {
+                d = iterator.next();
+            }
+            min = Math.min(min, d);
+        }
+        return doc = min;
+    }
+
+    public int advance(int target)
+    {
+        int min = NO_MORE_DOCS;
+        for (DocIterator iterator : iterators)
+        {
+            int d = iterator.doc();
+            if (d < target)
+            {
+                d = iterator.advance(target);
+            }
+            min = Math.min(min, d);
+        }
+        return doc = min;
+    }
+
+    public long cost()
+    {
+        long cost = 0;
+        for (DocIterator iterator : iterators)
+        {
+            cost += iterator.cost();
+        }
+        return cost;
+    }
+}
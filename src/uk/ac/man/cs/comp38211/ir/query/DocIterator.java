@@ -0,0 +1,70 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+/**
+ * Iterates over the doc ids matching a query, in ascending order. An iterator
+ * starts before its first doc id, at -1, and ends at {@link #NO_MORE_DOCS}.
+ */
+public abstract class DocIterator
+{
+    /** The doc id of an iterator past its last doc. */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * Returns the doc id the iterator is at.
+     */
+    public abstract int doc();
+
+    /**
+     * Moves to the next doc id.
+     * 
+     * @return the doc id, or NO_MORE_DOCS
+     */
+    public abstract int next();
+
+    /**
+     * Moves to the first doc id not less than a target, which must be
+     * greater than the current doc id.
+     * 
+     * @param target
+     *            the doc id
+     * @return the doc id, or NO_MORE_DOCS
+     */
+    public abstract int advance(int target);
+
+    /**
+     * Returns an upper bound of the number of doc ids, the cost of going
+     * through them all: conjunctions are led by their cheapest iterators.
+     */
+    public abstract long cost();
+
+    /**
+     * Returns an iterator over no docs.
+     */
+    public static DocIterator empty()
+    {
+        return new DocIterator()
+        {
+            private int doc = -1;
+
+            public int doc()
+            {
+                return doc;
+            }
+
+            public int next()
+            {
+                return doc = NO_MORE_DOCS;
+            }
+
+            public int advance(int target)
+            {
+                return doc = NO_MORE_DOCS;
+            }
+
+            public long cost()
+            {
+                return 0;
+            }
+        };
+    }
+}
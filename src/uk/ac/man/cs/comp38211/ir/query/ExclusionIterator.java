@@ -0,0 +1,62 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+/**
+ * Iterates over the docs of an iterator that another iterator does not have,
+ * the docs of a NOT clause. The excluded iterator is only advanced to the
+ * docs the other has, so excluding a common term from a rare one is cheap.
+ */
+public class ExclusionIterator extends DocIterator
+{
+    private final DocIterator include;
+    private final DocIterator exclude;
+    private int doc = -1;
+
+    /**
+     * Creates an iterator over the docs of one iterator and not another.
+     * 
+     * @param include
+     *            the iterator of the docs to go through
+     * @param exclude
+     *            the iterator of the docs to leave out
+     */
+    public ExclusionIterator(DocIterator include, DocIterator exclude)
+    {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    public int doc()
+    {
+        return doc;
+    }
+
+    public int next()
+    {
+        return doc = skipExcluded(include.next());
+    }
+
+    public int advance(int target)
+    {
+        return doc = skipExcluded(include.advance(target));
+    }
+
+    private int skipExcluded(int doc)
+    {
+        while (doc != NO_MORE_DOCS)
+        {
+            int d = exclude.doc();
+            if (d < doc)
+            {
+                d = exclude.advance(doc);
+            }
+            if (d != doc) return doc;
+            doc = include.next();
+        }
+        return doc;
+    }
+
+    public long cost()
+    {
+        return include.cost();
+    }
+}
@@ -0,0 +1,195 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.index.Bm25;
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+import uk.ac.man.cs.comp38211.util.array.ArrayListOfInts;
+
+/**
+ * Runs queries against a binary index: boolean queries, which match docs,
+ * and ranked queries, bags of terms whose docs are scored with the
+ * {@link Bm25} weighting of the index. A searcher may be shared by threads,
+ * like its IndexReader: every query has iterators of its own.
+ * 
+ * A searcher may have two levels of cache: a {@link ResultCache} of the
+ * results of queries, by the normal form of the query, and a
+ * {@link PostingsCache} of the decoded postings lists of popular terms,
+ * which serves the queries the first misses.
+ */
+public class IndexSearcher
+{
+    private final IndexReader index;
+    private final ResultCache results;
+    private final PostingsCache postingsCache;
+    private final PostingsSource postings;
+
+    /**
+     * Creates a searcher of an index.
+     * 
+     * @param index
+     *            the index
+     */
+    public IndexSearcher(IndexReader index)
+    {
+        this(index, null, null);
+    }
+
+    /**
+     * Creates a searcher of an index, with caches.
+     * 
+     * @param index
+     *            the index
+     * @param results
+     *            the cache of the results of queries, or null
+     * @param postings
+     *            the cache of the postings lists of the index, or null
+     */
+    public IndexSearcher(IndexReader index, ResultCache results, PostingsCache postings)
+    {
+        if (postings != null && postings.getIndex() != index)
+        {
+            throw new IllegalArgumentException("The postings cache is of another index");
+        }
+        this.index = index;
+        this.results = results;
+        postingsCache = postings;
+        this.postings = postings == null ? index : postings;
+    }
+
+    /**
+     * Returns the index searched.
+     */
+    public IndexReader getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Returns the cache of the results of queries, or null.
+     */
+    public ResultCache getResultCache()
+    {
+        return results;
+    }
+
+    /**
+     * Returns the cache of the postings lists, or null.
+     */
+    public PostingsCache getPostingsCache()
+    {
+        return postingsCache;
+    }
+
+    /**
+     * Returns the docs matching a query, in doc id order.
+     * 
+     * @param query
+     *            the query
+     * @param limit
+     *            the most docs to return
+     * @return the first docs, up to limit
+     */
+    public ArrayListOfInts match(Query query, int limit)
+    {
+        String key = "match " + limit + " " + query;
+        int[] cached = results == null ? null : (int[]) results.get(key);
+        if (cached != null) return new ArrayListOfInts(cached);
+        ArrayListOfInts docs = new ArrayListOfInts();
+        DocIterator iterator = query.iterator(postings);
+        for (int doc = iterator.next(); doc != DocIterator.NO_MORE_DOCS && docs.size() < limit; doc = iterator.next())
+        {
+            docs.add(doc);
+        }
+        if (results != null) results.put(key, Arrays.copyOf(docs.getArray(), docs.size()));
+        return docs;
+    }
+
+    /**
+     * Returns the number of docs matching a query.
+     * 
+     * @param query
+     *            the query
+     * @return the number of docs
+     */
+    public int count(Query query)
+    {
+        String key = "count " + query;
+        Integer cached = results == null ? null : (Integer) results.get(key);
+        if (cached != null) return cached;
+        int count = 0;
+        DocIterator iterator = query.iterator(postings);
+        while (iterator.next() != DocIterator.NO_MORE_DOCS)
+        {
+            count++;
+        }
+        if (results != null) results.put(key, count);
+        return count;
+    }
+
+    /**
+     * Returns the docs of the highest BM25 scores for terms, the score of a
+     * doc being the sum of those of the terms in it. Docs are skipped by
+     * Block-Max WAND, with the bounds of the scores stored in the index, so
+     * that only the docs that may make the top k are scored.
+     * 
+     * @param terms
+     *            the terms, as they are in the index, in any order; a term
+     *            given twice counts twice
+     * @param k
+     *            the most docs to return
+     * @return the top docs
+     */
+    public TopDocs rank(List<String> terms, int k)
+    {
+        List<String> sorted = sort(terms);
+        String key = "rank " + k + " " + sorted;
+        TopDocs top = results == null ? null : (TopDocs) results.get(key);
+        if (top != null) return top;
+        top = BlockMaxWand.search(scorers(sorted), k);
+        if (results != null) results.put(key, top);
+        return top;
+    }
+
+    /**
+     * Returns what {@link #rank} does, but scores every doc of any of the
+     * terms.
+     * 
+     * @param terms
+     *            the terms, as they are in the index
+     * @param k
+     *            the most docs to return
+     * @return the top docs
+     */
+    public TopDocs rankExhaustively(List<String> terms, int k)
+    {
+        return BlockMaxWand.searchExhaustively(scorers(sort(terms)), k);
+    }
+
+    // the terms in order, the normal form of a ranked query: the scores of its docs are summed
+    // over its terms in that order, so that they are the same whatever the order given
+    private static List<String> sort(List<String> terms)
+    {
+        List<String> sorted = new ArrayList<String>(terms);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    // the scorers of the terms in the index
+    private TermScorer[] scorers(List<String> terms)
+    {
+        Bm25 bm25 = index.getBm25();
+        List<TermScorer> scorers = new ArrayList<TermScorer>();
+        for (String term : terms)
+        {
+            PostingsCursor cursor = postings.getPostings(term);
+            if (cursor != null) scorers.add(new TermScorer(cursor, bm25));
+        }
+        return scorers.toArray(new TermScorer[scorers.size()]);
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs not matching a query, which only makes sense as a clause of an
+ * {@link AndQuery}: the index does not go through every doc.
+ */
+public class NotQuery extends Query
+{
+    private final Query clause;
+
+    /**
+     * Creates the negation of a query.
+     * 
+     * @param clause
+     *            the query
+     */
+    public NotQuery(Query clause)
+    {
+        this.clause = clause;
+    }
+
+    /**
+     * Returns the query negated.
+     */
+    public Query getClause()
+    {
+        return clause;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        throw new IllegalArgumentException("NOT needs something to exclude from: " + this);
+    }
+
+    public String toString()
+    {
+        boolean bracket = clause instanceof AndQuery || clause instanceof OrQuery;
+        return "NOT " + (bracket ? "(" : "") + clause + (bracket ? ")" : "");
+    }
+}
@@ -0,0 +1,72 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs of any of a number of queries. Without any clause, it matches no
+ * docs, which is what a query of stop words comes to.
+ */
+public class OrQuery extends Query
+{
+    private final List<Query> clauses;
+
+    /**
+     * Creates the disjunction of queries.
+     * 
+     * @param clauses
+     *            the queries, none of which may be a NotQuery
+     */
+    public OrQuery(List<Query> clauses)
+    {
+        this.clauses = Collections.unmodifiableList(new ArrayList<Query>(clauses));
+        for (Query clause : clauses)
+        {
+            if (clause instanceof NotQuery)
+            {
+                throw new IllegalArgumentException("NOT needs something to exclude from: " + this);
+            }
+        }
+    }
+
+    /**
+     * Returns the clauses of the disjunction.
+     */
+    public List<Query> getClauses()
+    {
+        return clauses;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        if (clauses.isEmpty()) return DocIterator.empty();
+        if (clauses.size() == 1) return clauses.get(0).iterator(index);
+        List<DocIterator> iterators = new ArrayList<DocIterator>();
+        for (Query clause : clauses)
+        {
+            iterators.add(clause.iterator(index));
+        }
+        return new DisjunctionIterator(iterators);
+    }
+
+    public String toString()
+    {
+        return join(clauses, " OR ");
+    }
+
+    // the clauses with an operator between them, bracketed unless they are terms
+    static String join(List<Query> clauses, String operator)
+    {
+        StringBuilder s = new StringBuilder();
+        for (Query clause : clauses)
+        {
+            if (s.length() > 0) s.append(operator);
+            boolean bracket = clause instanceof AndQuery || clause instanceof OrQuery;
+            s.append(bracket ? "(" : "").append(clause).append(bracket ? ")" : "");
+        }
+        return s.toString();
+    }
+}
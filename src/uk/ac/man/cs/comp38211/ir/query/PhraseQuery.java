@@ -0,0 +1,114 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs in which a number of terms occur one after the other, in order.
+ * Positions are those of the terms of the index, stop words left out, so the
+ * phrase "bart the general" is the terms bart and general, next to each
+ * other.
+ */
+public class PhraseQuery extends Query
+{
+    private final List<String> terms;
+
+    /**
+     * Creates the query of a phrase.
+     * 
+     * @param terms
+     *            at least one term, as they are in the index
+     */
+    public PhraseQuery(List<String> terms)
+    {
+        this.terms = Collections.unmodifiableList(new ArrayList<String>(terms));
+    }
+
+    /**
+     * Returns the terms of the phrase.
+     */
+    public List<String> getTerms()
+    {
+        return terms;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        TermIterator[] iterators = new TermIterator[terms.size()];
+        for (int i = 0; i < iterators.length; i++)
+        {
+            PostingsCursor postings = index.getPostings(terms.get(i));
+            if (postings == null) return DocIterator.empty();
+            iterators[i] = new TermIterator(postings);
+        }
+        return new PhraseIterator(iterators);
+    }
+
+    public String toString()
+    {
+        return '"' + String.join(" ", terms) + '"';
+    }
+
+    /**
+     * A positional join: the positions the phrase could start at, by the
+     * term of the lowest term frequency in the doc, are intersected with
+     * those of every other term less its offset in the phrase, until none are
+     * left.
+     */
+    private static class PhraseIterator extends PositionalIterator
+    {
+        // the positions the phrase could start at
+        private int[] starts = new int[16];
+
+        PhraseIterator(TermIterator[] terms)
+        {
+            super(terms);
+        }
+
+        protected boolean matches()
+        {
+            int lead = 0;
+            for (int i = 1; i < terms.length; i++)
+            {
+                if (terms[i].getPostings().getTf() < terms[lead].getPostings().getTf()) lead = i;
+            }
+            PostingsCursor postings = terms[lead].getPostings();
+            int n = postings.getTf();
+            if (starts.length < n) starts = new int[Math.max(n, starts.length * 2)];
+            int[] positions = postings.getPositions();
+            int from = postings.getPositionsStart();
+            for (int k = 0; k < n; k++)
+            {
+                starts[k] = positions[from + k] - lead;
+            }
+            for (int i = 0; i < terms.length && n > 0; i++)
+            {
+                if (i != lead) n = intersect(n, terms[i].getPostings(), i);
+            }
+            return n > 0;
+        }
+
+        // keeps the first n starts that the term is at, after offset positions
+        private int intersect(int n, PostingsCursor postings, int offset)
+        {
+            int[] positions = postings.getPositions();
+            int j = postings.getPositionsStart();
+            int end = j + postings.getTf();
+            int kept = 0;
+            for (int k = 0; k < n && j < end; k++)
+            {
+                int position = starts[k] + offset;
+                while (j < end && positions[j] < position)
+                {
+                    j++;
+                }
+                if (j < end && positions[j] == position) starts[kept++] = starts[k];
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.Arrays;
+
+/**
+ * Iterates over the docs of all of a number of terms whose positions in the
+ * doc match: the docs of the terms are intersected first, like those of an
+ * {@link AndQuery}, and only then are the positions of the doc each term is
+ * at looked at, so that the positions of a block of postings are decoded only
+ * if it holds a doc of all the terms.
+ */
+abstract class PositionalIterator extends DocIterator
+{
+    /** The iterators of the terms, in the order of the query. */
+    protected final TermIterator[] terms;
+    private final ConjunctionIterator docs;
+
+    /**
+     * Creates the iterator.
+     * 
+     * @param terms
+     *            the iterators of the terms, before their first doc
+     */
+    PositionalIterator(TermIterator[] terms)
+    {
+        this.terms = terms;
+        docs = new ConjunctionIterator(Arrays.asList(terms));
+    }
+
+    public int doc()
+    {
+        return docs.doc();
+    }
+
+    public int next()
+    {
+        return match(docs.next());
+    }
+
+    public int advance(int target)
+    {
+        return match(docs.advance(target));
+    }
+
+    // the first doc, from this one on, the positions of which match
+    private int match(int doc)
+    {
+        while (doc != NO_MORE_DOCS && !matches())
+        {
+            doc = docs.next();
+        }
+        return doc;
+    }
+
+    /**
+     * Returns whether the positions of the terms, all at the same doc, match.
+     */
+    protected abstract boolean matches();
+
+    public long cost()
+    {
+        return docs.cost();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.DecodedPostings;
+import uk.ac.man.cs.comp38211.ir.index.IndexReader;
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+import uk.ac.man.cs.comp38211.util.cache.CacheStats;
+import uk.ac.man.cs.comp38211.util.cache.TinyLfuCache;
+
+/**
+ * A cache of the decoded postings lists of the terms queried most, in front
+ * of an index: the head terms of a query log are in most queries, and their
+ * lists, the longest of the index, would otherwise be decoded again for every
+ * one of them. The lists are kept by W-TinyLFU in a budget of bytes (see
+ * {@link TinyLfuCache}), in the heap or out of it (see
+ * {@link DecodedPostings}).
+ * 
+ * A list is only decoded into the cache once its term has been looked up
+ * before, lately, and if the cache would keep it: a query may need few
+ * blocks of a list, and decoding all of it for a term that may never be
+ * queried again, or only to be turned away, costs more than it saves.
+ * 
+ * The index must not change under the cache. A cache may be shared by
+ * threads, and by searchers of the same index.
+ */
+public class PostingsCache implements PostingsSource
+{
+    private final IndexReader index;
+    private final boolean direct;
+    private final TinyLfuCache<String, DecodedPostings> cache;
+
+    /**
+     * Creates a cache of the postings lists of an index.
+     * 
+     * @param index
+     *            the index
+     * @param maxBytes
+     *            the budget of the cache
+     * @param direct
+     *            whether to hold the lists out of the heap
+     */
+    public PostingsCache(IndexReader index, long maxBytes, boolean direct)
+    {
+        this.index = index;
+        this.direct = direct;
+        cache = new TinyLfuCache<String, DecodedPostings>(maxBytes, (int) Math.min(maxBytes / 1024, 1 << 24),
+                new TinyLfuCache.Weigher<String, DecodedPostings>()
+                {
+                    public long weigh(String term, DecodedPostings postings)
+                    {
+                        return postings.getBytes() + 2L * term.length() + 64;
+                    }
+                });
+    }
+
+    /**
+     * Returns the index the lists are of.
+     */
+    public IndexReader getIndex()
+    {
+        return index;
+    }
+
+    public PostingsCursor getPostings(String term)
+    {
+        DecodedPostings decoded = cache.get(term);
+        if (decoded != null) return decoded.cursor();
+        PostingsCursor postings = index.getPostings(term);
+        // a decoded list takes at least a doc id, a tf and a position per posting
+        if (postings == null || cache.frequency(term) < 2 || !cache.wouldAdmit(term, 12L * postings.getDocFreq()))
+        {
+            return postings;
+        }
+        decoded = DecodedPostings.decode(postings, direct);
+        cache.put(term, decoded);
+        return decoded.cursor();
+    }
+
+    /**
+     * Returns the statistics of the cache so far.
+     */
+    public CacheStats getStats()
+    {
+        return cache.getStats();
+    }
+}
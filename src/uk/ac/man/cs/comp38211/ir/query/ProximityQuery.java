@@ -0,0 +1,127 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs in which a number of terms all occur, in any order, within a
+ * window of positions: with at most k other terms among them. A proximity of
+ * 0 is the terms next to each other, in any order. Positions are those of
+ * the terms of the index, so stop words do not count as terms in between.
+ */
+public class ProximityQuery extends Query
+{
+    private final List<String> terms;
+    private final int k;
+
+    /**
+     * Creates the query of terms near each other.
+     * 
+     * @param terms
+     *            at least one term, as they are in the index; a term given
+     *            twice counts once
+     * @param k
+     *            the most other terms among them
+     */
+    public ProximityQuery(List<String> terms, int k)
+    {
+        if (k < 0)
+        {
+            throw new IllegalArgumentException("Negative proximity: " + k);
+        }
+        this.terms = Collections.unmodifiableList(new ArrayList<String>(new LinkedHashSet<String>(terms)));
+        this.k = k;
+    }
+
+    /**
+     * Returns the terms.
+     */
+    public List<String> getTerms()
+    {
+        return terms;
+    }
+
+    /**
+     * Returns the most other terms among the terms.
+     */
+    public int getProximity()
+    {
+        return k;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        TermIterator[] iterators = new TermIterator[terms.size()];
+        for (int i = 0; i < iterators.length; i++)
+        {
+            PostingsCursor postings = index.getPostings(terms.get(i));
+            if (postings == null) return DocIterator.empty();
+            iterators[i] = new TermIterator(postings);
+        }
+        return new ProximityIterator(iterators, k + iterators.length - 1);
+    }
+
+    public String toString()
+    {
+        return '"' + String.join(" ", terms) + "\"~" + k;
+    }
+
+    /**
+     * A windowed positional join: the position lists of the terms are merged,
+     * the window spanning the current position of every term, and the term at
+     * the start of the window moving on, until the window is narrow enough or
+     * a term runs out of positions. That takes one pass over the positions.
+     */
+    private static class ProximityIterator extends PositionalIterator
+    {
+        // the most positions between the first and last terms of the window
+        private final int span;
+        // the positions of every term, its current one, and where they end
+        private final int[][] positions;
+        private final int[] next;
+        private final int[] end;
+
+        ProximityIterator(TermIterator[] terms, int span)
+        {
+            super(terms);
+            this.span = span;
+            positions = new int[terms.length][];
+            next = new int[terms.length];
+            end = new int[terms.length];
+        }
+
+        protected boolean matches()
+        {
+            for (int i = 0; i < terms.length; i++)
+            {
+                PostingsCursor postings = terms[i].getPostings();
+                positions[i] = postings.getPositions();
+                next[i] = postings.getPositionsStart();
+                end[i] = next[i] + postings.getTf();
+            }
+            while (true)
+            {
+                int first = 0;
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int i = 0; i < terms.length; i++)
+                {
+                    int position = positions[i][next[i]];
+                    if (position < min)
+                    {
+                        min = position;
+                        first = i;
+                    }
+                    max = Math.max(max, position);
+                }
+                if (max - min <= span) return true;
+                if (++next[first] == end[first]) return false;
+            }
+        }
+    }
+}
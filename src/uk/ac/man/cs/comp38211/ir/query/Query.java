@@ -0,0 +1,20 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * A query over a binary index, as parsed by {@link QueryParser}. The
+ * toString of a query is its normal form: the query as the parser would
+ * read it back, with analysed terms and explicit operators.
+ */
+public abstract class Query
+{
+    /**
+     * Returns an iterator over the docs matching the query.
+     * 
+     * @param index
+     *            the postings lists of the index, or a cache of them
+     * @return the iterator, before its first doc
+     */
+    public abstract DocIterator iterator(PostingsSource index);
+}
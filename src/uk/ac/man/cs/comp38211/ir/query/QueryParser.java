@@ -0,0 +1,261 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.man.cs.comp38211.ir.Analyzer;
+
+/**
+ * Parses boolean queries:
+ * 
+ * <pre>
+ * query  := and ('OR' and)*
+ * and    := unary ('AND'? unary)*
+ * unary  := 'NOT' unary | '(' query ')' | phrase | word
+ * phrase := '"' words '"' ('~' k)?
+ * </pre>
+ * 
+ * so that AND binds tighter than OR, and words next to each other must all
+ * match. The operators are upper case; words are analysed like the text of
+ * the index, so that they are looked up as the terms they were indexed as. A
+ * word analysed into no term, such as a stop word, is left out of the query,
+ * and a word analysed into several terms must match them all.
+ * 
+ * The words of a phrase, in quotes, must occur one after the other, as a
+ * {@link PhraseQuery}; followed by ~k, they must occur within k terms of each
+ * other, in any order, as a {@link ProximityQuery}. Operators in quotes are
+ * words.
+ * 
+ * A parser is not thread-safe, as its Analyzer is not.
+ */
+public class QueryParser
+{
+    private final Analyzer analyzer;
+
+    // the query being parsed, as tokens, and the next token
+    private List<String> tokens;
+    private int next;
+
+    /**
+     * Creates a parser.
+     * 
+     * @param analyzer
+     *            the analyzer of the text of the index
+     */
+    public QueryParser(Analyzer analyzer)
+    {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Parses a query.
+     * 
+     * @param query
+     *            the query
+     * @return the query, which matches no docs if no word of it is a term
+     * @throws IllegalArgumentException
+     *             if the query is not well-formed, or is only a NOT
+     */
+    public Query parse(String query)
+    {
+        tokens = tokenize(query);
+        next = 0;
+        Query parsed = parseOr();
+        if (next < tokens.size())
+        {
+            throw new IllegalArgumentException("Unexpected " + tokens.get(next) + " in " + query);
+        }
+        if (parsed == null) return new OrQuery(new ArrayList<Query>());
+        if (parsed instanceof NotQuery)
+        {
+            throw new IllegalArgumentException("NOT needs something to exclude from: " + query);
+        }
+        return parsed;
+    }
+
+    // the brackets, and runs of other non-space chars
+    private static List<String> tokenize(String query)
+    {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        while (i < query.length())
+        {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                i++;
+            }
+            else if (c == '(' || c == ')')
+            {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+            else if (c == '"')
+            {
+                // the phrase, quotes and all, and its ~k if any
+                int start = i;
+                i = query.indexOf('"', i + 1);
+                if (i < 0)
+                {
+                    throw new IllegalArgumentException("Missing \" in " + query);
+                }
+                i++;
+                if (i < query.length() && query.charAt(i) == '~')
+                {
+                    i++;
+                    while (i < query.length() && Character.isDigit(query.charAt(i)))
+                    {
+                        i++;
+                    }
+                }
+                tokens.add(query.substring(start, i));
+            }
+            else
+            {
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && query.charAt(i) != '(' && query.charAt(i) != ')')
+                {
+                    i++;
+                }
+                tokens.add(query.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private boolean accept(String token)
+    {
+        if (next < tokens.size() && tokens.get(next).equals(token))
+        {
+            next++;
+            return true;
+        }
+        return false;
+    }
+
+    // a clause left out (a stop word) is null
+    private Query parseOr()
+    {
+        List<Query> clauses = new ArrayList<Query>();
+        do
+        {
+            Query clause = parseAnd();
+            if (clause != null) clauses.add(clause);
+        }
+        while (accept("OR"));
+        return combine(clauses, false);
+    }
+
+    private Query parseAnd()
+    {
+        List<Query> clauses = new ArrayList<Query>();
+        boolean and;
+        do
+        {
+            Query clause = parseUnary();
+            if (clause != null) clauses.add(clause);
+            and = accept("AND");
+        }
+        while (and || next < tokens.size() && !tokens.get(next).equals(")") && !tokens.get(next).equals("OR"));
+        return combine(clauses, true);
+    }
+
+    private Query parseUnary()
+    {
+        if (next == tokens.size() || tokens.get(next).equals(")") || tokens.get(next).equals("OR"))
+        {
+            throw new IllegalArgumentException("Missing a word before "
+                    + (next == tokens.size() ? "the end" : tokens.get(next)));
+        }
+        if (accept("NOT"))
+        {
+            Query clause = parseUnary();
+            return clause == null ? null : new NotQuery(clause);
+        }
+        if (accept("("))
+        {
+            Query query = parseOr();
+            if (!accept(")"))
+            {
+                throw new IllegalArgumentException("Missing )");
+            }
+            return query;
+        }
+        String word = tokens.get(next++);
+        if (word.equals("AND"))
+        {
+            throw new IllegalArgumentException("Unexpected " + word);
+        }
+        if (word.charAt(0) == '"')
+        {
+            int end = word.lastIndexOf('"');
+            String text = word.substring(1, end);
+            if (end == word.length() - 1) return phrase(text);
+            if (end == word.length() - 2)
+            {
+                throw new IllegalArgumentException("Missing a number after ~ in " + word);
+            }
+            return near(text, Integer.parseInt(word.substring(end + 2)));
+        }
+        return word(word);
+    }
+
+    /**
+     * Returns the query of a word: its terms, as analysed, must all match.
+     * 
+     * @param word
+     *            the word
+     * @return the query, or null if the word has no terms
+     */
+    protected Query word(String word)
+    {
+        List<Query> terms = new ArrayList<Query>();
+        for (String term : analyzer.analyse(word))
+        {
+            terms.add(new TermQuery(term));
+        }
+        return combine(terms, true);
+    }
+
+    /**
+     * Returns the query of a phrase: its terms, as analysed, must occur one
+     * after the other.
+     * 
+     * @param text
+     *            the words of the phrase
+     * @return the query, or null if the phrase has no terms
+     */
+    protected Query phrase(String text)
+    {
+        List<String> terms = analyzer.analyse(text);
+        if (terms.isEmpty()) return null;
+        if (terms.size() == 1) return new TermQuery(terms.get(0));
+        return new PhraseQuery(terms);
+    }
+
+    /**
+     * Returns the query of words near each other: their terms, as analysed,
+     * must occur with at most k other terms among them.
+     * 
+     * @param text
+     *            the words
+     * @param k
+     *            the most other terms among them
+     * @return the query, or null if the words have no terms
+     */
+    protected Query near(String text, int k)
+    {
+        List<String> terms = analyzer.analyse(text);
+        if (terms.isEmpty()) return null;
+        if (terms.size() == 1) return new TermQuery(terms.get(0));
+        return new ProximityQuery(terms, k);
+    }
+
+    private static Query combine(List<Query> clauses, boolean and)
+    {
+        if (clauses.isEmpty()) return null;
+        if (clauses.size() == 1) return clauses.get(0);
+        return and ? new AndQuery(clauses) : new OrQuery(clauses);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.util.cache.CacheStats;
+import uk.ac.man.cs.comp38211.util.cache.TinyLfuCache;
+
+/**
+ * A cache of the results of queries, for an {@link IndexSearcher}: the top
+ * docs of ranked queries, and the docs and counts of boolean queries, by the
+ * normal form of the query. Query logs are skewed, and the head queries are
+ * asked again and again; the results are kept by W-TinyLFU in a budget of
+ * bytes (see {@link TinyLfuCache}).
+ * 
+ * The index must not change under the cache. A cache may be shared by
+ * threads, and by searchers of the same index.
+ */
+public class ResultCache
+{
+    private final TinyLfuCache<String, Object> cache;
+
+    /**
+     * Creates a cache.
+     * 
+     * @param maxBytes
+     *            the budget of the cache
+     */
+    public ResultCache(long maxBytes)
+    {
+        cache = new TinyLfuCache<String, Object>(maxBytes, (int) Math.min(maxBytes / 256, 1 << 24),
+                new TinyLfuCache.Weigher<String, Object>()
+                {
+                    public long weigh(String key, Object results)
+                    {
+                        long bytes = 2L * key.length() + 64;
+                        if (results instanceof TopDocs) bytes += 12L * ((TopDocs) results).size() + 48;
+                        else if (results instanceof int[]) bytes += 4L * ((int[]) results).length + 16;
+                        else bytes += 16;
+                        return bytes;
+                    }
+                });
+    }
+
+    /**
+     * Returns the results of a query, a TopDocs, an int[] of doc ids or an
+     * Integer count, or null if they are not in the cache.
+     */
+    Object get(String key)
+    {
+        return cache.get(key);
+    }
+
+    void put(String key, Object results)
+    {
+        cache.put(key, results);
+    }
+
+    /**
+     * Returns the statistics of the cache so far.
+     */
+    public CacheStats getStats()
+    {
+        return cache.getStats();
+    }
+}
@@ -0,0 +1,52 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+
+/**
+ * Iterates over the docs of a postings list. The cursor stays at the posting
+ * of the current doc, for its term frequency and positions.
+ */
+public class TermIterator extends DocIterator
+{
+    private final PostingsCursor postings;
+    private int doc = -1;
+
+    /**
+     * Creates an iterator over a postings list.
+     * 
+     * @param postings
+     *            the cursor over the list, before its first posting
+     */
+    public TermIterator(PostingsCursor postings)
+    {
+        this.postings = postings;
+    }
+
+    /**
+     * Returns the cursor over the postings list, at the current doc.
+     */
+    public PostingsCursor getPostings()
+    {
+        return postings;
+    }
+
+    public int doc()
+    {
+        return doc;
+    }
+
+    public int next()
+    {
+        return doc = postings.next() ? postings.getDoc() : NO_MORE_DOCS;
+    }
+
+    public int advance(int target)
+    {
+        return doc = postings.advance(target) ? postings.getDoc() : NO_MORE_DOCS;
+    }
+
+    public long cost()
+    {
+        return postings.getDocFreq();
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+import uk.ac.man.cs.comp38211.ir.index.PostingsSource;
+
+/**
+ * The docs of a term.
+ */
+public class TermQuery extends Query
+{
+    private final String term;
+
+    /**
+     * Creates the query of a term.
+     * 
+     * @param term
+     *            the term, as it is in the index
+     */
+    public TermQuery(String term)
+    {
+        this.term = term;
+    }
+
+    /**
+     * Returns the term.
+     */
+    public String getTerm()
+    {
+        return term;
+    }
+
+    public DocIterator iterator(PostingsSource index)
+    {
+        PostingsCursor postings = index.getPostings(term);
+        return postings == null ? DocIterator.empty() : new TermIterator(postings);
+    }
+
+    public String toString()
+    {
+        return term;
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import uk.ac.man.cs.comp38211.ir.index.Bm25;
+import uk.ac.man.cs.comp38211.ir.index.PostingsCursor;
+
+/**
+ * Scores the docs of a postings list with BM25, and bounds their scores, for
+ * the list and for its blocks.
+ */
+final class TermScorer
+{
+    private final PostingsCursor postings;
+    private final Bm25 bm25;
+    private final double idf;
+    /** The bound of the scores of the docs of the list. */
+    final double maxScore;
+    /** The doc id of the cursor, -1 before the first, then up to NO_MORE_DOCS. */
+    int doc = -1;
+
+    TermScorer(PostingsCursor postings, Bm25 bm25)
+    {
+        this.postings = postings;
+        this.bm25 = bm25;
+        idf = bm25.idf(postings.getDocFreq());
+        maxScore = idf * postings.getMaxWeight();
+    }
+
+    int next()
+    {
+        return doc = postings.next() ? postings.getDoc() : DocIterator.NO_MORE_DOCS;
+    }
+
+    int advance(int target)
+    {
+        return doc = postings.advance(target) ? postings.getDoc() : DocIterator.NO_MORE_DOCS;
+    }
+
+    /**
+     * Returns the score of the doc.
+     */
+    double score()
+    {
+        return idf * bm25.tfWeight(postings.getTf(), doc);
+    }
+
+    /**
+     * Finds the block of a target doc id, see
+     * {@link PostingsCursor#advanceShallow}.
+     * 
+     * @return the last doc id of the block
+     */
+    int advanceShallow(int target)
+    {
+        return postings.advanceShallow(target);
+    }
+
+    /**
+     * Returns the bound of the scores of the block last found by
+     * {@link #advanceShallow}.
+     */
+    double getShallowMaxScore()
+    {
+        return idf * postings.getShallowMaxWeight();
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+import java.util.Arrays;
+
+/**
+ * The docs of the highest scores for a ranked query, from the highest score
+ * down; docs of the same score are in doc id order.
+ */
+public class TopDocs
+{
+    private final int[] docs;
+    private final double[] scores;
+
+    TopDocs(int[] docs, double[] scores)
+    {
+        this.docs = docs;
+        this.scores = scores;
+    }
+
+    /**
+     * Returns the number of docs.
+     */
+    public int size()
+    {
+        return docs.length;
+    }
+
+    /**
+     * Returns the doc id of the i-th doc.
+     */
+    public int getDoc(int i)
+    {
+        return docs[i];
+    }
+
+    /**
+     * Returns the score of the i-th doc.
+     */
+    public double getScore(int i)
+    {
+        return scores[i];
+    }
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof TopDocs)) return false;
+        TopDocs other = (TopDocs) o;
+        return Arrays.equals(docs, other.docs) && Arrays.equals(scores, other.scores);
+    }
+
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(docs) + Arrays.hashCode(scores);
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < docs.length; i++)
+        {
+            if (i > 0) s.append(", ");
+            s.append(docs[i]).append('|').append(scores[i]);
+        }
+        return s.append(']').toString();
+    }
+}
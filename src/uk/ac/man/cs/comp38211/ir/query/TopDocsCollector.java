@@ -0,0 +1,107 @@
+package uk.ac.man.cs.comp38211.ir.query;
+
+/**
+ * Keeps the k docs of the highest scores of those it is given, in doc id
+ * order, in a heap whose root is the worst of them: the lowest score, and of
+ * those the highest doc id. As later docs lose ties, a doc makes the top k
+ * only if its score is higher than that of the root, the threshold.
+ */
+final class TopDocsCollector
+{
+    private final int k;
+    private final int[] docs;
+    private final double[] scores;
+    private int size;
+
+    TopDocsCollector(int k)
+    {
+        this.k = k;
+        docs = new int[k];
+        scores = new double[k];
+    }
+
+    /**
+     * Returns the score a doc must beat to make the top k, negative infinity
+     * until there are k docs.
+     */
+    double threshold()
+    {
+        if (k == 0) return Double.POSITIVE_INFINITY;
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Offers a doc, of a higher doc id than those offered before.
+     */
+    void collect(int doc, double score)
+    {
+        if (size < k)
+        {
+            docs[size] = doc;
+            scores[size] = score;
+            siftUp(size++);
+        }
+        else if (score > threshold())
+        {
+            docs[0] = doc;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    // whether the doc at i is worse than the one at j
+    private boolean worse(int i, int j)
+    {
+        return scores[i] < scores[j] || scores[i] == scores[j] && docs[i] > docs[j];
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0 && worse(i, (i - 1) / 2))
+        {
+            swap(i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private void siftDown(int i)
+    {
+        while (2 * i + 1 < size)
+        {
+            int child = 2 * i + 1;
+            if (child + 1 < size && worse(child + 1, child)) child++;
+            if (!worse(child, i)) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        int doc = docs[i];
+        docs[i] = docs[j];
+        docs[j] = doc;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    /**
+     * Returns the top docs, and empties the collector.
+     */
+    TopDocs topDocs()
+    {
+        int n = size;
+        int[] topDocs = new int[n];
+        double[] topScores = new double[n];
+        // the worst goes last
+        for (int i = n - 1; i >= 0; i--)
+        {
+            topDocs[i] = docs[0];
+            topScores[i] = scores[0];
+            swap(0, --size);
+            siftDown(0);
+        }
+        return new TopDocs(topDocs, topScores);
+    }
+}
@@ -0,0 +1,115 @@
+package uk.ac.man.cs.comp38211.util.cache;
+
+/**
+ * What a {@link TinyLfuCache} has done since it was created, as of a moment:
+ * its lookups, the entries it was offered and what became of them, and the
+ * bytes it holds.
+ */
+public class CacheStats
+{
+    private final long hitCount;
+    private final long missCount;
+    private final long admissionCount;
+    private final long rejectionCount;
+    private final long evictionCount;
+    private final int entryCount;
+    private final long bytes;
+    private final long maxBytes;
+
+    CacheStats(long hitCount, long missCount, long admissionCount, long rejectionCount,
+            long evictionCount, int entryCount, long bytes, long maxBytes)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.admissionCount = admissionCount;
+        this.rejectionCount = rejectionCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.bytes = bytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the number of lookups of keys the cache had.
+     */
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups of keys the cache did not have.
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the share of the lookups that were hits, 0 if there were none.
+     */
+    public double getHitRate()
+    {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Returns the number of entries that made it out of the window of the
+     * cache into its main space.
+     */
+    public long getAdmissionCount()
+    {
+        return admissionCount;
+    }
+
+    /**
+     * Returns the number of entries the cache turned down: those over its
+     * budget, and those out of its window less popular than the entries they
+     * would have evicted.
+     */
+    public long getRejectionCount()
+    {
+        return rejectionCount;
+    }
+
+    /**
+     * Returns the number of entries of the main space evicted to make room
+     * for others.
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     */
+    public int getEntryCount()
+    {
+        return entryCount;
+    }
+
+    /**
+     * Returns the bytes the entries in the cache are weighed at.
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the budget of the cache, in bytes.
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public String toString()
+    {
+        return String.format("hits %d, misses %d (hit rate %.3f), admitted %d, rejected %d,"
+                + " evicted %d, %d entries, %d of %d bytes", hitCount, missCount, getHitRate(),
+                admissionCount, rejectionCount, evictionCount, entryCount, bytes, maxBytes);
+    }
+}
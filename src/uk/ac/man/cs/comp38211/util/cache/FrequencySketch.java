@@ -0,0 +1,108 @@
+package uk.ac.man.cs.comp38211.util.cache;
+
+/**
+ * Estimates how often keys have been seen lately, in a fixed amount of
+ * memory: a count-min sketch of 4-bit counters, 16 to a long. A key is
+ * counted by 4 counters, one picked by each of 4 hashes, and its frequency is
+ * the least of them, which is never less than the number of times it was
+ * counted (up to 15), and more only when the other keys of its counters
+ * collide with it in all 4.
+ * 
+ * Once 10 times as many keys have been counted as the sketch has longs
+ * (twice the number of keys it is sized for, or more), every counter is
+ * halved, so that the keys that were popular long ago give way to those that
+ * are popular now (the aging of TinyLFU, Einziger et al., 2017).
+ */
+final class FrequencySketch
+{
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a sketch.
+     * 
+     * @param expectedKeys
+     *            the number of keys it should tell apart, such as the number
+     *            of entries of the cache it is for
+     */
+    FrequencySketch(int expectedKeys)
+    {
+        int longs = Integer.highestOneBit(Math.max(expectedKeys, 64) - 1) << 1;
+        longs = Math.min(longs, 1 << 26);
+        table = new long[longs];
+        counterMask = 16 * longs - 1;
+        sampleSize = 10 * longs;
+    }
+
+    /**
+     * Returns the estimated frequency of a key, from 0 to 15.
+     */
+    int frequency(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++)
+        {
+            int counter = counter(hash, i);
+            frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts a key once more.
+     */
+    void increment(Object key)
+    {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++)
+        {
+            int counter = counter(hash, i);
+            int shift = (counter & 15) << 2;
+            if (((table[counter >>> 4] >>> shift) & 15) != 15)
+            {
+                table[counter >>> 4] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize)
+        {
+            reset();
+        }
+    }
+
+    // halves every counter, and the count of additions with them
+    private void reset()
+    {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++)
+        {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    // the counter of a hash for the i-th seed
+    private int counter(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return (int) (h ^ (h >>> 32)) & counterMask;
+    }
+
+    // a hash code whose bits all depend on all those of the key's
+    private static int spread(int hash)
+    {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
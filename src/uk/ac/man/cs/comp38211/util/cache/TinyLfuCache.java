@@ -0,0 +1,280 @@
+package uk.ac.man.cs.comp38211.util.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of a budget of bytes, whose entries are weighed by a
+ * {@link Weigher}, kept by W-TinyLFU (Einziger et al., 2017): the entries
+ * that are popular lately, by a {@link FrequencySketch} of the keys looked
+ * up, rather than merely the most recent.
+ * 
+ * New entries go into a window of 1% of the budget, in LRU order. An entry
+ * pushed out of the window is a candidate for the main space, where it has to
+ * be looked up more often than the entry it would evict, the least recently
+ * used entry on probation: if it is not, it is evicted itself. The main space
+ * is a segmented LRU: entries looked up again while on probation are
+ * protected, and protected entries fall back on probation when the 80% of the
+ * main space protected entries may take is full. Keys looked up once are
+ * kept in the window long enough to be looked up again, but never push out
+ * the entries looked up all the time.
+ * 
+ * All methods are synchronized: a cache may be shared by threads.
+ */
+public class TinyLfuCache<K, V>
+{
+    /**
+     * Weighs the entries of a cache.
+     */
+    public interface Weigher<K, V>
+    {
+        /**
+         * Returns the bytes an entry takes, its key included.
+         */
+        long weigh(K key, V value);
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long maxBytes;
+    private final long maxWindowBytes;
+    private final long maxMainBytes;
+    private final long maxProtectedBytes;
+    private final Weigher<K, V> weigher;
+    private final FrequencySketch sketch;
+    private final Map<K, Node<K, V>> nodes = new HashMap<K, Node<K, V>>();
+    // the LRU lists of the window, probation and protected entries, least recent first
+    private final Node<K, V>[] heads;
+    // the bytes of the lists, and of them all
+    private final long[] queueBytes = new long[3];
+    private long bytes;
+
+    private long hitCount;
+    private long missCount;
+    private long admissionCount;
+    private long rejectionCount;
+    private long evictionCount;
+
+    /**
+     * Creates a cache.
+     * 
+     * @param maxBytes
+     *            the budget of the cache
+     * @param expectedEntries
+     *            about how many entries fit in the budget, which sizes the
+     *            frequency sketch
+     * @param weigher
+     *            weighs the entries
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public TinyLfuCache(long maxBytes, int expectedEntries, Weigher<K, V> weigher)
+    {
+        if (maxBytes < 0)
+        {
+            throw new IllegalArgumentException("Negative budget: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        maxWindowBytes = Math.max(1, maxBytes / 100);
+        maxMainBytes = maxBytes - maxWindowBytes;
+        maxProtectedBytes = maxMainBytes / 5 * 4;
+        this.weigher = weigher;
+        sketch = new FrequencySketch(expectedEntries);
+        heads = (Node<K, V>[]) new Node<?, ?>[3];
+        for (int queue = WINDOW; queue <= PROTECTED; queue++)
+        {
+            // a sentinel: the list is circular through it
+            heads[queue] = new Node<K, V>(null, null, 0);
+            heads[queue].prev = heads[queue].next = heads[queue];
+        }
+    }
+
+    /**
+     * Looks up a key, which counts towards its frequency whether or not it is
+     * in the cache.
+     * 
+     * @param key
+     *            the key
+     * @return its value, or null if it is not in the cache
+     */
+    public synchronized V get(K key)
+    {
+        sketch.increment(key);
+        Node<K, V> node = nodes.get(key);
+        if (node == null)
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        if (node.queue == PROBATION)
+        {
+            // looked up again: protected, at the expense of the least recent protected entries
+            move(node, PROTECTED);
+            while (queueBytes[PROTECTED] > maxProtectedBytes)
+            {
+                move(heads[PROTECTED].next, PROBATION);
+            }
+        }
+        else
+        {
+            move(node, node.queue);
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns the estimated number of lookups of a key lately, from 0 to 15.
+     */
+    public synchronized int frequency(K key)
+    {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * Returns whether an entry would be kept, were it offered now: an entry
+     * that fits in the window is, for a while; a bigger one goes straight on
+     * to the main space, and is kept if it fits there as it is, or is looked
+     * up more often than every entry it would evict. A value that costs much
+     * to make may then be made only if it is worth offering.
+     * 
+     * @param key
+     *            the key
+     * @param weight
+     *            the bytes the entry would take
+     */
+    public synchronized boolean wouldAdmit(K key, long weight)
+    {
+        if (weight > maxMainBytes) return false;
+        if (weight <= maxWindowBytes) return true;
+        int frequency = sketch.frequency(key);
+        long free = maxMainBytes - (bytes - queueBytes[WINDOW]);
+        for (int queue = PROBATION; queue <= PROTECTED; queue++)
+        {
+            for (Node<K, V> victim = heads[queue].next; victim != heads[queue] && free < weight; victim = victim.next)
+            {
+                if (sketch.frequency(victim.key) >= frequency) return false;
+                free += victim.weight;
+            }
+        }
+        return free >= weight;
+    }
+
+    /**
+     * Offers an entry to the cache, which takes it into its window, and keeps
+     * it later only if it is popular enough. The value of a key already in
+     * the cache is replaced.
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public synchronized void put(K key, V value)
+    {
+        long weight = weigher.weigh(key, value);
+        Node<K, V> node = nodes.remove(key);
+        if (node != null)
+        {
+            unlink(node);
+        }
+        if (weight > maxMainBytes)
+        {
+            rejectionCount++;
+            return;
+        }
+        node = new Node<K, V>(key, value, weight);
+        nodes.put(key, node);
+        link(node, WINDOW);
+        while (queueBytes[WINDOW] > maxWindowBytes)
+        {
+            admit(heads[WINDOW].next);
+        }
+    }
+
+    // moves the least recent entry of the window to the main space, if it is
+    // popular enough to evict what it must there
+    private void admit(Node<K, V> candidate)
+    {
+        move(candidate, PROBATION);
+        int frequency = sketch.frequency(candidate.key);
+        while (bytes - queueBytes[WINDOW] > maxMainBytes)
+        {
+            Node<K, V> victim = heads[PROBATION].next;
+            if (victim == candidate)
+            {
+                // the probation list is otherwise empty
+                victim = heads[PROTECTED].next != heads[PROTECTED] ? heads[PROTECTED].next : candidate;
+            }
+            if (victim == candidate || sketch.frequency(victim.key) >= frequency)
+            {
+                remove(candidate);
+                rejectionCount++;
+                return;
+            }
+            remove(victim);
+            evictionCount++;
+        }
+        admissionCount++;
+    }
+
+    private void remove(Node<K, V> node)
+    {
+        nodes.remove(node.key);
+        unlink(node);
+    }
+
+    // moves a node to the most recent end of a list
+    private void move(Node<K, V> node, int queue)
+    {
+        unlink(node);
+        link(node, queue);
+    }
+
+    private void link(Node<K, V> node, int queue)
+    {
+        Node<K, V> head = heads[queue];
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+        node.queue = queue;
+        queueBytes[queue] += node.weight;
+        bytes += node.weight;
+    }
+
+    private void unlink(Node<K, V> node)
+    {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        queueBytes[node.queue] -= node.weight;
+        bytes -= node.weight;
+    }
+
+    /**
+     * Returns the statistics of the cache so far.
+     */
+    public synchronized CacheStats getStats()
+    {
+        return new CacheStats(hitCount, missCount, admissionCount, rejectionCount, evictionCount,
+                nodes.size(), bytes, maxBytes);
+    }
+
+    private static final class Node<K, V>
+    {
+        final K key;
+        final V value;
+        final long weight;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight)
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
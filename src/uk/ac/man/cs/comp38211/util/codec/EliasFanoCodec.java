@@ -0,0 +1,153 @@
+package uk.ac.man.cs.comp38211.util.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Elias-Fano codec: an ascending list of n ints up to u is written as the
+ * l = floor(log2(u / n)) low bits of every int, packed, and the remaining high
+ * bits in unary, as a bit set where the i-th int sets bit (high + i). That
+ * takes at most 2 + log2(u / n) bits per int, whatever the distribution of
+ * the gaps, and suits doc ids best.
+ * 
+ * Lists in no order are written as their prefix sums, which ascend, so their
+ * sum must be an int too: within a block of postings, it is the sum of a few
+ * term frequencies or positions.
+ * 
+ * The layout is: u (a variable-byte int), l (a byte), then the low bits and
+ * the high bits, each as 64-bit words, bit 0 of word 0 first.
+ */
+public final class EliasFanoCodec extends IntCodec
+{
+    public static final String NAME = "eliasfano";
+
+    public static final EliasFanoCodec INSTANCE = new EliasFanoCodec();
+
+    private EliasFanoCodec()
+    {
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    public void encode(int[] values, int n, DataOutput out) throws IOException
+    {
+        int[] sums = new int[n];
+        long sum = 0;
+        for (int i = 0; i < n; i++)
+        {
+            sum += values[i];
+            if (sum > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("The sum of the list overflows an int");
+            }
+            sums[i] = (int) sum;
+        }
+        encodeAscending(sums, n, out);
+    }
+
+    public void decode(ByteBuffer in, int[] values, int n)
+    {
+        decodeAscending(in, values, n);
+        for (int i = n - 1; i > 0; i--)
+        {
+            values[i] -= values[i - 1];
+        }
+    }
+
+    public void encodeAscending(int[] values, int n, DataOutput out)
+            throws IOException
+    {
+        if (n == 0) return;
+        int u = values[n - 1];
+        int l = lowBits(u, n);
+        long[] low = new long[words((long) n * l)];
+        long[] high = new long[words((long) (u >>> l) + n)];
+        long mask = (1L << l) - 1;
+        for (int i = 0; i < n; i++)
+        {
+            if (l > 0)
+            {
+                long bit = (long) i * l;
+                long v = values[i] & mask;
+                int w = (int) (bit >>> 6);
+                int shift = (int) (bit & 63);
+                low[w] |= v << shift;
+                if (shift + l > 64)
+                {
+                    low[w + 1] |= v >>> (64 - shift);
+                }
+            }
+            long h = (long) (values[i] >>> l) + i;
+            high[(int) (h >>> 6)] |= 1L << (h & 63);
+        }
+        VByteCodec.writeVInt(out, u);
+        out.writeByte(l);
+        for (long word : low)
+        {
+            out.writeLong(word);
+        }
+        for (long word : high)
+        {
+            out.writeLong(word);
+        }
+    }
+
+    public void decodeAscending(ByteBuffer in, int[] values, int n)
+    {
+        if (n == 0) return;
+        int u = VByteCodec.readVInt(in);
+        int l = in.get();
+        int lowStart = in.position();
+        int highStart = lowStart + 8 * words((long) n * l);
+        int highWords = words((long) (u >>> l) + n);
+        long mask = (1L << l) - 1;
+
+        // the high bits: the i-th set bit, at position p, is the high part p - i
+        int i = 0;
+        for (int w = 0; i < n; w++)
+        {
+            long word = in.getLong(highStart + 8 * w);
+            while (word != 0 && i < n)
+            {
+                int p = (w << 6) + Long.numberOfTrailingZeros(word);
+                values[i] = (p - i) << l;
+                i++;
+                word &= word - 1;
+            }
+        }
+
+        // the low bits
+        if (l > 0)
+        {
+            for (i = 0; i < n; i++)
+            {
+                long bit = (long) i * l;
+                int w = (int) (bit >>> 6);
+                int shift = (int) (bit & 63);
+                long v = in.getLong(lowStart + 8 * w) >>> shift;
+                if (shift + l > 64)
+                {
+                    v |= in.getLong(lowStart + 8 * (w + 1)) << (64 - shift);
+                }
+                values[i] |= (int) (v & mask);
+            }
+        }
+        in.position(highStart + 8 * highWords);
+    }
+
+    // l = floor(log2(u / n)), or 0 when u < n
+    private static int lowBits(int u, int n)
+    {
+        long ratio = (long) u / n;
+        return ratio == 0 ? 0 : 63 - Long.numberOfLeadingZeros(ratio);
+    }
+
+    private static int words(long bits)
+    {
+        return (int) ((bits + 63) >>> 6);
+    }
+}
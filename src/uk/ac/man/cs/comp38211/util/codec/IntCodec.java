@@ -0,0 +1,114 @@
+package uk.ac.man.cs.comp38211.util.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compression scheme for lists of non-negative ints, such as the doc ids,
+ * term frequencies and positions of a postings list. Lists are written to a
+ * DataOutput, and read back from a ByteBuffer, which may map the file
+ * written, from its position on: the position is left after the list. The
+ * length of a list is not written, it must be known to read the list back.
+ * 
+ * Ascending lists, such as doc ids, are written by default as the gaps between
+ * consecutive values; codecs like Elias-Fano write them as they are.
+ * 
+ * Codecs are stateless, and are looked up by name with {@link #forName}.
+ */
+public abstract class IntCodec
+{
+    /**
+     * Returns the codec of a name: "vbyte", "simple8b" or "eliasfano".
+     * 
+     * @param name
+     *            the name of the codec
+     * @return the codec
+     */
+    public static IntCodec forName(String name)
+    {
+        if (name.equals(VByteCodec.NAME)) return VByteCodec.INSTANCE;
+        if (name.equals(Simple8bCodec.NAME)) return Simple8bCodec.INSTANCE;
+        if (name.equals(EliasFanoCodec.NAME)) return EliasFanoCodec.INSTANCE;
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Returns the name of the codec, as known to {@link #forName}.
+     * 
+     * @return the name of the codec
+     */
+    public abstract String getName();
+
+    /**
+     * Writes a list of non-negative ints.
+     * 
+     * @param values
+     *            the list
+     * @param n
+     *            the length of the list
+     * @param out
+     *            where to write the list
+     */
+    public abstract void encode(int[] values, int n, DataOutput out)
+            throws IOException;
+
+    /**
+     * Reads a list written by {@link #encode}.
+     * 
+     * @param in
+     *            the buffer, at the start of the list
+     * @param values
+     *            where to read the list into
+     * @param n
+     *            the length of the list
+     */
+    public abstract void decode(ByteBuffer in, int[] values, int n);
+
+    /**
+     * Writes a list of non-negative ints in ascending (non-decreasing) order.
+     * 
+     * @param values
+     *            the list, which is left as it is
+     * @param n
+     *            the length of the list
+     * @param out
+     *            where to write the list
+     */
+    public void encodeAscending(int[] values, int n, DataOutput out)
+            throws IOException
+    {
+        int[] gaps = new int[n];
+        int previous = 0;
+        for (int i = 0; i < n; i++)
+        {
+            gaps[i] = values[i] - previous;
+            previous = values[i];
+        }
+        encode(gaps, n, out);
+    }
+
+    /**
+     * Reads a list written by {@link #encodeAscending}.
+     * 
+     * @param in
+     *            the buffer, at the start of the list
+     * @param values
+     *            where to read the list into
+     * @param n
+     *            the length of the list
+     */
+    public void decodeAscending(ByteBuffer in, int[] values, int n)
+    {
+        decode(in, values, n);
+        for (int i = 1; i < n; i++)
+        {
+            values[i] += values[i - 1];
+        }
+    }
+
+    public String toString()
+    {
+        return getName();
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.man.cs.comp38211.util.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Simple-8b codec (Anh and Moffat): ints are packed into 64-bit words, each
+ * word holding as many ints as fit in its 60 bits of payload at the width of
+ * the largest of them, after a 4-bit selector telling how many ints of how
+ * many bits the word holds. Runs of zeros take no payload bits at all: in a
+ * postings block, those of consecutive doc ids, whose gaps are written less
+ * one (see PostingsBlock), and of term frequencies of 1.
+ * 
+ * The last word of a list is padded with zeros, which are not read back.
+ */
+public final class Simple8bCodec extends IntCodec
+{
+    public static final String NAME = "simple8b";
+
+    public static final Simple8bCodec INSTANCE = new Simple8bCodec();
+
+    // the number of ints, and their width, of each selector
+    private static final int[] COUNTS = { 240, 120, 60, 30, 20, 15, 12, 10, 8, 7, 6, 5, 4, 3, 2, 1 };
+    private static final int[] BITS = { 0, 0, 1, 2, 3, 4, 5, 6, 7, 8, 10, 12, 15, 20, 30, 60 };
+
+    private Simple8bCodec()
+    {
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    public void encode(int[] values, int n, DataOutput out) throws IOException
+    {
+        for (int i = 0; i < n;)
+        {
+            // the first selector whose ints all fit, up to the end of the list.
+            // the last one takes any int, so there always is one
+            int selector = 0;
+            int count;
+            while (true)
+            {
+                count = Math.min(COUNTS[selector], n - i);
+                if (fit(values, i, count, BITS[selector])) break;
+                selector++;
+            }
+            long word = (long) selector << 60;
+            int bits = BITS[selector];
+            for (int j = 0; j < count; j++)
+            {
+                word |= (long) values[i + j] << (j * bits);
+            }
+            out.writeLong(word);
+            i += count;
+        }
+    }
+
+    private static boolean fit(int[] values, int from, int count, int bits)
+    {
+        if (bits >= 32) return true;
+        int max = (1 << bits) - 1;
+        for (int j = from; j < from + count; j++)
+        {
+            if (values[j] > max) return false;
+        }
+        return true;
+    }
+
+    public void decode(ByteBuffer in, int[] values, int n)
+    {
+        for (int i = 0; i < n;)
+        {
+            long word = in.getLong();
+            int selector = (int) (word >>> 60);
+            int count = Math.min(COUNTS[selector], n - i);
+            int bits = BITS[selector];
+            if (bits == 0)
+            {
+                for (int j = 0; j < count; j++)
+                {
+                    values[i++] = 0;
+                }
+            }
+            else
+            {
+                long mask = (1L << bits) - 1;
+                for (int j = 0; j < count; j++)
+                {
+                    values[i++] = (int) (word & mask);
+                    word >>>= bits;
+                }
+            }
+        }
+    }
+}
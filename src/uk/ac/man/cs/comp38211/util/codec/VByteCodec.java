@@ -0,0 +1,124 @@
+package uk.ac.man.cs.comp38211.util.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-byte codec: every int takes as many bytes as it has 7-bit groups,
+ * the lowest group first, the high bit of a byte telling that another byte
+ * follows. Values under 128 take a single byte.
+ */
+public final class VByteCodec extends IntCodec
+{
+    public static final String NAME = "vbyte";
+
+    public static final VByteCodec INSTANCE = new VByteCodec();
+
+    private VByteCodec()
+    {
+    }
+
+    /**
+     * Writes a single non-negative int.
+     * 
+     * @param out
+     *            where to write the int
+     * @param value
+     *            the int
+     * @return the number of bytes written
+     */
+    public static int writeVInt(DataOutput out, int value) throws IOException
+    {
+        int length = 1;
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            length++;
+        }
+        out.writeByte(value);
+        return length;
+    }
+
+    /**
+     * Reads a single int written by {@link #writeVInt}.
+     * 
+     * @param in
+     *            the buffer, at the start of the int
+     * @return the int
+     */
+    public static int readVInt(ByteBuffer in)
+    {
+        int b = in.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Writes a single non-negative long.
+     * 
+     * @param out
+     *            where to write the long
+     * @param value
+     *            the long
+     * @return the number of bytes written
+     */
+    public static int writeVLong(DataOutput out, long value) throws IOException
+    {
+        int length = 1;
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+            length++;
+        }
+        out.writeByte((int) value);
+        return length;
+    }
+
+    /**
+     * Reads a single long written by {@link #writeVLong}.
+     * 
+     * @param in
+     *            the buffer, at the start of the long
+     * @return the long
+     */
+    public static long readVLong(ByteBuffer in)
+    {
+        int b = in.get();
+        long value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    public void encode(int[] values, int n, DataOutput out) throws IOException
+    {
+        for (int i = 0; i < n; i++)
+        {
+            writeVInt(out, values[i]);
+        }
+    }
+
+    public void decode(ByteBuffer in, int[] values, int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            values[i] = readVInt(in);
+        }
+    }
+}
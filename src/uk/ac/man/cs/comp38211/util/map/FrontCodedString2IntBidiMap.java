@@ -73,13 +73,25 @@ public class FrontCodedString2IntBidiMap
         in.close();
     }
 
-    public int get(String s)
+    /**
+     * Returns the int of a string, or -1 if it is not in the map.
+     */
+    public int get(CharSequence s)
     {
-        return intList.getInt((int) stringHash.getLong(s));
+        long position = stringHash.getLong(s);
+        return position < 0 ? -1 : intList.getInt((int) position);
     }
 
     public String get(int i)
     {
         return stringList.get(int2PosMap.get(i)).toString();
     }
+
+    /**
+     * Returns the number of strings in the map.
+     */
+    public int size()
+    {
+        return intList.size();
+    }
 }
@@ -2,6 +2,7 @@ package uk.ac.man.cs.comp38211.util.map;
 
 import it.unimi.dsi.bits.TransformationStrategies;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Object2IntAVLTreeMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.sux4j.mph.TwoStepsLcpMonotoneMinimalPerfectHashFunction;
@@ -11,6 +12,7 @@ import it.unimi.dsi.util.ShiftAddXorSignedStringMap;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.List;
@@ -107,7 +109,33 @@ public class FrontCodedString2IntBidiMapBuilder
         Configuration conf = new Configuration();
         FileSystem fs = FileSystem.get(conf);
 
-        FSDataOutputStream os = fs.create(new Path(output), true);
+        build(stringList, intList, fs, new Path(output));
+    }
+
+    /**
+     * Writes a dictionary numbering the strings 0, 1, 2, ... in order. The
+     * strings must be distinct and sorted.
+     */
+    public static void build(List<String> stringList, FileSystem fs,
+            Path output) throws IOException
+    {
+        IntArrayList intList = new IntArrayList(stringList.size());
+        for (int i = 0; i < stringList.size(); i++)
+        {
+            intList.add(i);
+        }
+        build(stringList, intList, fs, output);
+    }
+
+    /**
+     * Writes a dictionary mapping each string to the int at the same index,
+     * in the format read by FrontCodedString2IntBidiMap. The strings must be
+     * distinct and sorted.
+     */
+    public static void build(List<String> stringList, IntList intList,
+            FileSystem fs, Path output) throws IOException
+    {
+        FSDataOutputStream os = fs.create(output, true);
 
         ByteArrayOutputStream bytesOut;
         ObjectOutputStream objOut;